@@ -24,23 +24,40 @@ public final class AWSCloudWatchMetric implements Metric {
      */
     private static final Logger LOG = LoggerFactory.getLogger(AWSCloudWatchMetric.class);
 
+    /**
+     * Nanoseconds in a millisecond; durations are published in milliseconds, with sub-millisecond precision.
+     */
+    static final double NANOS_PER_MILLI = 1_000_000.0;
+
     /**
      * Metrics publisher.
      */
     private final MetricsPublisher publisher;
 
     /**
-     * The metric name.
+     * Resolved datum names of the metric.
      */
-    private final String metricName;
+    private final MetricNames metricNames;
 
     /**
      * List of measures to keep
      */
     private List<MetricDatum> measureList;
 
-    
-    private long openTimestamp;
+    /**
+     * Clock used for durations and timestamps.
+     */
+    private MetricClock clock;
+
+    /**
+     * Whether open() was called.
+     */
+    private boolean opened;
+
+    /**
+     * Monotonic clock value read on open, in nanoseconds.
+     */
+    private long openNanos;
 
     /**
      * Constructor.
@@ -50,12 +67,36 @@ public final class AWSCloudWatchMetric implements Metric {
      */
     public AWSCloudWatchMetric(final MetricsPublisher publisher, final String name) {
 
+        this(publisher, new MetricNames(name));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param publisher   metric publisher
+     * @param metricNames resolved datum names of the metric, shared by metrics with the same name
+     */
+    public AWSCloudWatchMetric(final MetricsPublisher publisher, final MetricNames metricNames) {
+
         Preconditions.checkNotNull(publisher, "Metrics publisher cannot be null.");
-        Preconditions.checkNotNull(StringUtils.trimToNull(name), "Metrics name cannot be null or empty.");
+        Preconditions.checkNotNull(metricNames, "Metric names cannot be null.");
 
         this.publisher = publisher;
-        this.metricName = name;
+        this.metricNames = metricNames;
         this.measureList = Lists.newArrayList();
+        this.clock = SystemMetricClock.INSTANCE;
+    }
+
+    /**
+     * Set the clock used for durations and timestamps, {@link SystemMetricClock} by default.
+     *
+     * @param clock metric clock
+     */
+    public void setClock(final MetricClock clock) {
+
+        Preconditions.checkNotNull(clock, "Clock cannot be null.");
+
+        this.clock = clock;
     }
 
     /**
@@ -64,7 +105,8 @@ public final class AWSCloudWatchMetric implements Metric {
     @Override
     public void open() {
 
-        openTimestamp = System.currentTimeMillis();
+        opened = true;
+        openNanos = clock.monotonicNanos();
     }
 
     /**
@@ -73,14 +115,14 @@ public final class AWSCloudWatchMetric implements Metric {
     @Override
     public void close() {
 
-        Preconditions.checkArgument(openTimestamp > 0, "Missing open() call.");
+        Preconditions.checkArgument(opened, "Missing open() call.");
 
         try {
             MetricDatum totalTime = new MetricDatum()
-                    .withMetricName(metricName + ".Duration")
-                    .withValue((double) (System.currentTimeMillis() - openTimestamp))
+                    .withMetricName(metricNames.getDurationName())
+                    .withValue((clock.monotonicNanos() - openNanos) / NANOS_PER_MILLI)
                     .withUnit(Milliseconds)
-                    .withTimestamp(new Date(System.currentTimeMillis()));
+                    .withTimestamp(new Date(clock.wallClockMillis()));
 
             measureList.add(totalTime);
             publisher.publish(measureList);
@@ -97,13 +139,13 @@ public final class AWSCloudWatchMetric implements Metric {
     public void addMeasure(final String name, final double value) {
 
         Preconditions.checkNotNull(StringUtils.trimToNull(name), "Measure name cannot be null or empty.");
-        Preconditions.checkArgument(openTimestamp > 0, "Missing open() call.");
+        Preconditions.checkArgument(opened, "Missing open() call.");
 
         measureList.add(new MetricDatum()
-                .withMetricName(metricName + "." + name)
+                .withMetricName(metricNames.getMeasureName(name))
                 .withValue(value)
                 .withUnit(Count)
-                .withTimestamp(new Date(System.currentTimeMillis())));
+                .withTimestamp(new Date(clock.wallClockMillis())));
     }
 
     /**
@@ -0,0 +1,83 @@
+package com.deevvi.async.publisher.metric;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock with a coarse wall clock: a background ticker stores the current time every tick, and metrics read
+ * the stored value instead of the system clock. Timestamps are late by at most one tick, which is well under
+ * the one second resolution of CW. Durations still read {@link System#nanoTime()}.
+ */
+public final class CachedMetricClock implements MetricClock {
+
+    /**
+     * Default interval between two updates of the wall clock.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * Wall clock value stored by the ticker.
+     */
+    private volatile long wallClockMillis;
+
+    /**
+     * Executor running the ticker.
+     */
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Constructor using the default tick.
+     */
+    public CachedMetricClock() {
+
+        this(DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickMillis interval between two updates of the wall clock
+     */
+    public CachedMetricClock(final long tickMillis) {
+
+        Preconditions.checkArgument(tickMillis > 0, "Tick interval must be positive.");
+
+        this.wallClockMillis = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "metric-clock-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> wallClockMillis = System.currentTimeMillis(), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long monotonicNanos() {
+
+        return System.nanoTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long wallClockMillis() {
+
+        return wallClockMillis;
+    }
+
+    /**
+     * Stop the ticker; the wall clock keeps its last value.
+     */
+    public void closeClock() {
+
+        ticker.shutdown();
+    }
+}
@@ -0,0 +1,277 @@
+package com.deevvi.async.publisher.metric;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hand-off between {@link PrimitiveAWSCloudWatchMetric}s and a {@link MetricsPublisher}.
+ * <p>
+ * Measures are recorded as primitives in a preallocated multi-producer/single-consumer ring: a closing metric
+ * claims one slot per measure with a single compare-and-set, writes names, values and timestamps, then publishes
+ * the slots. A background thread turns the published slots into {@link MetricDatum}s and publishes them,
+ * so recording a metric doesn't allocate. When the ring is full, measures are dropped and counted.
+ */
+public final class MeasureRecorder {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(MeasureRecorder.class);
+
+    /**
+     * Maximum number of datums handed to the publisher in one call.
+     */
+    private static final int MAX_DATUMS_PER_PUBLISH = 1000;
+
+    /**
+     * Interval the background thread parks for while the ring is empty.
+     */
+    private static final long PARK_NANOS = 100_000L;
+
+    private final MetricsPublisher publisher;
+
+    /**
+     * Names of the measure in each slot; a null measure name stands for the metric duration.
+     */
+    private final MetricNames[] metricNames;
+    private final String[] measureNames;
+    private final StandardUnit[] units;
+    private final double[] values;
+    private final long[] timestamps;
+
+    /**
+     * Sequence published in each slot; a slot is readable when it holds the sequence the background thread expects.
+     */
+    private final AtomicLongArray published;
+
+    private final int capacity;
+    private final int mask;
+
+    /**
+     * Next sequence to be claimed by metrics.
+     */
+    private final AtomicLong claimed;
+
+    /**
+     * Next sequence to be read by the background thread; slots before it are free.
+     */
+    private volatile long consumed;
+
+    private final AtomicLong droppedMeasures;
+
+    /**
+     * Executor running the thread that converts and publishes the recorded measures.
+     */
+    private final ExecutorService converter;
+
+    /**
+     * Constructor.
+     *
+     * @param publisher metrics publisher
+     * @param capacity  number of measures the ring can hold, rounded up to a power of two
+     */
+    public MeasureRecorder(final MetricsPublisher publisher, final int capacity) {
+
+        Preconditions.checkNotNull(publisher, "Metrics publisher cannot be null.");
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be positive and at most 2^30.");
+
+        this.publisher = publisher;
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.metricNames = new MetricNames[this.capacity];
+        this.measureNames = new String[this.capacity];
+        this.units = new StandardUnit[this.capacity];
+        this.values = new double[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int slot = 0; slot < this.capacity; slot++) {
+
+            published.set(slot, -1);
+        }
+        this.claimed = new AtomicLong();
+        this.droppedMeasures = new AtomicLong();
+        this.converter = Executors.newSingleThreadExecutor();
+        converter.submit(this::convertLoop);
+    }
+
+    /**
+     * Record the measures of a closed metric, followed by its duration.
+     * Either all measures are recorded, or all are dropped.
+     *
+     * @param metric         resolved datum names of the metric
+     * @param names          measure names table
+     * @param nameIds        index in the names table of each measure
+     * @param measureValues  value of each measure
+     * @param measureTimes   timestamp in millis of each measure
+     * @param count          number of measures
+     * @param durationMillis time between open and close of the metric
+     * @param closeTime      timestamp in millis of the close
+     * @return true if the measures were recorded, false if they were dropped
+     */
+    boolean record(final MetricNames metric,
+                   final String[] names,
+                   final int[] nameIds,
+                   final double[] measureValues,
+                   final long[] measureTimes,
+                   final int count,
+                   final double durationMillis,
+                   final long closeTime) {
+
+        long first = claim(count + 1);
+        if (first < 0) {
+
+            droppedMeasures.addAndGet(count + 1);
+            return false;
+        }
+
+        for (int index = 0; index < count; index++) {
+
+            write(first + index, metric, names[nameIds[index]], StandardUnit.Count, measureValues[index], measureTimes[index]);
+        }
+        write(first + count, metric, null, StandardUnit.Milliseconds, durationMillis, closeTime);
+        return true;
+    }
+
+    /**
+     * @return number of measures waiting to be published
+     */
+    public int size() {
+
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    /**
+     * @return number of measures the ring can hold
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return number of measures dropped because the ring was full
+     */
+    public long getDroppedMeasures() {
+
+        return droppedMeasures.get();
+    }
+
+    /**
+     * Stop the background thread, after publishing the measures already recorded.
+     */
+    public void closeRecorder() {
+
+        converter.shutdownNow();
+    }
+
+    private void write(final long sequence,
+                       final MetricNames metric,
+                       final String measureName,
+                       final StandardUnit unit,
+                       final double value,
+                       final long timestamp) {
+
+        int slot = (int) sequence & mask;
+        metricNames[slot] = metric;
+        measureNames[slot] = measureName;
+        units[slot] = unit;
+        values[slot] = value;
+        timestamps[slot] = timestamp;
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Claim consecutive slots.
+     *
+     * @param count number of slots
+     * @return first claimed sequence, -1 if there isn't enough free slots
+     */
+    private long claim(final int count) {
+
+        while (true) {
+
+            long current = claimed.get();
+            if (current + count - consumed > capacity) {
+
+                return -1;
+            }
+            if (claimed.compareAndSet(current, current + count)) {
+
+                return current;
+            }
+        }
+    }
+
+    private void convertLoop() {
+
+        List<MetricDatum> datums = Lists.newArrayList();
+        while (!Thread.interrupted()) {
+
+            if (convert(datums) == 0) {
+
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        int converted;
+        do {
+
+            converted = convert(datums);
+        } while (converted > 0);
+    }
+
+    /**
+     * Convert the published slots into datums and publish them.
+     *
+     * @param datums reusable list of datums
+     * @return number of measures converted
+     */
+    private int convert(final List<MetricDatum> datums) {
+
+        long sequence = consumed;
+        while (datums.size() < MAX_DATUMS_PER_PUBLISH && published.get((int) sequence & mask) == sequence) {
+
+            int slot = (int) sequence & mask;
+            datums.add(new MetricDatum()
+                    .withMetricName(measureNames[slot] == null
+                            ? metricNames[slot].getDurationName()
+                            : metricNames[slot].getMeasureName(measureNames[slot]))
+                    .withValue(values[slot])
+                    .withUnit(units[slot])
+                    .withTimestamp(new Date(timestamps[slot])));
+            metricNames[slot] = null;
+            measureNames[slot] = null;
+            sequence++;
+        }
+        consumed = sequence;
+
+        int converted = datums.size();
+        if (converted > 0) {
+
+            try {
+
+                publisher.publish(datums);
+            } catch (Exception e) {
+
+                LOG.info("Exception on publishing metrics: ", e);
+            } finally {
+
+                datums.clear();
+            }
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,22 @@
+package com.deevvi.async.publisher.metric;
+
+/**
+ * Source of time for metrics: a monotonic clock for durations and a wall clock for datum timestamps.
+ */
+public interface MetricClock {
+
+    /**
+     * Read the monotonic clock, unaffected by wall clock adjustments.
+     * Only the difference between two reads is meaningful.
+     *
+     * @return current value of the monotonic clock, in nanoseconds
+     */
+    long monotonicNanos();
+
+    /**
+     * Read the wall clock.
+     *
+     * @return current time, in milliseconds since the epoch
+     */
+    long wallClockMillis();
+}
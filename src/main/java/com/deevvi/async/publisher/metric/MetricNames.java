@@ -0,0 +1,90 @@
+package com.deevvi.async.publisher.metric;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolved names of the datums of a metric: the duration datum name is computed once,
+ * and the {@code Name.Measure} datum names are computed on first use and then cached.
+ * Instances are thread safe and meant to be shared by all metrics with the same name.
+ */
+public final class MetricNames {
+
+    /**
+     * Name of the measure holding the time between open and close of a metric.
+     */
+    private static final String DURATION = "Duration";
+
+    /**
+     * Maximum number of measure names cached per metric, so that dynamic measure names don't grow the cache without limit.
+     */
+    private static final int MAX_CACHED_MEASURES = 256;
+
+    /**
+     * The metric name.
+     */
+    private final String metricName;
+
+    /**
+     * Name of the datum holding the metric duration.
+     */
+    private final String durationName;
+
+    /**
+     * Datum names, by measure name.
+     */
+    private final ConcurrentMap<String, String> measureNames;
+
+    /**
+     * Constructor.
+     *
+     * @param metricName metric name
+     */
+    public MetricNames(final String metricName) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(metricName), "Metrics name cannot be null or empty.");
+
+        this.metricName = metricName;
+        this.durationName = metricName + "." + DURATION;
+        this.measureNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the metric name
+     */
+    public String getMetricName() {
+
+        return metricName;
+    }
+
+    /**
+     * @return name of the datum holding the metric duration
+     */
+    public String getDurationName() {
+
+        return durationName;
+    }
+
+    /**
+     * Resolve the name of the datum of a measure.
+     *
+     * @param measureName measure name
+     * @return datum name, {@code metricName.measureName}
+     */
+    public String getMeasureName(final String measureName) {
+
+        String name = measureNames.get(measureName);
+        if (name == null) {
+
+            name = metricName + "." + measureName;
+            if (measureNames.size() < MAX_CACHED_MEASURES) {
+
+                measureNames.putIfAbsent(measureName, name);
+            }
+        }
+        return name;
+    }
+}
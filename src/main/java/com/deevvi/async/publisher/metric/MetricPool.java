@@ -0,0 +1,243 @@
+package com.deevvi.async.publisher.metric;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Pool of reusable metrics, confined to threads: each thread borrows metrics from its own pool and
+ * the metrics go back to that pool when they are closed by the same thread.
+ * <p>
+ * Leaks are detected with weak references: a borrowed metric that becomes unreachable without being closed
+ * is logged and counted the next time a metric is borrowed. Tracking a metric costs an allocation when
+ * the metric is created, not when it's borrowed.
+ */
+public final class MetricPool {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(MetricPool.class);
+
+    /**
+     * Default maximum number of idle metrics kept per thread and metric name.
+     */
+    public static final int DEFAULT_MAX_IDLE_PER_NAME = 16;
+
+    /**
+     * Creates the metrics wrapped by the pooled metrics.
+     */
+    private final Function<String, Metric> metricSupplier;
+
+    private final int maxIdlePerName;
+
+    /**
+     * Idle metrics of the current thread, by metric name.
+     */
+    private final ThreadLocal<Map<String, ArrayDeque<PooledMetric>>> idleMetrics;
+
+    /**
+     * Trackers of the metrics created by the pool and not discarded yet.
+     */
+    private final Set<LeakTracker> trackers;
+
+    /**
+     * Queue receiving the trackers of unreachable metrics.
+     */
+    private final ReferenceQueue<PooledMetric> unreachable;
+
+    private final AtomicLong leakedMetrics;
+
+    /**
+     * Constructor.
+     *
+     * @param metricSupplier creates a metric for a name
+     */
+    public MetricPool(final Function<String, Metric> metricSupplier) {
+
+        this(metricSupplier, DEFAULT_MAX_IDLE_PER_NAME);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metricSupplier creates a metric for a name
+     * @param maxIdlePerName maximum number of idle metrics kept per thread and metric name
+     */
+    public MetricPool(final Function<String, Metric> metricSupplier, final int maxIdlePerName) {
+
+        Preconditions.checkNotNull(metricSupplier, "Metric supplier cannot be null.");
+        Preconditions.checkArgument(maxIdlePerName > 0, "Maximum number of idle metrics must be positive.");
+
+        this.metricSupplier = metricSupplier;
+        this.maxIdlePerName = maxIdlePerName;
+        this.idleMetrics = ThreadLocal.withInitial(HashMap::new);
+        this.trackers = ConcurrentHashMap.newKeySet();
+        this.unreachable = new ReferenceQueue<>();
+        this.leakedMetrics = new AtomicLong();
+    }
+
+    /**
+     * Borrow a metric; the metric goes back to the pool when it's closed by the borrowing thread.
+     * The metric must not be used after close.
+     *
+     * @param name metric name
+     * @return metric, with no measures
+     */
+    public Metric borrow(final String name) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(name), "Metrics name cannot be null or empty.");
+
+        detectLeaks();
+
+        ArrayDeque<PooledMetric> idle = idleMetrics.get().get(name);
+        if (idle == null) {
+
+            idle = new ArrayDeque<>();
+            idleMetrics.get().put(name, idle);
+        }
+
+        PooledMetric metric = idle.pollFirst();
+        if (metric == null) {
+
+            metric = new PooledMetric(this, idle, metricSupplier.apply(name));
+            LeakTracker tracker = new LeakTracker(metric, name, unreachable);
+            trackers.add(tracker);
+            metric.tracker = tracker;
+        }
+
+        metric.delegate.resetMeasures();
+        metric.tracker.borrowed = true;
+        return metric;
+    }
+
+    /**
+     * @return number of borrowed metrics that became unreachable without being closed
+     */
+    public long getLeakedMetrics() {
+
+        return leakedMetrics.get();
+    }
+
+    private void release(final PooledMetric metric) {
+
+        metric.tracker.borrowed = false;
+        if (metric.owner != Thread.currentThread() || metric.idle.size() >= maxIdlePerName) {
+
+            trackers.remove(metric.tracker);
+            return;
+        }
+        metric.idle.addFirst(metric);
+    }
+
+    private void detectLeaks() {
+
+        LeakTracker tracker;
+        while ((tracker = (LeakTracker) unreachable.poll()) != null) {
+
+            trackers.remove(tracker);
+            if (tracker.borrowed) {
+
+                leakedMetrics.incrementAndGet();
+                LOG.warn("Metric {} was garbage collected without being closed; its measures are lost.", tracker.name);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a pooled metric, telling whether the metric was borrowed when it became unreachable.
+     */
+    private static final class LeakTracker extends WeakReference<PooledMetric> {
+
+        private final String name;
+        private volatile boolean borrowed;
+
+        LeakTracker(final PooledMetric metric, final String name, final ReferenceQueue<PooledMetric> queue) {
+
+            super(metric, queue);
+            this.name = name;
+        }
+    }
+
+    /**
+     * Metric going back to its pool on close.
+     */
+    private static final class PooledMetric implements Metric {
+
+        private final MetricPool pool;
+        private final ArrayDeque<PooledMetric> idle;
+        private final Metric delegate;
+        private final Thread owner;
+        private LeakTracker tracker;
+
+        PooledMetric(final MetricPool pool, final ArrayDeque<PooledMetric> idle, final Metric delegate) {
+
+            this.pool = pool;
+            this.idle = idle;
+            this.delegate = delegate;
+            this.owner = Thread.currentThread();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void open() {
+
+            checkBorrowed();
+            delegate.open();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+
+            checkBorrowed();
+            try {
+
+                delegate.close();
+            } finally {
+
+                pool.release(this);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addMeasure(final String name, final double value) {
+
+            checkBorrowed();
+            delegate.addMeasure(name, value);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void resetMeasures() {
+
+            checkBorrowed();
+            delegate.resetMeasures();
+        }
+
+        private void checkBorrowed() {
+
+            Preconditions.checkState(tracker.borrowed, "Metric already closed and returned to the pool.");
+        }
+    }
+}
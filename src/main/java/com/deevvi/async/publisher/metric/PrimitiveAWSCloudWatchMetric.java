@@ -0,0 +1,193 @@
+package com.deevvi.async.publisher.metric;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * Metric implementation using AWS CloudWatch that records measures as primitives.
+ * <p>
+ * Measure names are kept in a table and measures reference them by index, values and timestamps are kept
+ * in arrays reused from one use of the metric to the next. On close, measures are copied to a {@link MeasureRecorder},
+ * which builds the CW datums on its own thread: once the arrays have grown to the number of measures of a request,
+ * open, addMeasure and close don't allocate. Instances are not thread safe.
+ */
+public final class PrimitiveAWSCloudWatchMetric implements Metric {
+
+    /**
+     * Initial number of measures and of distinct measure names the arrays can hold.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Number of distinct measure names above which the names table is cleared on reset,
+     * so that metrics using dynamic measure names don't grow without limit.
+     */
+    private static final int MAX_KEPT_NAMES = 64;
+
+    /**
+     * Recorder receiving the measures on close.
+     */
+    private final MeasureRecorder recorder;
+
+    /**
+     * Resolved datum names of the metric.
+     */
+    private final MetricNames metricNames;
+
+    /**
+     * Distinct measure names added to this metric.
+     */
+    private String[] names;
+    private int namesCount;
+
+    /**
+     * Measures added since the last reset: index of the name in the names table, value and timestamp.
+     */
+    private int[] nameIds;
+    private double[] values;
+    private long[] timestamps;
+    private int count;
+
+    /**
+     * Clock used for durations and timestamps.
+     */
+    private MetricClock clock;
+
+    /**
+     * Whether open() was called.
+     */
+    private boolean opened;
+
+    /**
+     * Monotonic clock value read on open, in nanoseconds.
+     */
+    private long openNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param recorder measure recorder
+     * @param name     metric name
+     */
+    public PrimitiveAWSCloudWatchMetric(final MeasureRecorder recorder, final String name) {
+
+        this(recorder, new MetricNames(name));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param recorder    measure recorder
+     * @param metricNames resolved datum names of the metric, shared by metrics with the same name
+     */
+    public PrimitiveAWSCloudWatchMetric(final MeasureRecorder recorder, final MetricNames metricNames) {
+
+        Preconditions.checkNotNull(recorder, "Measure recorder cannot be null.");
+        Preconditions.checkNotNull(metricNames, "Metric names cannot be null.");
+
+        this.recorder = recorder;
+        this.metricNames = metricNames;
+        this.names = new String[INITIAL_CAPACITY];
+        this.nameIds = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.clock = SystemMetricClock.INSTANCE;
+    }
+
+    /**
+     * Set the clock used for durations and timestamps, {@link SystemMetricClock} by default.
+     *
+     * @param clock metric clock
+     */
+    public void setClock(final MetricClock clock) {
+
+        Preconditions.checkNotNull(clock, "Clock cannot be null.");
+
+        this.clock = clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open() {
+
+        opened = true;
+        openNanos = clock.monotonicNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+
+        Preconditions.checkArgument(opened, "Missing open() call.");
+
+        double durationMillis = (clock.monotonicNanos() - openNanos) / AWSCloudWatchMetric.NANOS_PER_MILLI;
+        recorder.record(metricNames, names, nameIds, values, timestamps, count, durationMillis, clock.wallClockMillis());
+        resetMeasures();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addMeasure(final String name, final double value) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(name), "Measure name cannot be null or empty.");
+        Preconditions.checkArgument(opened, "Missing open() call.");
+
+        if (count == values.length) {
+
+            nameIds = Arrays.copyOf(nameIds, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            timestamps = Arrays.copyOf(timestamps, count * 2);
+        }
+
+        nameIds[count] = nameId(name);
+        values[count] = value;
+        timestamps[count] = clock.wallClockMillis();
+        count++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetMeasures() {
+
+        count = 0;
+        if (namesCount > MAX_KEPT_NAMES) {
+
+            Arrays.fill(names, 0, namesCount, null);
+            namesCount = 0;
+        }
+    }
+
+    /**
+     * Find the index of a measure name, adding it to the names table the first time it's used.
+     *
+     * @param name measure name
+     * @return index in the names table
+     */
+    private int nameId(final String name) {
+
+        for (int index = 0; index < namesCount; index++) {
+
+            if (names[index] == name || names[index].equals(name)) {
+
+                return index;
+            }
+        }
+
+        if (namesCount == names.length) {
+
+            names = Arrays.copyOf(names, namesCount * 2);
+        }
+        names[namesCount] = name;
+        return namesCount++;
+    }
+}
@@ -0,0 +1,36 @@
+package com.deevvi.async.publisher.metric;
+
+/**
+ * Clock reading {@link System#nanoTime()} for durations and {@link System#currentTimeMillis()} for timestamps.
+ */
+public final class SystemMetricClock implements MetricClock {
+
+    /**
+     * Shared instance; the clock has no state.
+     */
+    public static final SystemMetricClock INSTANCE = new SystemMetricClock();
+
+    /**
+     * Private constructor, use {@link #INSTANCE}.
+     */
+    private SystemMetricClock() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long monotonicNanos() {
+
+        return System.nanoTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long wallClockMillis() {
+
+        return System.currentTimeMillis();
+    }
+}
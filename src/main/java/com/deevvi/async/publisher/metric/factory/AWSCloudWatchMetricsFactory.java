@@ -1,9 +1,18 @@
 package com.deevvi.async.publisher.metric.factory;
 
 import com.deevvi.async.publisher.metric.AWSCloudWatchMetric;
+import com.deevvi.async.publisher.metric.MeasureRecorder;
 import com.deevvi.async.publisher.metric.Metric;
+import com.deevvi.async.publisher.metric.MetricClock;
+import com.deevvi.async.publisher.metric.MetricNames;
+import com.deevvi.async.publisher.metric.MetricPool;
+import com.deevvi.async.publisher.metric.PrimitiveAWSCloudWatchMetric;
+import com.deevvi.async.publisher.metric.SystemMetricClock;
 import com.deevvi.async.publisher.publisher.MetricsPublisher;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -11,11 +20,36 @@ import org.apache.commons.lang.StringUtils;
  */
 public final class AWSCloudWatchMetricsFactory implements MetricsFactory {
 
+    /**
+     * Default maximum number of metric names whose resolved datum names are cached.
+     */
+    public static final int DEFAULT_MAX_CACHED_NAMES = 1024;
+
     /**
      * Metrics publisher
      */
     private final MetricsPublisher metricsPublisher;
 
+    /**
+     * Recorder used by primitive-backed metrics, null when metrics publish their datums directly.
+     */
+    private final MeasureRecorder measureRecorder;
+
+    /**
+     * Resolved datum names, by metric name; least recently used names are evicted first.
+     */
+    private final LoadingCache<String, MetricNames> metricNamesCache;
+
+    /**
+     * Clock given to the created metrics.
+     */
+    private volatile MetricClock clock = SystemMetricClock.INSTANCE;
+
+    /**
+     * Pool of the metrics handed out by {@link #borrowMetric(String)}.
+     */
+    private final MetricPool metricPool = new MetricPool(this::newMetric);
+
     /**
      * Constructor.
      *
@@ -26,6 +60,23 @@ public final class AWSCloudWatchMetricsFactory implements MetricsFactory {
         Preconditions.checkNotNull(metricsPublisher, "Metrics publisher cannot be null or empty.");
 
         this.metricsPublisher = metricsPublisher;
+        this.measureRecorder = null;
+        this.metricNamesCache = newMetricNamesCache(DEFAULT_MAX_CACHED_NAMES);
+    }
+
+    /**
+     * Constructor for a factory of primitive-backed metrics, which hand their measures to a recorder
+     * and don't allocate when reused.
+     *
+     * @param measureRecorder measure recorder
+     */
+    public AWSCloudWatchMetricsFactory(final MeasureRecorder measureRecorder) {
+
+        Preconditions.checkNotNull(measureRecorder, "Measure recorder cannot be null.");
+
+        this.metricsPublisher = null;
+        this.measureRecorder = measureRecorder;
+        this.metricNamesCache = newMetricNamesCache(DEFAULT_MAX_CACHED_NAMES);
     }
 
     /**
@@ -36,6 +87,60 @@ public final class AWSCloudWatchMetricsFactory implements MetricsFactory {
 
         Preconditions.checkNotNull(StringUtils.trimToNull(name), "Metrics name cannot be null or empty.");
 
-        return new AWSCloudWatchMetric(metricsPublisher, name);
+        MetricNames metricNames = metricNamesCache.getUnchecked(name);
+        if (measureRecorder != null) {
+
+            PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(measureRecorder, metricNames);
+            metric.setClock(clock);
+            return metric;
+        }
+
+        AWSCloudWatchMetric metric = new AWSCloudWatchMetric(metricsPublisher, metricNames);
+        metric.setClock(clock);
+        return metric;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Metric borrowMetric(final String name) {
+
+        return metricPool.borrow(name);
+    }
+
+    /**
+     * @return number of borrowed metrics that were garbage collected without being closed
+     */
+    public long getLeakedMetrics() {
+
+        return metricPool.getLeakedMetrics();
+    }
+
+    /**
+     * Set the clock given to the metrics created from now on, {@link SystemMetricClock} by default.
+     * A {@link com.deevvi.async.publisher.metric.CachedMetricClock} makes timestamps cheaper to read.
+     *
+     * @param clock metric clock
+     */
+    public void setClock(final MetricClock clock) {
+
+        Preconditions.checkNotNull(clock, "Clock cannot be null.");
+
+        this.clock = clock;
+    }
+
+    private static LoadingCache<String, MetricNames> newMetricNamesCache(final int maxCachedNames) {
+
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxCachedNames)
+                .build(new CacheLoader<String, MetricNames>() {
+
+                    @Override
+                    public MetricNames load(final String name) {
+
+                        return new MetricNames(name);
+                    }
+                });
     }
 }
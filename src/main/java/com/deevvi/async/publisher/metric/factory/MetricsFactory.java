@@ -14,4 +14,16 @@ public interface MetricsFactory {
      * @return new metric
      */
     Metric newMetric(String name);
+
+    /**
+     * Borrow a metric from a pool confined to the current thread. The metric goes back to the pool when it's
+     * closed by the same thread, and must not be used after close. By default, a new metric is created.
+     *
+     * @param name metric name
+     * @return metric, with no measures
+     */
+    default Metric borrowMetric(final String name) {
+
+        return newMetric(name);
+    }
 }
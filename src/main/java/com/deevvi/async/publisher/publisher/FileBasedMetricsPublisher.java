@@ -3,42 +3,62 @@ package com.deevvi.async.publisher.publisher;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.deevvi.async.publisher.publisher.callable.FileBasedCallable;
+import com.deevvi.async.publisher.publisher.callable.RetryPolicy;
+import com.deevvi.async.publisher.publisher.spool.AsyncSpoolWriter;
+import com.deevvi.async.publisher.publisher.spool.SegmentEncoder;
+import com.deevvi.async.publisher.publisher.spool.SpoolWriter;
+import com.deevvi.async.publisher.publisher.spool.SyncPolicy;
 import com.deevvi.async.publisher.utils.FileUtils;
 import com.google.common.base.Preconditions;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import static com.deevvi.async.publisher.utils.FileUtils.generateLogFileTimeRollingSuffix;
-import static com.deevvi.async.publisher.utils.JSONUtils.encodeToJSON;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Metrics publisher using a file as a buffer.
  * Metrics are accumulated to a file and from that another process reads and publish to CW.
+ * <p>
+ * Metrics are written as binary spool records, see {@link SegmentEncoder}, by a {@link SpoolWriter} that keeps
+ * the active segment open and coalesces concurrent publishes; files written in JSON by previous versions are still read.
  */
 public final class FileBasedMetricsPublisher implements MetricsPublisher {
 
     /**
-     * Folder where to store the files.
+     * Maximum time to wait for the reading process to stop on close.
      */
-    private final String filePath;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
     /**
      * Executors that handles process for reading from that file.
      */
     private final ExecutorService logsPublisher;
 
+    /**
+     * Process reading the files and publishing them to CW.
+     */
+    private final FileBasedCallable task;
+
+    /**
+     * Writer of the spool segments, shared by the publishing threads.
+     */
+    private final SpoolWriter spoolWriter;
+
+    /**
+     * Writer thread taking the disk writes off the publishing threads, null when metrics are written on publish.
+     */
+    private volatile AsyncSpoolWriter asyncWriter;
+
     /**
      * Constructor.
      *
      * @param client           - AWS CloudWatch client
      * @param filePath         - path where to store files
      * @param namespace        - namespace used for CW publishing
-     * @param millisBetweenRun - time interval in millis between 2 file reads
+     * @param millisBetweenRun - time interval in millis between 2 file reads while a file is pending
      */
     public FileBasedMetricsPublisher(final AmazonCloudWatch client,
                                      final String filePath,
@@ -51,9 +71,10 @@ public final class FileBasedMetricsPublisher implements MetricsPublisher {
         Preconditions.checkArgument(millisBetweenRun > 0, "Wait time interval cannot be negative.");
 
         FileUtils.validatePath(filePath);
-        this.filePath = filePath;
+        this.spoolWriter = new SpoolWriter(filePath);
         this.logsPublisher = Executors.newSingleThreadExecutor();
-        logsPublisher.submit(new FileBasedCallable(client, filePath, namespace, millisBetweenRun));
+        this.task = new FileBasedCallable(client, filePath, namespace, millisBetweenRun, spoolWriter.getSignal());
+        logsPublisher.submit(task);
     }
 
     /**
@@ -62,7 +83,7 @@ public final class FileBasedMetricsPublisher implements MetricsPublisher {
      * @param client                    - AWS CloudWatch client
      * @param filePath                  - path where to store files
      * @param namespace                 - namespace used for CW publishing
-     * @param millisBetweenRun          - time interval in millis between 2 file reads
+     * @param millisBetweenRun          - time interval in millis between 2 file reads while a file is pending
      * @param logsRetentionPeriodMillis - time interval in millis while logs are stored on disk
      */
     public FileBasedMetricsPublisher(final AmazonCloudWatch client,
@@ -78,9 +99,9 @@ public final class FileBasedMetricsPublisher implements MetricsPublisher {
         Preconditions.checkArgument(logsRetentionPeriodMillis > 0, "Retention period interval cannot be negative.");
 
         FileUtils.validatePath(filePath);
-        this.filePath = filePath;
+        this.spoolWriter = new SpoolWriter(filePath);
         this.logsPublisher = Executors.newSingleThreadExecutor();
-        FileBasedCallable task = new FileBasedCallable(client, filePath, namespace, millisBetweenRun);
+        this.task = new FileBasedCallable(client, filePath, namespace, millisBetweenRun, spoolWriter.getSignal());
         task.setMaxTimeToKeepFilesInMillis(logsRetentionPeriodMillis);
         logsPublisher.submit(task);
     }
@@ -91,31 +112,156 @@ public final class FileBasedMetricsPublisher implements MetricsPublisher {
     @Override
     public void publish(final Collection<MetricDatum> metrics) throws IOException {
 
+        Preconditions.checkNotNull(metrics, "Metrics list cannot be null");
+
         if (logsPublisher.isShutdown()) {
 
             throw new IOException("Publisher channel is closed.");
         }
 
-        String fullFilePath = filePath + generateLogFileTimeRollingSuffix();
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(fullFilePath, true))) {
+        AsyncSpoolWriter writer = asyncWriter;
+        try {
 
-            for (MetricDatum datum : metrics) {
+            if (writer != null) {
 
-                bw.write(encodeToJSON(datum));
-                bw.newLine();
+                writer.append(metrics);
+            } else {
+
+                spoolWriter.append(metrics);
             }
-        } catch (IOException e) {
+        } catch (IllegalArgumentException e) {
 
-            throw new IOException("Exception on writing to file: " + e);
+            throw new IOException("Exception on writing to file: " + e.getMessage(), e);
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Write metrics from a dedicated thread: {@link #publish(Collection)} hands the metrics over to the thread
+     * and returns without waiting for the disk. Metrics are written at most {@code durabilityWindowMillis} after
+     * they are published; use {@link #flush()} to wait until they are on disk. Can be set only once.
+     *
+     * @param durabilityWindowMillis maximum time in millis a published metric waits before being written; 0 writes as soon as possible
+     */
+    public synchronized void setDurabilityWindowMillis(final long durabilityWindowMillis) {
+
+        Preconditions.checkArgument(durabilityWindowMillis >= 0, "Durability window cannot be negative.");
+        Preconditions.checkState(asyncWriter == null, "Durability window already set.");
+
+        asyncWriter = new AsyncSpoolWriter(spoolWriter, durabilityWindowMillis);
+    }
+
+    /**
+     * Set when written metrics are forced to the storage device, trading publishing throughput for durability
+     * against OS crashes and power losses. Metrics are not forced by default.
+     *
+     * @param syncPolicy         sync policy
+     * @param syncIntervalMillis interval in millis between two forces, used by {@link SyncPolicy#PERIODIC} policy
+     */
+    public void setSyncPolicy(final SyncPolicy syncPolicy, final long syncIntervalMillis) {
+
+        spoolWriter.setSyncPolicy(syncPolicy, syncIntervalMillis);
+    }
+
+    /**
+     * Set when the file being written is rolled over, in addition to the end of each hour: smaller files are
+     * published and deleted sooner.
+     *
+     * @param maxFileBytes     size in bytes at which a file is rolled over, 0 for no limit
+     * @param maxFileAgeMillis age in millis at which a file is rolled over, 0 for no limit
+     */
+    public void setRollingPolicy(final long maxFileBytes, final long maxFileAgeMillis) {
+
+        spoolWriter.setRollingPolicy(maxFileBytes, maxFileAgeMillis);
+    }
+
+    /**
+     * Set the number of files published to CW at once, e.g. to catch up faster after CW was unavailable.
+     * Default is 1.
+     *
+     * @param drainWorkers number of files published at once, each one with up to the maximum number of requests in
+     *                     flight per file, see {@link #setMaxConcurrentRequests(int)}
+     */
+    public void setDrainWorkers(final int drainWorkers) {
+
+        task.setDrainWorkers(drainWorkers);
+    }
+
+    /**
+     * Set the maximum number of requests to CW in flight for one file, sent while the next requests are read
+     * from the file. Default is 1.
+     *
+     * @param maxRequestsInFlight maximum number of requests in flight for one file
+     */
+    public void setMaxRequestsInFlight(final int maxRequestsInFlight) {
+
+        task.setMaxRequestsInFlight(maxRequestsInFlight);
+    }
+
+    /**
+     * Set the maximum number of requests to CW in flight for all the files together. Default is 0: up to
+     * {@code drainWorkers * maxRequestsInFlight} requests are in flight.
+     *
+     * @param maxConcurrentRequests maximum number of requests in flight, 0 for no limit other than the number
+     *                              of drain workers and of requests in flight per file
+     */
+    public void setMaxConcurrentRequests(final int maxConcurrentRequests) {
+
+        task.setMaxConcurrentRequests(maxConcurrentRequests);
+    }
+
+    /**
+     * Set the retry policy of the requests to CW: backoff between the attempts of a request, and circuit breaker
+     * stopping the requests after several failures in a row. Default is {@code new RetryPolicy()}.
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+
+        task.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * @return writer of the spool, e.g. to read its write and sync counters
+     */
+    public SpoolWriter getSpoolWriter() {
+
+        return spoolWriter;
+    }
+
+    /**
+     * Wait until the metrics published so far are written to disk. Returns immediately when metrics are written on publish.
+     *
+     * @throws IOException - if the publisher was closed before the metrics could be written
+     */
+    public void flush() throws IOException {
+
+        AsyncSpoolWriter writer = asyncWriter;
+        if (writer != null) {
+
+            writer.flush();
+        }
+    }
+
+    /**
+     * Stop the process reading the files, which waits for new metrics until interrupted, then write the pending
+     * metrics and close the files. Metrics not published yet to CW are published by the next publisher of the folder.
      */
     @Override
     public void closePublisher() {
 
-        logsPublisher.shutdown();
+        logsPublisher.shutdownNow();
+        AsyncSpoolWriter writer = asyncWriter;
+        if (writer != null) {
+
+            writer.close();
+        }
+        spoolWriter.close();
+        try {
+
+            logsPublisher.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
     }
 }
@@ -0,0 +1,232 @@
+package com.deevvi.async.publisher.publisher;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.publisher.buffer.BatchQueueMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.MetricsBuffer;
+import com.deevvi.async.publisher.publisher.callable.QueueBasedCallable;
+import com.deevvi.async.publisher.publisher.callable.RetryPolicy;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics publisher keeping metrics in memory, and spilling them to disk only when they cannot be sent in time.
+ * <p>
+ * Metrics are queued in memory and sent to CW as with a {@link QueueBasedMetricsPublisher}. They are spilled to
+ * the spool of a {@link FileBasedMetricsPublisher} instead when the queue holds more than a watermark of datums,
+ * when the circuit of the {@link RetryPolicy} is open, and when a request to CW fails: the spool is published
+ * to CW as soon as CW recovers, and survives a restart. A request rejected by CW is spilled too, so that the spool
+ * publisher quarantines the datums rejected and publishes the others. On close, the metrics still queued are spilled.
+ */
+public final class HybridMetricsPublisher implements MetricsPublisher {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(HybridMetricsPublisher.class);
+
+    /**
+     * Maximum time to wait for the sender to stop on close.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Metrics waiting to be sent from memory.
+     */
+    private final MetricsBuffer metricsBuffer;
+
+    /**
+     * Number of queued datums past which metrics are spilled.
+     */
+    private final int spillWatermark;
+
+    /**
+     * Executor of the sender reading metrics from memory.
+     */
+    private final ExecutorService logsPublisher;
+
+    /**
+     * Task reading metrics from memory and publishing them into CW.
+     */
+    private final QueueBasedCallable sender;
+
+    /**
+     * Publisher of the spilled metrics.
+     */
+    private final FileBasedMetricsPublisher spill;
+
+    /**
+     * Retry policy shared by the sender and the spool reader.
+     */
+    private volatile RetryPolicy retryPolicy;
+
+    /**
+     * Number of datums spilled to disk.
+     */
+    private final AtomicLong spilledDatums;
+
+    /**
+     * Constructor.
+     *
+     * @param client          AWS client
+     * @param filePath        path where to store the spilled metrics
+     * @param namespace       metrics namespace
+     * @param maxMillisToWait maximum interval to wait until to publish metrics in CW, and between 2 reads
+     *                        of the spilled metrics while CW fails
+     * @param spillWatermark  number of datums waiting in memory past which metrics are spilled
+     */
+    public HybridMetricsPublisher(final AmazonCloudWatch client,
+                                  final String filePath,
+                                  final String namespace,
+                                  final int maxMillisToWait,
+                                  final int spillWatermark) {
+
+        Preconditions.checkNotNull(client, "AWS client cannot be null.");
+        Preconditions.checkNotNull(StringUtils.trimToNull(filePath), "File path cannot be null or empty.");
+        Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
+        Preconditions.checkArgument(maxMillisToWait > 0, "Wait time interval cannot be negative.");
+        Preconditions.checkArgument(spillWatermark > 0, "Spill watermark must be positive.");
+
+        this.metricsBuffer = new BatchQueueMetricsBuffer();
+        this.spillWatermark = spillWatermark;
+        this.spilledDatums = new AtomicLong();
+        this.retryPolicy = new RetryPolicy();
+        this.spill = new FileBasedMetricsPublisher(client, filePath, namespace, maxMillisToWait);
+        this.spill.setRetryPolicy(retryPolicy);
+        this.sender = new QueueBasedCallable(metricsBuffer, client, namespace, maxMillisToWait);
+        this.sender.setRetryPolicy(retryPolicy);
+        this.sender.setFallback(new MetricsPublisher() {
+
+            @Override
+            public void publish(final Collection<MetricDatum> metrics) throws IOException {
+
+                spill(metrics);
+            }
+
+            @Override
+            public void closePublisher() {
+            }
+        });
+        this.logsPublisher = Executors.newSingleThreadExecutor();
+        this.logsPublisher.submit(sender);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(final Collection<MetricDatum> metrics) throws IOException {
+
+        Preconditions.checkNotNull(metrics, "Metrics list cannot be null");
+
+        if (logsPublisher.isShutdown()) {
+
+            throw new IOException("Publisher channel is closed.");
+        }
+
+        if (metricsBuffer.size() >= spillWatermark || retryPolicy.getRemainingOpenMillis() > 0) {
+
+            spill(metrics);
+            return;
+        }
+
+        try {
+
+            metricsBuffer.offerAll(metrics);
+        } catch (Exception e) {
+
+            throw new IOException("Exception on adding item to queue.");
+        }
+    }
+
+    /**
+     * Set the retry policy of the requests to CW, shared by the metrics sent from memory and the spilled ones.
+     * While its circuit is open, metrics are spilled. Default is {@code new RetryPolicy()}.
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+
+        Preconditions.checkNotNull(retryPolicy, "Retry policy cannot be null.");
+
+        this.retryPolicy = retryPolicy;
+        sender.setRetryPolicy(retryPolicy);
+        spill.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Enable or disable client-side aggregation of the metrics sent from memory, see
+     * {@link QueueBasedMetricsPublisher#setAggregationEnabled(boolean)}.
+     *
+     * @param aggregationEnabled true to aggregate datums before publishing
+     */
+    public void setAggregationEnabled(final boolean aggregationEnabled) {
+
+        sender.setAggregationEnabled(aggregationEnabled);
+    }
+
+    /**
+     * @return publisher of the spilled metrics, e.g. to set its sync or rolling policy
+     */
+    public FileBasedMetricsPublisher getSpillPublisher() {
+
+        return spill;
+    }
+
+    /**
+     * @return number of datums spilled to disk
+     */
+    public long getSpilledDatums() {
+
+        return spilledDatums.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void closePublisher() {
+
+        logsPublisher.shutdownNow();
+        try {
+
+            if (!logsPublisher.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                LOG.warn("Sender still running after {} ms.", CLOSE_TIMEOUT_MILLIS);
+            }
+
+            List<MetricDatum> queued = Lists.newArrayList();
+            metricsBuffer.drainTo(queued, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+            if (!queued.isEmpty()) {
+
+                spill(queued);
+            }
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+
+            LOG.warn("Exception on spilling the queued metrics:", e);
+        } finally {
+
+            spill.closePublisher();
+        }
+    }
+
+    private void spill(final Collection<MetricDatum> metrics) throws IOException {
+
+        spill.publish(metrics);
+        spilledDatums.addAndGet(metrics.size());
+    }
+}
@@ -1,17 +1,20 @@
 package com.deevvi.async.publisher.publisher;
 
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.publisher.buffer.BatchQueueMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.BoundedMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.MetricsBuffer;
 import com.deevvi.async.publisher.publisher.callable.QueueBasedCallable;
+import com.deevvi.async.publisher.publisher.callable.RetryPolicy;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -21,19 +24,19 @@ import java.util.concurrent.Executors;
 public final class QueueBasedMetricsPublisher implements MetricsPublisher {
 
     /**
-     * Class logger.
+     * Buffer used to make operations async.
      */
-    private static final Logger LOG = LoggerFactory.getLogger(QueueBasedMetricsPublisher.class);
+    private final MetricsBuffer metricsBuffer;
 
     /**
-     * Queue used to make operations async.
+     * Internal executor that handles the threads that publish metrics into CW.
      */
-    private final BlockingQueue<MetricDatum> metricsQueue;
+    private final ExecutorService logsPublisher;
 
     /**
-     * Internal executor that handles the thread that publishes metrics into CW.
+     * Tasks that read metrics from the queue and publish them into CW, one per sender thread.
      */
-    private final ExecutorService logsPublisher;
+    private final List<QueueBasedCallable> senders;
 
     /**
      * Constructor.
@@ -46,13 +49,151 @@ public final class QueueBasedMetricsPublisher implements MetricsPublisher {
                                       final String namespace,
                                       final int maxMillisToWait) {
 
+        this(client, namespace, maxMillisToWait, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client          AWS client
+     * @param namespace       metrics namespace
+     * @param maxMillisToWait maximum interval to wait until to publish metrics in CW
+     * @param senders         number of threads draining the queue, i.e. maximum number of CW requests in flight
+     */
+    public QueueBasedMetricsPublisher(final AmazonCloudWatch client,
+                                      final String namespace,
+                                      final int maxMillisToWait,
+                                      final int senders) {
+
+        this(client, namespace, maxMillisToWait, senders, new BatchQueueMetricsBuffer());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client          AWS client
+     * @param namespace       metrics namespace
+     * @param maxMillisToWait maximum interval to wait until to publish metrics in CW
+     * @param senders         number of threads draining the buffer, i.e. maximum number of CW requests in flight
+     * @param metricsBuffer   buffer between the publishing threads and the senders, e.g. a {@link BoundedMetricsBuffer}
+     */
+    public QueueBasedMetricsPublisher(final AmazonCloudWatch client,
+                                      final String namespace,
+                                      final int maxMillisToWait,
+                                      final int senders,
+                                      final MetricsBuffer metricsBuffer) {
+
         Preconditions.checkNotNull(client, "AWS client cannot be null.");
         Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
         Preconditions.checkArgument(maxMillisToWait > 0, "Wait time interval cannot be negative.");
+        Preconditions.checkArgument(senders > 0, "Number of senders must be positive.");
+        Preconditions.checkNotNull(metricsBuffer, "Metrics buffer cannot be null.");
+
+        this.metricsBuffer = metricsBuffer;
+        this.logsPublisher = Executors.newFixedThreadPool(senders);
+        this.senders = Lists.newArrayList();
+        RetryPolicy retryPolicy = new RetryPolicy();
+        for (int index = 0; index < senders; index++) {
+
+            QueueBasedCallable sender = new QueueBasedCallable(metricsBuffer, client, namespace, maxMillisToWait);
+            sender.setRetryPolicy(retryPolicy);
+            this.senders.add(sender);
+            this.logsPublisher.submit(sender);
+        }
+    }
+
+    /**
+     * Constructor for a publisher with a single sender.
+     *
+     * @param metricsBuffer buffer between the publishing threads and the sender
+     * @param sender        task reading metrics from the buffer and publishing them into CW
+     */
+    private QueueBasedMetricsPublisher(final MetricsBuffer metricsBuffer, final QueueBasedCallable sender) {
 
-        this.metricsQueue = Queues.newLinkedBlockingQueue();
+        this.metricsBuffer = metricsBuffer;
         this.logsPublisher = Executors.newSingleThreadExecutor();
-        this.logsPublisher.submit(new QueueBasedCallable(metricsQueue, client, namespace, maxMillisToWait));
+        this.senders = Lists.newArrayList(sender);
+        this.logsPublisher.submit(sender);
+    }
+
+    /**
+     * Build a non-blocking publisher: a single thread drains the queue and pipelines
+     * requests on the async client, keeping up to {@code maxInFlightRequests} of them in flight.
+     * <p>
+     * A factory method rather than a constructor, so that an {@link AmazonCloudWatchAsync} client passed to
+     * {@link #QueueBasedMetricsPublisher(AmazonCloudWatch, String, int, int)} keeps its blocking senders.
+     *
+     * @param client              AWS async client
+     * @param namespace           metrics namespace
+     * @param maxMillisToWait     maximum interval to wait until to publish metrics in CW
+     * @param maxInFlightRequests maximum number of CW requests sent and not completed yet
+     * @return non-blocking publisher
+     */
+    public static QueueBasedMetricsPublisher nonBlocking(final AmazonCloudWatchAsync client,
+                                                         final String namespace,
+                                                         final int maxMillisToWait,
+                                                         final int maxInFlightRequests) {
+
+        return nonBlocking(client, namespace, maxMillisToWait, maxInFlightRequests, new BatchQueueMetricsBuffer());
+    }
+
+    /**
+     * Build a non-blocking publisher: a single thread drains the buffer and pipelines
+     * requests on the async client, keeping up to {@code maxInFlightRequests} of them in flight.
+     *
+     * @param client              AWS async client
+     * @param namespace           metrics namespace
+     * @param maxMillisToWait     maximum interval to wait until to publish metrics in CW
+     * @param maxInFlightRequests maximum number of CW requests sent and not completed yet
+     * @param metricsBuffer       buffer between the publishing threads and the sender, e.g. a {@link BoundedMetricsBuffer}
+     * @return non-blocking publisher
+     */
+    public static QueueBasedMetricsPublisher nonBlocking(final AmazonCloudWatchAsync client,
+                                                         final String namespace,
+                                                         final int maxMillisToWait,
+                                                         final int maxInFlightRequests,
+                                                         final MetricsBuffer metricsBuffer) {
+
+        Preconditions.checkNotNull(client, "AWS client cannot be null.");
+        Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
+        Preconditions.checkArgument(maxMillisToWait > 0, "Wait time interval cannot be negative.");
+        Preconditions.checkArgument(maxInFlightRequests > 0, "Maximum number of in flight requests must be positive.");
+        Preconditions.checkNotNull(metricsBuffer, "Metrics buffer cannot be null.");
+
+        return new QueueBasedMetricsPublisher(metricsBuffer,
+                new QueueBasedCallable(metricsBuffer, client, namespace, maxMillisToWait, maxInFlightRequests));
+    }
+
+    /**
+     * Enable or disable client-side aggregation: datums with same name, unit and minute are published
+     * as a single statistic set (sum, min, max, sample count), reducing the number of CW calls.
+     *
+     * @param aggregationEnabled true to aggregate datums before publishing
+     */
+    public void setAggregationEnabled(final boolean aggregationEnabled) {
+
+        senders.forEach(sender -> sender.setAggregationEnabled(aggregationEnabled));
+    }
+
+    /**
+     * Set the retry policy of the requests to CW, shared by all the senders: backoff between the attempts of
+     * a request, and circuit breaker stopping the requests after several failures in a row.
+     * Default is {@code new RetryPolicy()}.
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+
+        senders.forEach(sender -> sender.setRetryPolicy(retryPolicy));
+    }
+
+    /**
+     * @return number of datums dropped by the senders because CW failed or rejected them, or the circuit of the retry
+     * policy was open
+     */
+    public long getDroppedDatums() {
+
+        return senders.stream().mapToLong(QueueBasedCallable::getDroppedDatums).sum();
     }
 
     /**
@@ -68,16 +209,12 @@ public final class QueueBasedMetricsPublisher implements MetricsPublisher {
             throw new IOException("Publisher channel is closed.");
         }
 
-        for (MetricDatum measure : metrics) {
-
-            try {
+        try {
 
-                metricsQueue.put(measure);
-                LOG.info("Published {} metrics to the queue. ", metrics.size());
-            } catch (Exception e) {
+            metricsBuffer.offerAll(metrics);
+        } catch (Exception e) {
 
-                throw new IOException("Exception on adding item to queue.");
-            }
+            throw new IOException("Exception on adding item to queue.");
         }
     }
 
@@ -0,0 +1,140 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Queues;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded metrics buffer that hands off each published collection as one unit:
+ * one queue insertion per collection instead of one per datum.
+ * Senders unpack the collections while assembling their batches.
+ */
+public final class BatchQueueMetricsBuffer implements MetricsBuffer {
+
+    /**
+     * Published collections, oldest first.
+     */
+    private final BlockingQueue<Collection<MetricDatum>> batches;
+
+    /**
+     * Datums of the collection being drained by the senders, guarded by the consumer lock.
+     */
+    private Iterator<MetricDatum> current;
+
+    /**
+     * Serializes senders; publishers never take it.
+     */
+    private final ReentrantLock consumerLock;
+
+    /**
+     * Number of datums in the buffer.
+     */
+    private final AtomicInteger size;
+
+    /**
+     * Constructor.
+     */
+    public BatchQueueMetricsBuffer() {
+
+        this.batches = Queues.newLinkedBlockingQueue();
+        this.current = ImmutableList.<MetricDatum>of().iterator();
+        this.consumerLock = new ReentrantLock();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean offer(final MetricDatum datum) throws InterruptedException {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        return offerAll(ImmutableList.of(datum)) == 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int offerAll(final Collection<MetricDatum> datums) throws InterruptedException {
+
+        Preconditions.checkNotNull(datums, "Metrics list cannot be null");
+
+        if (datums.isEmpty()) {
+
+            return 0;
+        }
+
+        Collection<MetricDatum> batch = ImmutableList.copyOf(datums);
+        size.addAndGet(batch.size());
+        batches.put(batch);
+        return batch.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int drainTo(final Collection<? super MetricDatum> sink, final int maxItems, final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        // waiting for another consumer counts in the timeout, so that a consumer doesn't wait twice as long
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!consumerLock.tryLock(timeout, unit)) {
+
+            return 0;
+        }
+        try {
+
+            if (!current.hasNext()) {
+
+                Collection<MetricDatum> batch = batches.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (batch == null) {
+
+                    return 0;
+                }
+                current = batch.iterator();
+            }
+
+            int drained = 0;
+            while (drained < maxItems) {
+
+                if (!current.hasNext()) {
+
+                    Collection<MetricDatum> batch = batches.poll();
+                    if (batch == null) {
+
+                        break;
+                    }
+                    current = batch.iterator();
+                }
+
+                sink.add(current.next());
+                drained++;
+            }
+
+            size.addAndGet(-drained);
+            return drained;
+        } finally {
+
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+
+        return size.get();
+    }
+}
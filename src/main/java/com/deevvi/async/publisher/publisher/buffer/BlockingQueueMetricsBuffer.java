@@ -0,0 +1,67 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics buffer backed by a {@link BlockingQueue}. Datums are never dropped: if the queue is bounded,
+ * publishers wait for space.
+ */
+public final class BlockingQueueMetricsBuffer implements MetricsBuffer {
+
+    /**
+     * Queue holding the datums.
+     */
+    private final BlockingQueue<MetricDatum> queue;
+
+    /**
+     * Constructor.
+     *
+     * @param queue queue holding the datums
+     */
+    public BlockingQueueMetricsBuffer(final BlockingQueue<MetricDatum> queue) {
+
+        Preconditions.checkNotNull(queue, "Queue cannot be null.");
+
+        this.queue = queue;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean offer(final MetricDatum datum) throws InterruptedException {
+
+        queue.put(datum);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int drainTo(final Collection<? super MetricDatum> sink, final int maxItems, final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        MetricDatum first = queue.poll(timeout, unit);
+        if (first == null) {
+
+            return 0;
+        }
+
+        sink.add(first);
+        return 1 + queue.drainTo(sink, maxItems - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+
+        return queue.size();
+    }
+}
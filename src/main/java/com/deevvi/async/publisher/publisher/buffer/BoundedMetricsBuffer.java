@@ -0,0 +1,298 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.MetricDatumUtils;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Metrics buffer with a capacity limit, counted in datums or in estimated bytes.
+ * When the buffer is full, new datums are handled according to an {@link OverloadPolicy};
+ * dropped datums are counted.
+ */
+public final class BoundedMetricsBuffer implements MetricsBuffer {
+
+    /**
+     * Default maximum time a publisher waits for room with the {@link OverloadPolicy#BLOCK} policy.
+     */
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 100;
+
+    private final long capacity;
+    private final CapacityUnit capacityUnit;
+    private final OverloadPolicy policy;
+    private final long blockTimeoutNanos;
+
+    /**
+     * Datums waiting to be sent, oldest first.
+     */
+    private final ArrayDeque<MetricDatum> datums;
+
+    /**
+     * Capacity used by the datums in the buffer, in capacity unit.
+     */
+    private long used;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+
+    private final AtomicLong droppedDatums;
+    private final AtomicLong droppedBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity     maximum capacity of the buffer
+     * @param capacityUnit unit in which capacity is counted
+     * @param policy       policy applied when the buffer is full
+     */
+    public BoundedMetricsBuffer(final long capacity, final CapacityUnit capacityUnit, final OverloadPolicy policy) {
+
+        this(capacity, capacityUnit, policy, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity           maximum capacity of the buffer
+     * @param capacityUnit       unit in which capacity is counted
+     * @param policy             policy applied when the buffer is full
+     * @param blockTimeoutMillis maximum time to wait for room, used by {@link OverloadPolicy#BLOCK} policy
+     */
+    public BoundedMetricsBuffer(final long capacity,
+                                final CapacityUnit capacityUnit,
+                                final OverloadPolicy policy,
+                                final long blockTimeoutMillis) {
+
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+        Preconditions.checkNotNull(capacityUnit, "Capacity unit cannot be null.");
+        Preconditions.checkNotNull(policy, "Overload policy cannot be null.");
+        Preconditions.checkArgument(blockTimeoutMillis >= 0, "Block timeout cannot be negative.");
+
+        this.capacity = capacity;
+        this.capacityUnit = capacityUnit;
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.datums = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.droppedDatums = new AtomicLong();
+        this.droppedBytes = new AtomicLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean offer(final MetricDatum datum) throws InterruptedException {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        long weight = weigh(datum);
+        if (weight > capacity) {
+
+            drop(datum);
+            return false;
+        }
+
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        lock.lockInterruptibly();
+        try {
+
+            if (!makeRoom(weight, deadline)) {
+
+                drop(datum);
+                return false;
+            }
+
+            datums.addLast(datum);
+            used += weight;
+            notEmpty.signal();
+            return true;
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand off a collection of datums, taking the lock once for the whole collection. With the
+     * {@link OverloadPolicy#BLOCK} policy, the block timeout applies to the whole collection.
+     *
+     * @param metrics metric datums
+     * @return number of datums accepted
+     * @throws InterruptedException - if interrupted while waiting for room
+     */
+    @Override
+    public int offerAll(final Collection<MetricDatum> metrics) throws InterruptedException {
+
+        Preconditions.checkNotNull(metrics, "Metrics list cannot be null");
+
+        int accepted = 0;
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        lock.lockInterruptibly();
+        try {
+
+            for (MetricDatum datum : metrics) {
+
+                Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+                long weight = weigh(datum);
+                if (weight > capacity || !makeRoom(weight, deadline)) {
+
+                    drop(datum);
+                    continue;
+                }
+
+                datums.addLast(datum);
+                used += weight;
+                accepted++;
+            }
+
+            if (accepted > 0) {
+
+                notEmpty.signal();
+            }
+            return accepted;
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int drainTo(final Collection<? super MetricDatum> sink, final int maxItems, final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+
+            while (datums.isEmpty()) {
+
+                if (nanos <= 0) {
+
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            int drained = 0;
+            while (drained < maxItems && !datums.isEmpty()) {
+
+                MetricDatum datum = datums.pollFirst();
+                used -= weigh(datum);
+                sink.add(datum);
+                drained++;
+            }
+
+            notFull.signalAll();
+            return drained;
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+
+        lock.lock();
+        try {
+
+            return datums.size();
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of datums dropped by the overload policy
+     */
+    public long getDroppedDatums() {
+
+        return droppedDatums.get();
+    }
+
+    /**
+     * @return estimated size of the datums dropped by the overload policy
+     */
+    public long getDroppedBytes() {
+
+        return droppedBytes.get();
+    }
+
+    /**
+     * Apply the overload policy until there is room for a datum. Must be called while holding the lock.
+     *
+     * @param weight   weight of the new datum
+     * @param deadline {@link System#nanoTime()} past which the {@link OverloadPolicy#BLOCK} policy stops waiting
+     * @return true if the new datum can be added
+     */
+    private boolean makeRoom(final long weight, final long deadline) throws InterruptedException {
+
+        switch (policy) {
+
+            case BLOCK:
+                while (used + weight > capacity) {
+
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+
+                        return false;
+                    }
+                    // wake a sender for the datums already added by this call
+                    notEmpty.signal();
+                    notFull.awaitNanos(nanos);
+                }
+                return true;
+
+            case DROP_OLDEST:
+                while (used + weight > capacity) {
+
+                    MetricDatum oldest = datums.pollFirst();
+                    used -= weigh(oldest);
+                    drop(oldest);
+                }
+                return true;
+
+            case SAMPLE:
+                if (used + weight > capacity) {
+
+                    return false;
+                }
+                long watermark = capacity / 2;
+                return used <= watermark
+                        || ThreadLocalRandom.current().nextDouble() * (capacity - watermark) < capacity - used;
+
+            case DROP_NEWEST:
+            default:
+                return used + weight <= capacity;
+        }
+    }
+
+    private long weigh(final MetricDatum datum) {
+
+        return capacityUnit == CapacityUnit.DATUMS ? 1 : MetricDatumUtils.estimateEncodedSize(datum);
+    }
+
+    private void drop(final MetricDatum datum) {
+
+        droppedDatums.incrementAndGet();
+        droppedBytes.addAndGet(MetricDatumUtils.estimateEncodedSize(datum));
+    }
+}
@@ -0,0 +1,17 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+/**
+ * Unit in which the capacity of a bounded buffer is counted.
+ */
+public enum CapacityUnit {
+
+    /**
+     * Number of datums.
+     */
+    DATUMS,
+
+    /**
+     * Estimated size of the datums, as sent to CW.
+     */
+    BYTES
+}
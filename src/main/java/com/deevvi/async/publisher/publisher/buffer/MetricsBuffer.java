@@ -0,0 +1,60 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off between the threads publishing metrics and the threads sending them to CW.
+ */
+public interface MetricsBuffer {
+
+    /**
+     * Hand off a datum to the senders.
+     *
+     * @param datum metric datum
+     * @return true if the datum was accepted, false if it was dropped
+     * @throws InterruptedException - if interrupted while waiting for space
+     * @throws NullPointerException - if argument is null
+     */
+    boolean offer(MetricDatum datum) throws InterruptedException;
+
+    /**
+     * Hand off a collection of datums to the senders.
+     *
+     * @param datums metric datums
+     * @return number of datums accepted
+     * @throws InterruptedException - if interrupted while waiting for space
+     * @throws NullPointerException - if argument is null
+     */
+    default int offerAll(Collection<MetricDatum> datums) throws InterruptedException {
+
+        int accepted = 0;
+        for (MetricDatum datum : datums) {
+
+            if (offer(datum)) {
+
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Wait until at least one datum is available, then move the available datums to a collection.
+     *
+     * @param sink     collection receiving the datums
+     * @param maxItems maximum number of datums to move
+     * @param timeout  maximum time to wait for the first datum
+     * @param unit     time unit of the timeout
+     * @return number of datums moved, 0 if none became available in time
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    int drainTo(Collection<? super MetricDatum> sink, int maxItems, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * @return number of datums waiting to be sent
+     */
+    int size();
+}
@@ -0,0 +1,27 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+/**
+ * What a bounded buffer does with a datum when it has no room left.
+ */
+public enum OverloadPolicy {
+
+    /**
+     * Wait for room up to a timeout, then drop the new datum.
+     */
+    BLOCK,
+
+    /**
+     * Drop the new datum right away.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the oldest datums until the new one fits.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Past half of the capacity, accept new datums with a probability that decreases linearly to 0 when full.
+     */
+    SAMPLE
+}
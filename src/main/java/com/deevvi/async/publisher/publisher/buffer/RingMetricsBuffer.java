@@ -0,0 +1,263 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free metrics buffer backed by a preallocated multi-producer/single-consumer ring.
+ * <p>
+ * Publishers claim slots with a single compare-and-set on the claim sequence, one per datum or one per batch,
+ * write the datums, then publish each slot by storing its sequence. The sender reads the published slots in order
+ * and waits for new ones according to a {@link WaitStrategy}. Publishers never block: when the ring is full, datums
+ * are dropped and counted. They don't allocate either when they offer single datums or random access lists, e.g.
+ * an {@code ArrayList} or an {@code ImmutableList}; other collections are read through an iterator.
+ * <p>
+ * Senders are serialized by a lock that publishers never take, so the buffer stays correct with several senders,
+ * but it is meant to be drained by one.
+ */
+public final class RingMetricsBuffer implements MetricsBuffer {
+
+    /**
+     * Slots holding the datums.
+     */
+    private final MetricDatum[] entries;
+
+    /**
+     * Sequence published in each slot; a slot is readable when it holds the sequence the sender expects.
+     */
+    private final AtomicLongArray published;
+
+    private final int capacity;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Next sequence to be claimed by publishers.
+     */
+    private final AtomicLong claimed;
+
+    /**
+     * Next sequence to be read by the sender; slots before it are free.
+     */
+    private volatile long consumed;
+
+    /**
+     * Serializes senders.
+     */
+    private final ReentrantLock consumerLock;
+
+    private final AtomicLong droppedDatums;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity     number of slots, rounded up to a power of two
+     * @param waitStrategy how the sender waits for new datums
+     */
+    public RingMetricsBuffer(final int capacity, final WaitStrategy waitStrategy) {
+
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be positive and at most 2^30.");
+        Preconditions.checkNotNull(waitStrategy, "Wait strategy cannot be null.");
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.entries = new MetricDatum[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int slot = 0; slot < this.capacity; slot++) {
+
+            published.set(slot, -1);
+        }
+        this.waitStrategy = waitStrategy;
+        this.claimed = new AtomicLong();
+        this.consumerLock = new ReentrantLock();
+        this.droppedDatums = new AtomicLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean offer(final MetricDatum datum) {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        long sequence = claim(1);
+        if (sequence < 0) {
+
+            droppedDatums.incrementAndGet();
+            return false;
+        }
+
+        entries[(int) sequence & mask] = datum;
+        published.lazySet((int) sequence & mask, sequence);
+        return true;
+    }
+
+    /**
+     * Hand off a batch of datums, claiming their slots at once.
+     * If the ring cannot hold the whole batch, the datums that don't fit are dropped.
+     * Random access lists are read by index, without allocating an iterator.
+     *
+     * @param datums metric datums
+     * @return number of datums accepted
+     */
+    @Override
+    public int offerAll(final Collection<MetricDatum> datums) {
+
+        Preconditions.checkNotNull(datums, "Metrics list cannot be null");
+
+        List<MetricDatum> list = datums instanceof List && datums instanceof RandomAccess ? (List<MetricDatum>) datums : null;
+        int size = datums.size();
+        if (list != null) {
+
+            for (int index = 0; index < size; index++) {
+
+                Preconditions.checkNotNull(list.get(index), "Metric datum cannot be null.");
+            }
+        } else {
+
+            for (MetricDatum datum : datums) {
+
+                Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+            }
+        }
+
+        long first;
+        int granted;
+        while (true) {
+
+            long current = claimed.get();
+            granted = (int) Math.min(size, capacity - (current - consumed));
+            if (granted <= 0) {
+
+                droppedDatums.addAndGet(size);
+                return 0;
+            }
+            if (claimed.compareAndSet(current, current + granted)) {
+
+                first = current;
+                break;
+            }
+        }
+
+        if (list != null) {
+
+            for (int index = 0; index < granted; index++) {
+
+                entries[(int) (first + index) & mask] = list.get(index);
+                published.lazySet((int) (first + index) & mask, first + index);
+            }
+        } else {
+
+            Iterator<MetricDatum> iterator = datums.iterator();
+            for (long sequence = first; sequence < first + granted; sequence++) {
+
+                entries[(int) sequence & mask] = iterator.next();
+                published.lazySet((int) sequence & mask, sequence);
+            }
+        }
+
+        droppedDatums.addAndGet(size - granted);
+        return granted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int drainTo(final Collection<? super MetricDatum> sink, final int maxItems, final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        consumerLock.lockInterruptibly();
+        try {
+
+            long sequence = consumed;
+            while (true) {
+
+                int drained = 0;
+                while (drained < maxItems && published.get((int) sequence & mask) == sequence) {
+
+                    int slot = (int) sequence & mask;
+                    sink.add(entries[slot]);
+                    entries[slot] = null;
+                    sequence++;
+                    drained++;
+                }
+
+                if (drained > 0) {
+
+                    consumed = sequence;
+                    return drained;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+
+                    return 0;
+                }
+                if (Thread.interrupted()) {
+
+                    throw new InterruptedException();
+                }
+                waitStrategy.idle();
+            }
+        } finally {
+
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    /**
+     * @return number of slots of the ring
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return number of datums dropped because the ring was full
+     */
+    public long getDroppedDatums() {
+
+        return droppedDatums.get();
+    }
+
+    /**
+     * Claim consecutive slots.
+     *
+     * @param count number of slots
+     * @return first claimed sequence, -1 if there isn't enough free slots
+     */
+    private long claim(final int count) {
+
+        while (true) {
+
+            long current = claimed.get();
+            if (current + count - consumed > capacity) {
+
+                return -1;
+            }
+            if (claimed.compareAndSet(current, current + count)) {
+
+                return current;
+            }
+        }
+    }
+}
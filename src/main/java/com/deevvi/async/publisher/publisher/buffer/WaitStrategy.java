@@ -0,0 +1,52 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the sender waits for new datums on a {@link RingMetricsBuffer}.
+ * Publishers never signal the sender, so the strategy trades sender CPU for hand-off latency.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Park the sender thread for a short interval; lowest CPU usage.
+     */
+    PARK {
+        @Override
+        void idle() {
+
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    },
+
+    /**
+     * Yield the processor to other threads.
+     */
+    YIELD {
+        @Override
+        void idle() {
+
+            Thread.yield();
+        }
+    },
+
+    /**
+     * Spin on the buffer; lowest latency, burns a core while idle.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle() {
+
+        }
+    };
+
+    /**
+     * Park interval used by {@link #PARK}.
+     */
+    private static final long PARK_NANOS = 100_000L;
+
+    /**
+     * Wait a little before checking the buffer again.
+     */
+    abstract void idle();
+}
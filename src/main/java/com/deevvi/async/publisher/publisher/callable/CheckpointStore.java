@@ -0,0 +1,371 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoints of all the files of a spool folder, i.e. how many bytes of each file were published, kept in one file.
+ * <p>
+ * The file is a table of fixed-width slots, one per spool file, updated in place with a single positioned write.
+ * Each slot holds two copies of its checkpoint, written alternately and protected by a CRC, so that a write torn
+ * by a crash leaves the previous checkpoint readable. Checkpoints of files written by previous versions, stored in
+ * one {@code .properties} file per spool file, are imported on first use.
+ */
+final class CheckpointStore implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointStore.class);
+
+    /**
+     * Name of the checkpoints file, in the spool folder.
+     */
+    static final String FILE_NAME = "metrics-checkpoints.dat";
+
+    /**
+     * Maximum size in bytes of a spool file name.
+     */
+    static final int MAX_NAME_SIZE = 90;
+
+    /**
+     * Magic number, "CWCP", and version of the file header.
+     */
+    private static final int MAGIC = 0x43574350;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Copy layout: int crc, long sequence, long offset, long last update, long dictionary offset, short name size, name.
+     */
+    private static final int COPY_SIZE = 128;
+    private static final int SLOT_SIZE = 2 * COPY_SIZE;
+
+    private static final String LEGACY_BYTES_READ = "bytesRead";
+    private static final String LEGACY_LAST_UPDATE = "lastUpdate";
+
+    /**
+     * Spool folder.
+     */
+    private final String directory;
+
+    private final FileChannel channel;
+    private final CRC32 crc;
+    private final ByteBuffer copy;
+
+    /**
+     * Checkpoints, by spool file name.
+     */
+    private final Map<String, Checkpoint> checkpoints;
+
+    /**
+     * Indexes of the slots not used by any checkpoint, below {@link #slotCount}.
+     */
+    private final Deque<Integer> freeSlots;
+    private int slotCount;
+
+    /**
+     * Constructor: opens the checkpoints file of a spool folder, creating it if needed.
+     *
+     * @param directory spool folder
+     * @throws IOException - if the checkpoints file cannot be read, or isn't a checkpoints file
+     */
+    CheckpointStore(final String directory) throws IOException {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(directory), "File path cannot be null or empty.");
+
+        this.directory = directory;
+        this.crc = new CRC32();
+        this.copy = ByteBuffer.allocate(COPY_SIZE);
+        this.checkpoints = Maps.newHashMap();
+        this.freeSlots = Lists.newLinkedList();
+        this.channel = FileChannel.open(new File(directory, FILE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+
+            load();
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file spool file name
+     * @return true if a checkpoint was stored for the file
+     */
+    synchronized boolean contains(final String file) throws IOException {
+
+        return checkpoint(file) != null;
+    }
+
+    /**
+     * @param file spool file name
+     * @return number of bytes of the file already published, 0 if no checkpoint was stored
+     */
+    synchronized long getOffset(final String file) throws IOException {
+
+        Checkpoint checkpoint = checkpoint(file);
+        return checkpoint != null ? checkpoint.offset : 0;
+    }
+
+    /**
+     * @param file spool file name
+     * @return time of the last update of the checkpoint, 0 if no checkpoint was stored
+     */
+    synchronized long getLastUpdateTimestamp(final String file) throws IOException {
+
+        Checkpoint checkpoint = checkpoint(file);
+        return checkpoint != null ? checkpoint.lastUpdate : 0;
+    }
+
+    /**
+     * @param file spool file name
+     * @return offset of the last dictionary record before the checkpoint of a spool segment, -1 if unknown
+     */
+    synchronized long getDictionaryOffset(final String file) throws IOException {
+
+        Checkpoint checkpoint = checkpoint(file);
+        return checkpoint != null ? checkpoint.dictionaryOffset : -1;
+    }
+
+    /**
+     * Store the checkpoint of a file.
+     *
+     * @param file   spool file name
+     * @param offset number of bytes of the file already published
+     * @throws IOException - if the checkpoint cannot be written
+     */
+    synchronized void update(final String file, final long offset) throws IOException {
+
+        update(file, offset, -1);
+    }
+
+    /**
+     * Store the checkpoint of a spool segment.
+     *
+     * @param file             spool file name
+     * @param offset           number of bytes of the file already published
+     * @param dictionaryOffset offset of the last dictionary record before the offset, -1 if unknown
+     * @throws IOException - if the checkpoint cannot be written
+     */
+    synchronized void update(final String file, final long offset, final long dictionaryOffset) throws IOException {
+
+        Preconditions.checkArgument(offset >= 0, "Offset cannot be negative.");
+
+        Checkpoint checkpoint = checkpoint(file);
+        if (checkpoint == null) {
+
+            checkpoint = create(file);
+        }
+        write(checkpoint, offset, dictionaryOffset, System.currentTimeMillis());
+    }
+
+    /**
+     * Remove the checkpoint of a file, e.g. once the file is deleted.
+     *
+     * @param file spool file name
+     * @throws IOException - if the checkpoint cannot be removed
+     */
+    synchronized void remove(final String file) throws IOException {
+
+        Checkpoint checkpoint = checkpoints.remove(file);
+        if (checkpoint != null) {
+
+            channel.write(ByteBuffer.allocate(SLOT_SIZE), slotPosition(checkpoint.slot));
+            freeSlots.add(checkpoint.slot);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        channel.close();
+    }
+
+    /**
+     * Get the checkpoint of a file, importing it from its legacy properties file if there is one.
+     */
+    private Checkpoint checkpoint(final String file) throws IOException {
+
+        Checkpoint checkpoint = checkpoints.get(file);
+        if (checkpoint == null && file.lastIndexOf('.') > 0) {
+
+            File legacy = new File(directory, FileUtils.generatePropertiesFileNameForLogFile(file));
+            if (legacy.isFile()) {
+
+                Properties properties = new Properties();
+                try (InputStream input = new FileInputStream(legacy)) {
+
+                    properties.load(input);
+                }
+                checkpoint = create(file);
+                write(checkpoint, Long.parseLong(properties.getProperty(LEGACY_BYTES_READ, "0")), -1,
+                        Long.parseLong(properties.getProperty(LEGACY_LAST_UPDATE, "0")));
+                legacy.delete();
+                LOG.info("Imported checkpoint of {} from {}", file, legacy);
+            }
+        }
+        return checkpoint;
+    }
+
+    private Checkpoint create(final String file) {
+
+        byte[] name = file.getBytes(StandardCharsets.UTF_8);
+        Preconditions.checkArgument(name.length > 0 && name.length <= MAX_NAME_SIZE, "Invalid file name for a checkpoint: %s", file);
+
+        Checkpoint checkpoint = new Checkpoint(name, freeSlots.isEmpty() ? slotCount++ : freeSlots.poll());
+        checkpoints.put(file, checkpoint);
+        return checkpoint;
+    }
+
+    private void write(final Checkpoint checkpoint, final long offset, final long dictionaryOffset, final long lastUpdate)
+            throws IOException {
+
+        checkpoint.sequence++;
+        checkpoint.offset = offset;
+        checkpoint.dictionaryOffset = dictionaryOffset;
+        checkpoint.lastUpdate = lastUpdate;
+        writeCopy(checkpoint);
+    }
+
+    private void load() throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+
+            header.putInt(MAGIC).put(VERSION);
+            // through Buffer: the covariant ByteBuffer overrides don't exist on Java 8
+            ((Buffer) header).flip();
+            channel.write(header, 0);
+            return;
+        }
+
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.get(4) > VERSION) {
+
+            throw new IOException("Not a supported checkpoints file: " + new File(directory, FILE_NAME));
+        }
+
+        slotCount = (int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE);
+        for (int slot = 0; slot < slotCount; slot++) {
+
+            Checkpoint first = readCopy(slot, 0);
+            Checkpoint second = readCopy(slot, 1);
+            Checkpoint latest = first == null || (second != null && second.sequence > first.sequence) ? second : first;
+            if (latest == null) {
+
+                freeSlots.add(slot);
+            } else {
+
+                checkpoints.put(new String(latest.name, StandardCharsets.UTF_8), latest);
+            }
+        }
+    }
+
+    private Checkpoint readCopy(final int slot, final int index) throws IOException {
+
+        ((Buffer) copy).clear();
+        long position = slotPosition(slot) + (long) index * COPY_SIZE;
+        while (copy.hasRemaining() && channel.read(copy, position + copy.position()) >= 0) {
+
+            // read the whole copy
+        }
+        if (copy.hasRemaining()) {
+
+            return null;
+        }
+
+        crc.reset();
+        crc.update(copy.array(), 4, COPY_SIZE - 4);
+        int nameSize = copy.getShort(36);
+        if ((int) crc.getValue() != copy.getInt(0) || nameSize <= 0 || nameSize > MAX_NAME_SIZE) {
+
+            return null;
+        }
+
+        byte[] name = new byte[nameSize];
+        System.arraycopy(copy.array(), 38, name, 0, nameSize);
+        Checkpoint checkpoint = new Checkpoint(name, slot);
+        checkpoint.sequence = copy.getLong(4);
+        checkpoint.offset = copy.getLong(12);
+        checkpoint.lastUpdate = copy.getLong(20);
+        checkpoint.dictionaryOffset = copy.getLong(28);
+        return checkpoint;
+    }
+
+    /**
+     * Write the checkpoint over the older copy of its slot.
+     */
+    private void writeCopy(final Checkpoint checkpoint) throws IOException {
+
+        Arrays.fill(copy.array(), (byte) 0);
+        ((Buffer) copy).clear();
+        copy.putInt(0)
+                .putLong(checkpoint.sequence)
+                .putLong(checkpoint.offset)
+                .putLong(checkpoint.lastUpdate)
+                .putLong(checkpoint.dictionaryOffset)
+                .putShort((short) checkpoint.name.length)
+                .put(checkpoint.name);
+        crc.reset();
+        crc.update(copy.array(), 4, COPY_SIZE - 4);
+        copy.putInt(0, (int) crc.getValue());
+        ((Buffer) copy).clear();
+
+        long position = slotPosition(checkpoint.slot) + (checkpoint.sequence & 1) * COPY_SIZE;
+        while (copy.hasRemaining()) {
+
+            channel.write(copy, position + copy.position());
+        }
+    }
+
+    private static long slotPosition(final int slot) {
+
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    /**
+     * Checkpoint of a spool file, and the slot holding it.
+     */
+    private static final class Checkpoint {
+
+        private final byte[] name;
+        private final int slot;
+        private long sequence;
+        private long offset;
+        private long lastUpdate;
+        private long dictionaryOffset;
+
+        Checkpoint(final byte[] name, final int slot) {
+
+            this.name = name;
+            this.slot = slot;
+        }
+    }
+}
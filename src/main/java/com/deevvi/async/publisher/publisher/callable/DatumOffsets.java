@@ -0,0 +1,94 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Offsets in a file following each datum of a request, so that a request published in part, e.g. bisected after
+ * a rejection and failed in its second half, is acknowledged up to its last datum published.
+ * Instances are used by the thread reading the file only.
+ */
+final class DatumOffsets {
+
+    private final long[] endOffsets;
+    private final long[] endDictionaryOffsets;
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity maximum number of datums of a request
+     */
+    DatumOffsets(final int capacity) {
+
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+
+        this.endOffsets = new long[capacity];
+        this.endDictionaryOffsets = new long[capacity];
+    }
+
+    private DatumOffsets(final long[] endOffsets, final long[] endDictionaryOffsets) {
+
+        this.endOffsets = endOffsets;
+        this.endDictionaryOffsets = endDictionaryOffsets;
+        this.size = endOffsets.length;
+    }
+
+    /**
+     * Record the end of the next datum of the request.
+     *
+     * @param endOffset           offset following the datum
+     * @param endDictionaryOffset offset of the last dictionary record before the end offset, -1 if unknown
+     */
+    void add(final long endOffset, final long endDictionaryOffset) {
+
+        Preconditions.checkState(size < endOffsets.length, "Too many datums for a request.");
+
+        endOffsets[size] = endOffset;
+        endDictionaryOffsets[size] = endDictionaryOffset;
+        size++;
+    }
+
+    /**
+     * Copy the offsets recorded, and clear them for the next request.
+     *
+     * @return offsets of the datums of the request built
+     */
+    DatumOffsets take() {
+
+        DatumOffsets taken = new DatumOffsets(Arrays.copyOf(endOffsets, size), Arrays.copyOf(endDictionaryOffsets, size));
+        size = 0;
+        return taken;
+    }
+
+    /**
+     * @return number of datums recorded
+     */
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * @param index index of the datum in the request
+     * @return offset following the datum
+     */
+    long getEndOffset(final int index) {
+
+        Preconditions.checkElementIndex(index, size);
+
+        return endOffsets[index];
+    }
+
+    /**
+     * @param index index of the datum in the request
+     * @return offset of the last dictionary record before the end of the datum, -1 if unknown
+     */
+    long getEndDictionaryOffset(final int index) {
+
+        Preconditions.checkElementIndex(index, size);
+
+        return endDictionaryOffsets[index];
+    }
+}
@@ -0,0 +1,120 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.deevvi.async.publisher.publisher.spool.SpoolSignal;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Raises a {@link SpoolSignal} when a log file or a spool segment of a folder is created or modified,
+ * from the notifications of a {@link WatchService} handled by a daemon thread.
+ * <p>
+ * Changes of other files, e.g. the checkpoints file, are ignored; lost notifications raise the signal.
+ */
+final class DirectoryWatcher implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final WatchService watchService;
+    private final SpoolSignal signal;
+    private final Thread thread;
+
+    /**
+     * Constructor: starts watching the folder.
+     *
+     * @param directory folder to watch
+     * @param signal    signal raised on changes
+     * @throws IOException - if the folder cannot be watched, e.g. the file system doesn't support it
+     */
+    DirectoryWatcher(final String directory, final SpoolSignal signal) throws IOException {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(directory), "File path cannot be null or empty.");
+        Preconditions.checkNotNull(signal, "Signal cannot be null.");
+
+        Path path = Paths.get(directory);
+        this.signal = signal;
+        this.watchService = path.getFileSystem().newWatchService();
+        try {
+
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+
+            watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this::watchLoop, "spool-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return false once the folder is not watched anymore, e.g. after it was deleted
+     */
+    boolean isWatching() {
+
+        return thread.isAlive();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+
+        watchService.close();
+    }
+
+    private void watchLoop() {
+
+        try {
+
+            while (true) {
+
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || isWatched(event.context());
+                }
+                if (changed) {
+
+                    signal.signal();
+                }
+                if (!key.reset()) {
+
+                    LOG.warn("Folder is not watched anymore, falling back to polling.");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+
+            // watcher closed
+        }
+    }
+
+    private static boolean isWatched(final Object context) {
+
+        if (!(context instanceof Path)) {
+
+            return false;
+        }
+        File file = new File(context.toString());
+        return FileUtils.isLogFile(file) || FileUtils.isSpoolFile(file);
+    }
+}
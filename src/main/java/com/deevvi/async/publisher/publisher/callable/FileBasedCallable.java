@@ -3,27 +3,51 @@ package com.deevvi.async.publisher.publisher.callable;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.deevvi.async.publisher.publisher.spool.QuarantineWriter;
+import com.deevvi.async.publisher.publisher.spool.SegmentReader;
+import com.deevvi.async.publisher.publisher.spool.SpoolSignal;
 import com.deevvi.async.publisher.utils.FileUtils;
 import com.deevvi.async.publisher.utils.JSONUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Async CW publisher using a file for reading metrics.
+ * <p>
+ * The folder is tailed: after a run publishing all the files, the callable waits until a file is created or modified,
+ * as notified by a {@link SpoolSignal} raised by an in-process writer and by a {@link DirectoryWatcher}, and scans
+ * the folder again at most once per idle poll interval. While a file is pending, e.g. CW fails, or when the folder
+ * cannot be watched and there is no in-process writer, the folder is polled once per run interval.
+ * <p>
+ * Files are independent, each one with its own checkpoint: with several drain workers, as many files are published
+ * at once, e.g. to catch up after CW was unavailable.
+ * <p>
+ * Publishing a file is pipelined: the file is read and decoded while the previous requests to CW are in flight,
+ * and its checkpoint advances only once all the requests before it succeeded, see {@link SendPipeline}.
+ * At most {@code drainWorkers * maxRequestsInFlight} requests are in flight, fewer if a maximum number of
+ * concurrent requests is set for all the files together.
+ * <p>
+ * Failed requests are retried according to a {@link RetryPolicy}; while its circuit is open, the files are not
+ * published, whatever is written meanwhile. A request rejected by CW is bisected to isolate the datums rejected,
+ * which are written to a quarantine segment with their error, so that one invalid datum doesn't stop its file.
+ * If a half fails meanwhile, the file resumes after the datums already published or quarantined.
  */
 public final class FileBasedCallable implements Callable<Object> {
 
@@ -33,14 +57,19 @@ public final class FileBasedCallable implements Callable<Object> {
     private static final Logger LOG = LoggerFactory.getLogger(FileBasedCallable.class);
 
     /**
-     * Maximum number of items to publish to CW per batch
+     * Default retention period for a file.
      */
-    private static final int MAX_ITEMS_PER_BATCH = 18;
+    private static final int DEFAULT_TIME_TO_KEEP_FILES = 1000 * 3600 * 3;
 
     /**
-     * Default retention period for a file.
+     * Default minimum time between two checkpoints of a file being published.
      */
-    private static final int DEFAULT_TIME_TO_KEEP_FILES = 1000 * 3600 * 3;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * Default maximum time to wait for a change of the folder when all files are published.
+     */
+    private static final long DEFAULT_IDLE_POLL_INTERVAL = 60_000;
 
     /**
      * Location where log files are persisted.
@@ -53,7 +82,7 @@ public final class FileBasedCallable implements Callable<Object> {
     private final AmazonCloudWatch client;
 
     /**
-     * Sleep time between 2 runs.
+     * Time to wait between 2 runs while a file is pending, or if the folder cannot be watched.
      */
     private final int millisBetweenRun;
 
@@ -67,16 +96,103 @@ public final class FileBasedCallable implements Callable<Object> {
      */
     private long maxTimeToKeepFilesInMillis = DEFAULT_TIME_TO_KEEP_FILES;
 
+    /**
+     * Minimum time between two checkpoints of a file being published. Default is 1s.
+     */
+    private long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * Maximum time to wait for a change of the folder when all files are published. Default is 60s.
+     */
+    private long idlePollIntervalMillis = DEFAULT_IDLE_POLL_INTERVAL;
+
+    /**
+     * Signal raised when a file of the folder changes.
+     */
+    private final SpoolSignal signal;
+
+    /**
+     * Whether the signal is raised by the writer of the folder.
+     */
+    private final boolean hasWriterSignal;
+
+    /**
+     * Checkpoints of the files, opened on first run.
+     */
+    private CheckpointStore checkpointStore;
+
+    /**
+     * Number of files published at once. Default is 1, on the calling thread.
+     */
+    private volatile int drainWorkers = 1;
+
+    /**
+     * Threads publishing the files when there are several drain workers, created on first run.
+     */
+    private ExecutorService drainPool;
+    private int drainPoolSize;
+
+    /**
+     * Maximum number of requests to CW in flight for one file. Default is 1: the next request is read and decoded
+     * while the previous one is sent.
+     */
+    private volatile int maxRequestsInFlight = 1;
+
+    /**
+     * Free slots for the requests to CW in flight for all the files together, null if not capped.
+     */
+    private volatile Semaphore requestPermits;
+
+    /**
+     * Threads sending the requests to CW, created on first run.
+     */
+    private ExecutorService sendPool;
+
+    /**
+     * Retry policy of the requests to CW.
+     */
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * Writer of the datums rejected by CW, opened on first run.
+     */
+    private QuarantineWriter quarantineWriter;
+
+    /**
+     * Files of the folder and their state, built on first run.
+     */
+    private SegmentManifest manifest;
+
+    /**
+     * Whether the next run lists the folder again even if it didn't change, e.g. after an idle poll interval.
+     */
+    private boolean rebuildManifest;
+
     /**
      * Constructor.
      *
      * @param client           AWS CW client
      * @param filePath         location where logs are persisted
      * @param namespace        CW namespace
-     * @param millisBetweenRun time to sleep between 2 runs
+     * @param millisBetweenRun time to wait between 2 runs while a file is pending
      */
     public FileBasedCallable(final AmazonCloudWatch client, final String filePath, final String namespace, final int millisBetweenRun) {
 
+        this(client, filePath, namespace, millisBetweenRun, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client           AWS CW client
+     * @param filePath         location where logs are persisted
+     * @param namespace        CW namespace
+     * @param millisBetweenRun time to wait between 2 runs while a file is pending
+     * @param writerSignal     signal raised by the in-process writer of the folder after each write, null if none
+     */
+    public FileBasedCallable(final AmazonCloudWatch client, final String filePath, final String namespace, final int millisBetweenRun,
+                             final SpoolSignal writerSignal) {
+
         Preconditions.checkNotNull(client, "CW client cannot be null or empty.");
         Preconditions.checkNotNull(StringUtils.trimToNull(filePath), "File path cannot be null or empty.");
         Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
@@ -86,6 +202,8 @@ public final class FileBasedCallable implements Callable<Object> {
         this.client = client;
         this.millisBetweenRun = millisBetweenRun;
         this.namespace = namespace;
+        this.signal = writerSignal != null ? writerSignal : new SpoolSignal();
+        this.hasWriterSignal = writerSignal != null;
     }
 
     /**
@@ -94,46 +212,113 @@ public final class FileBasedCallable implements Callable<Object> {
     @Override
     public Object call() throws Exception {
 
-        while (true) {
+        try (DirectoryWatcher watcher = watch()) {
+
+            while (true) {
+
+                long openMillis = retryPolicy.getRemainingOpenMillis();
+                if (openMillis > 0) {
+
+                    Thread.sleep(openMillis);
+                }
+
+                long seenVersion = signal.version();
+                boolean pending = run();
+                boolean notified = hasWriterSignal || (watcher != null && watcher.isWatching());
+                boolean idle = !pending && notified;
+                rebuildManifest = !signal.await(seenVersion, idle ? idlePollIntervalMillis : millisBetweenRun) && idle;
+            }
+        } finally {
+
+            if (drainPool != null) {
+
+                drainPool.shutdownNow();
+            }
+            if (sendPool != null) {
 
-            run();
+                sendPool.shutdownNow();
+            }
+            if (quarantineWriter != null) {
+
+                quarantineWriter.close();
+            }
         }
     }
 
+    /**
+     * Publish the files of the folder once.
+     *
+     * @return true if a file is still pending, e.g. because CW failed
+     * @throws IOException - if the checkpoints file cannot be opened
+     */
     @VisibleForTesting
-    void run() throws IOException {
-        getAllFiles().forEach(file -> {
-            if (!file.isDirectory() && FileUtils.isLogFile(file)) {
+    boolean run() throws IOException {
+
+        if (checkpointStore == null) {
+
+            checkpointStore = new CheckpointStore(filePath);
+            manifest = new SegmentManifest(filePath, checkpointStore);
+            quarantineWriter = new QuarantineWriter(filePath);
+            sendPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("spool-send-%d").setDaemon(true).build());
+        }
+
+        if (rebuildManifest) {
+
+            rebuildManifest = false;
+            manifest.rebuild();
+        } else {
+
+            manifest.refresh();
+        }
+
+        boolean pending = false;
+        List<SegmentManifest.Segment> undrained = manifest.getUndrained();
+        if (drainWorkers > 1 && undrained.size() > 1) {
+
+            pending = drainConcurrently(undrained);
+        } else {
+
+            for (SegmentManifest.Segment segment : undrained) {
+
                 try {
-                    String propertiesFileName = FileUtils.generatePropertiesFileNameForLogFile(file.getName());
-                    PropertiesFileHandler handler = new PropertiesFileHandler(filePath + propertiesFileName);
-                    if (fileIsProcessed(file, handler)) {
-                        LOG.info("File {} is completely processed.", file);
-                        if (checkNoRecentUpdate(handler.getLastUpdateTimestamp())) {
-
-                            LOG.info("Delete old file {}", file);
-                            deleteFile(file, handler);
-                        }
-                    } else {
-
-                        LOG.info("Processing file {}", file);
-                        processFile(file, handler);
-                    }
+
+                    boolean processed = drain(segment.getFile());
+                    manifest.update(segment, processed);
+                    pending |= !processed;
                 } catch (IOException e) {
 
-                    LOG.warn("Exception on processing file {} {}", file, e);
+                    LOG.warn("Exception on processing file {} {}", segment.getFile(), e);
+                    pending = true;
                 }
-            } else {
-
-                LOG.info("Not a log file {}. Skipping.", file);
             }
-        });
+        }
+
+        for (SegmentManifest.Segment segment : manifest.getExpired(maxTimeToKeepFilesInMillis)) {
+
+            File file = segment.getFile();
+            try {
+
+                if (fileIsProcessed(file)) {
+
+                    LOG.info("Delete old file {}", file);
+                    deleteFile(file);
+                    manifest.remove(segment);
+                } else {
+
+                    manifest.update(segment, false);
+                    pending = true;
+                }
+            } catch (IOException e) {
 
-        sleep(millisBetweenRun);
+                LOG.warn("Exception on deleting file {} {}", file, e);
+            }
+        }
+        return pending;
     }
 
     /**
-     * Set the logs retention period.
+     * Set the logs retention period. The newest file is kept until a newer one is created, whatever the retention
+     * period, since it may still be written.
      *
      * @param maxTimeToKeepFilesInMillis retention period in milliseconds§
      */
@@ -144,99 +329,428 @@ public final class FileBasedCallable implements Callable<Object> {
         this.maxTimeToKeepFilesInMillis = maxTimeToKeepFilesInMillis;
     }
 
-    private void sleep(final int maxMillisToWait) throws IOException {
+    /**
+     * Set the number of files published at once; each file keeps up to the maximum number of requests in flight
+     * per file, see {@link #setMaxConcurrentRequests(int)} to cap the total.
+     *
+     * @param drainWorkers number of files published at once, 1 to publish them one by one
+     */
+    public void setDrainWorkers(final int drainWorkers) {
+
+        Preconditions.checkArgument(drainWorkers > 0, "Number of drain workers must be positive.");
+
+        this.drainWorkers = drainWorkers;
+    }
+
+    /**
+     * Set the maximum number of requests to CW in flight for one file, while the next requests are read.
+     * After a failed request, the requests in flight after it are sent again with the next attempt.
+     *
+     * @param maxRequestsInFlight maximum number of requests in flight for one file
+     */
+    public void setMaxRequestsInFlight(final int maxRequestsInFlight) {
+
+        Preconditions.checkArgument(maxRequestsInFlight > 0, "Maximum number of requests in flight must be positive.");
+
+        this.maxRequestsInFlight = maxRequestsInFlight;
+    }
+
+    /**
+     * Set the maximum number of requests to CW in flight for all the files together; otherwise, up to
+     * {@code drainWorkers * maxRequestsInFlight} requests are in flight. Applies to the files published after the call.
+     *
+     * @param maxConcurrentRequests maximum number of requests in flight, 0 for no limit other than the number
+     *                              of drain workers and of requests in flight per file
+     */
+    public void setMaxConcurrentRequests(final int maxConcurrentRequests) {
+
+        Preconditions.checkArgument(maxConcurrentRequests >= 0, "Maximum number of concurrent requests cannot be negative.");
+
+        this.requestPermits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+    }
+
+    /**
+     * Set the retry policy of the requests to CW, e.g. shared with the other publishers to the same account.
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+
+        Preconditions.checkNotNull(retryPolicy, "Retry policy cannot be null.");
+
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set the minimum time between two checkpoints of a file being published; a file is always checkpointed
+     * when all its metrics are published. After a crash, the metrics published since the last checkpoint are
+     * published again, so a longer interval trades duplicates on recovery for less checkpoint IO.
+     *
+     * @param checkpointIntervalMillis minimum time in millis between two checkpoints, 0 to checkpoint after each request
+     */
+    public void setCheckpointIntervalMillis(final long checkpointIntervalMillis) {
+
+        Preconditions.checkArgument(checkpointIntervalMillis >= 0, "Checkpoint interval cannot be negative.");
+
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    /**
+     * Set the maximum time to wait for a change of the folder when all its files are published; the folder is
+     * scanned at least once per interval, e.g. to delete the files past the retention period.
+     *
+     * @param idlePollIntervalMillis maximum time in millis between 2 runs when no file is pending
+     */
+    public void setIdlePollIntervalMillis(final long idlePollIntervalMillis) {
+
+        Preconditions.checkArgument(idlePollIntervalMillis > 0, "Idle poll interval must be positive.");
+
+        this.idlePollIntervalMillis = idlePollIntervalMillis;
+    }
+
+    /**
+     * Start watching the folder.
+     *
+     * @return folder watcher, null if the folder cannot be watched
+     */
+    private DirectoryWatcher watch() {
 
         try {
 
-            Thread.sleep(maxMillisToWait);
-        } catch (InterruptedException e) {
+            return new DirectoryWatcher(filePath, signal);
+        } catch (IOException | RuntimeException e) {
 
-            throw new IOException(e);
+            LOG.warn("Cannot watch folder {}, falling back to polling:", filePath, e);
+            return null;
         }
     }
 
-    private void processFile(File file, PropertiesFileHandler handler) throws IOException {
+    /**
+     * Publish the files on the drain workers, and wait for all of them.
+     *
+     * @return true if a file is still pending
+     */
+    private boolean drainConcurrently(final List<SegmentManifest.Segment> segments) {
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        int workers = drainWorkers;
+        if (drainPool == null || drainPoolSize != workers) {
 
-            reader.skip(handler.getBytesRead());
-            String line;
-            int bytesRead = 0;
-            List<MetricDatum> metricDatums = Lists.newArrayList();
-            while ((line = reader.readLine()) != null) {
+            if (drainPool != null) {
+
+                drainPool.shutdown();
+            }
+            drainPool = Executors.newFixedThreadPool(workers,
+                    new ThreadFactoryBuilder().setNameFormat("spool-drain-%d").setDaemon(true).build());
+            drainPoolSize = workers;
+        }
+
+        List<Future<Boolean>> results = Lists.newArrayList();
+        for (SegmentManifest.Segment segment : segments) {
+
+            results.add(drainPool.submit(() -> drain(segment.getFile())));
+        }
+
+        boolean pending = false;
+        for (int index = 0; index < segments.size(); index++) {
+
+            SegmentManifest.Segment segment = segments.get(index);
+            try {
+
+                boolean processed = results.get(index).get();
+                manifest.update(segment, processed);
+                pending |= !processed;
+            } catch (ExecutionException | IOException e) {
+
+                LOG.warn("Exception on processing file {} {}", segment.getFile(), e);
+                pending = true;
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                results.forEach(result -> result.cancel(true));
+                return true;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Publish a file from its checkpoint.
+     *
+     * @return true if all the metrics of the file are published
+     */
+    private boolean drain(final File file) throws IOException {
+
+        if (!fileIsProcessed(file)) {
+
+            LOG.debug("Processing file {}", file);
+            processFile(file);
+        }
+        return fileIsProcessed(file);
+    }
+
+    private void processFile(File file) throws IOException {
+
+        Checkpointer checkpointer = new Checkpointer(file.getName(), checkpointStore.getOffset(file.getName()),
+                checkpointStore.getDictionaryOffset(file.getName()));
+        if (FileUtils.isSpoolFile(file)) {
+
+            processSpoolFile(file, checkpointer);
+        } else {
+
+            processJsonFile(file, checkpointer);
+        }
+    }
+
+    private void processSpoolFile(File file, Checkpointer checkpointer) throws IOException {
 
-                bytesRead += line.getBytes().length + 1;
-                JSONUtils.decodeJSON(line).ifPresent(metricDatums::add);
+        try (SegmentReader reader = new SegmentReader(file.toPath(), checkpointer.offset, checkpointer.dictionaryOffset)) {
 
-                if (metricDatums.size() >= MAX_ITEMS_PER_BATCH) {
+            long beforeDatum = reader.position();
+            long beforeDatumDictionary = reader.getLastDictionaryOffset();
+            MetricDataBatchBuilder batchBuilder = new MetricDataBatchBuilder(namespace);
+            DatumOffsets datumOffsets = new DatumOffsets(MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST);
+            SendPipeline pipeline = new SendPipeline(this::tryPushMetricToCW, sendPool, maxRequestsInFlight, requestPermits);
+            MetricDatum datum;
+            while ((datum = reader.next()) != null) {
 
-                    boolean result = tryPushMetricToCW(metricDatums);
-                    if (result) {
+                if (!batchBuilder.add(datum)) {
 
-                        handler.updateRecords(bytesRead);
-                        bytesRead = 0;
-                        metricDatums.clear();
+                    if (!pipeline.send(batchBuilder.build(), beforeDatum, beforeDatumDictionary, datumOffsets.take())) {
+
+                        break;
                     }
+
+                    checkpointer.advance(pipeline);
+                    batchBuilder.add(datum);
                 }
+                beforeDatum = reader.position();
+                beforeDatumDictionary = reader.getLastDictionaryOffset();
+                datumOffsets.add(beforeDatum, beforeDatumDictionary);
             }
 
-            boolean result = tryPushMetricToCW(metricDatums);
-            if (result) {
+            finish(pipeline, batchBuilder, datumOffsets, datum == null, reader.position(), reader.getLastDictionaryOffset(), checkpointer);
+        }
+    }
+
+    private void processJsonFile(File file, Checkpointer checkpointer) throws IOException {
+
+        try (LogFileReader reader = new LogFileReader(file.toPath(), checkpointer.offset)) {
 
-                handler.updateRecords(bytesRead);
+            String line;
+            long beforeLine = reader.position();
+            MetricDataBatchBuilder batchBuilder = new MetricDataBatchBuilder(namespace);
+            DatumOffsets datumOffsets = new DatumOffsets(MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST);
+            SendPipeline pipeline = new SendPipeline(this::tryPushMetricToCW, sendPool, maxRequestsInFlight, requestPermits);
+            while ((line = reader.readLine()) != null) {
+
+                Optional<MetricDatum> datum = JSONUtils.decodeJSON(line);
+                if (datum.isPresent() && !batchBuilder.add(datum.get())) {
+
+                    if (!pipeline.send(batchBuilder.build(), beforeLine, -1, datumOffsets.take())) {
+
+                        break;
+                    }
+
+                    checkpointer.advance(pipeline);
+                    batchBuilder.add(datum.get());
+                }
+                beforeLine = reader.position();
+                if (datum.isPresent()) {
+
+                    datumOffsets.add(beforeLine, -1);
+                }
             }
+
+            finish(pipeline, batchBuilder, datumOffsets, line == null, reader.position(), -1, checkpointer);
+        }
+    }
+
+    /**
+     * Send the last request of a file read to its end, wait for the requests in flight, and store the progress.
+     *
+     * @param datumOffsets        offsets following the datums of the last request
+     * @param endOfFile           whether the file was read to its end, i.e. no request failed while reading it
+     * @param endOffset           offset following the last datum read
+     * @param endDictionaryOffset offset of the last dictionary record before the end offset, -1 if unknown
+     */
+    private void finish(final SendPipeline pipeline, final MetricDataBatchBuilder batchBuilder, final DatumOffsets datumOffsets,
+                        final boolean endOfFile, final long endOffset, final long endDictionaryOffset,
+                        final Checkpointer checkpointer) throws IOException {
+
+        boolean sent = endOfFile && pipeline.send(batchBuilder.build(), endOffset, endDictionaryOffset, datumOffsets.take());
+        if (pipeline.await() && sent) {
+
+            checkpointer.complete(endOffset, endDictionaryOffset);
+        } else {
+
+            checkpointer.advance(pipeline);
+            checkpointer.flush();
         }
     }
 
-    private boolean tryPushMetricToCW(List<MetricDatum> metricDatums) {
+    private int tryPushMetricToCW(PutMetricDataRequest request) {
+
+        if (request.getMetricData().isEmpty()) {
+
+            return 0;
+        }
+        return publish(request);
+    }
 
-        PutMetricDataRequest request = new PutMetricDataRequest()
-                .withNamespace(namespace)
-                .withMetricData(metricDatums);
+    /**
+     * Publish a request; if CW rejects it, publish each half of it, down to the single datums rejected,
+     * which are quarantined. Finding k invalid datums among n takes about {@code 2k * log2(n)} requests.
+     * The halves are published in order, and stop at the first one failing.
+     *
+     * @return number of leading datums of the request published or quarantined, all of them unless a request failed
+     */
+    private int publish(final PutMetricDataRequest request) {
 
+        AtomicReference<Exception> rejection = new AtomicReference<>();
+        RetryPolicy.Outcome outcome;
         try {
 
-            if (!metricDatums.isEmpty()) {
+            outcome = retryPolicy.execute(() -> {
+
+                try {
+
+                    client.putMetricData(request);
+                } catch (RuntimeException e) {
+
+                    rejection.set(e);
+                    throw e;
+                }
+            }, false);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+
+        List<MetricDatum> datums = request.getMetricData();
+        if (outcome == RetryPolicy.Outcome.SENT) {
+
+            LOG.info("Published {} metrics in a batch into CW.", datums.size());
+            return datums.size();
+        }
+        if (outcome == RetryPolicy.Outcome.FAILED) {
+
+            return 0;
+        }
 
-                client.putMetricData(request);
-                LOG.info("Published {} metrics in a batch into CW.", metricDatums.size());
+        if (datums.size() == 1) {
+
+            try {
+
+                quarantineWriter.write(datums.get(0), rejection.get().getMessage());
+            } catch (IOException e) {
+
+                LOG.warn("Metric {} rejected by CW: {}, not quarantined, stays pending:", datums.get(0).getMetricName(),
+                        rejection.get().getMessage(), e);
+                return 0;
             }
-            return true;
-        } catch (Exception e) {
+            LOG.warn("Metric {} rejected by CW, quarantined: {}", datums.get(0).getMetricName(), rejection.get().getMessage());
+            return 1;
+        }
 
-            LOG.warn("Exception on publishing metrics into CW:", e);
-            return false;
+        int half = datums.size() / 2;
+        int published = publish(request.clone().withMetricData(datums.subList(0, half)));
+        if (published < half) {
+
+            return published;
         }
+        return half + publish(request.clone().withMetricData(datums.subList(half, datums.size())));
     }
 
-    private void deleteFile(File file, PropertiesFileHandler handler) {
+    private void deleteFile(File file) throws IOException {
 
         file.delete();
-        handler.delete();
+        checkpointStore.remove(file.getName());
         LOG.info("Deleted file: {}", file.getName());
     }
 
-    private boolean fileIsProcessed(File file, PropertiesFileHandler handler) {
+    private boolean fileIsProcessed(File file) throws IOException {
 
-        return handler.propertiesFileExists()
-                && file.length() == handler.getBytesRead();
+        return checkpointStore.contains(file.getName())
+                && file.length() == checkpointStore.getOffset(file.getName());
     }
 
-    private boolean checkNoRecentUpdate(long lastUpdateTimestamp) {
 
-        return System.currentTimeMillis() - lastUpdateTimestamp > maxTimeToKeepFilesInMillis;
-    }
+    /**
+     * Progress of the file being published, stored at most once per checkpoint interval.
+     */
+    private final class Checkpointer {
 
-    private List<File> getAllFiles() {
+        private final String file;
+        private long offset;
 
-        File[] files = new File(filePath).listFiles();
-        if (files == null) {
+        /**
+         * Offset of the last dictionary record before {@link #offset} in a spool segment, -1 if unknown.
+         */
+        private long dictionaryOffset;
+        private long storedOffset;
+        private long lastStoreMillis;
 
-            return Lists.newArrayList();
+        Checkpointer(final String file, final long offset, final long dictionaryOffset) {
+
+            this.file = file;
+            this.offset = offset;
+            this.dictionaryOffset = dictionaryOffset;
+            this.storedOffset = offset;
+            this.lastStoreMillis = System.currentTimeMillis();
         }
 
-        List<File> theFiles = Arrays.asList(files);
-        Collections.sort(theFiles);
-        return ImmutableList.copyOf(theFiles);
+        /**
+         * Record that the metrics of the requests acknowledged by the pipeline are published.
+         */
+        void advance(final SendPipeline pipeline) throws IOException {
+
+            long acknowledgedOffset = pipeline.getAcknowledgedOffset();
+            if (acknowledgedOffset < 0 || acknowledgedOffset == offset) {
+
+                return;
+            }
+
+            offset = acknowledgedOffset;
+            dictionaryOffset = pipeline.getAcknowledgedDictionaryOffset();
+            if (System.currentTimeMillis() - lastStoreMillis >= checkpointIntervalMillis) {
+
+                flush();
+            }
+        }
+
+        /**
+         * Record that all the metrics of the file are published, and store the progress.
+         */
+        void complete(final long endOffset, final long endDictionaryOffset) throws IOException {
+
+            offset = endOffset;
+            dictionaryOffset = endDictionaryOffset;
+            if (!checkpointStore.contains(file)) {
+
+                store();
+            } else {
+
+                flush();
+            }
+        }
+
+        /**
+         * Store the progress, if any since the last store.
+         */
+        void flush() throws IOException {
+
+            if (offset != storedOffset) {
+
+                store();
+            }
+        }
+
+        private void store() throws IOException {
+
+            checkpointStore.update(file, offset, dictionaryOffset);
+            storedOffset = offset;
+            lastStoreMillis = System.currentTimeMillis();
+        }
     }
 }
@@ -0,0 +1,146 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a JSON log file from a byte offset, through a file channel and a reusable direct buffer.
+ * <p>
+ * Lines are decoded as UTF-8 and {@link #position()} is the exact byte offset following the last line read,
+ * so that multi-byte characters don't shift checkpoints. A last line without its line feed may still be being
+ * written: it's not returned. Instances are not thread safe.
+ */
+final class LogFileReader implements Closeable {
+
+    /**
+     * Size of the read buffer; grown for longer lines.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LINE_FEED = '\n';
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+
+    /**
+     * Bytes of the current line, copied out of the buffer to be decoded.
+     */
+    private byte[] line;
+
+    /**
+     * Offset following the last line read.
+     */
+    private long position;
+
+    /**
+     * Offset in the file of the first byte after the buffer content.
+     */
+    private long readOffset;
+
+    /**
+     * Constructor.
+     *
+     * @param file        log file
+     * @param startOffset offset to start reading from, a line boundary returned by {@link #position()}, or 0
+     * @throws IOException - if the file cannot be opened
+     */
+    LogFileReader(final Path file, final long startOffset) throws IOException {
+
+        Preconditions.checkNotNull(file, "File cannot be null.");
+        Preconditions.checkArgument(startOffset >= 0, "Start offset cannot be negative.");
+
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        // through Buffer: the covariant ByteBuffer overrides don't exist on Java 8
+        ((Buffer) this.buffer).limit(0);
+        this.line = new byte[256];
+        this.position = startOffset;
+        this.readOffset = startOffset;
+    }
+
+    /**
+     * Read the next complete line.
+     *
+     * @return line without its line feed, null if there is no complete line left
+     * @throws IOException - if an IO exception occurs
+     */
+    String readLine() throws IOException {
+
+        int scanned = 0;
+        while (true) {
+
+            for (int index = buffer.position() + scanned; index < buffer.limit(); index++) {
+
+                if (buffer.get(index) == LINE_FEED) {
+
+                    int length = index - buffer.position();
+                    if (line.length < length) {
+
+                        line = new byte[Math.max(length, line.length * 2)];
+                    }
+                    buffer.get(line, 0, length);
+                    buffer.get();
+                    position += length + 1;
+                    return new String(line, 0, length, StandardCharsets.UTF_8);
+                }
+            }
+
+            scanned = buffer.remaining();
+            if (!readMore()) {
+
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return offset following the last line read
+     */
+    long position() {
+
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    /**
+     * Append bytes from the file after the unread content of the buffer.
+     *
+     * @return false if the end of the file is reached
+     */
+    private boolean readMore() throws IOException {
+
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+
+            ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            larger.put(buffer);
+            ((Buffer) larger).flip();
+            buffer = larger;
+        }
+
+        buffer.compact();
+        int read = channel.read(buffer, readOffset);
+        ((Buffer) buffer).flip();
+        if (read <= 0) {
+
+            return false;
+        }
+        readOffset += read;
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.deevvi.async.publisher.utils.MetricDatumUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds {@link PutMetricDataRequest}s filled up to the CW limits, both in number of datums and in request size.
+ * <p>
+ * The request size is estimated incrementally, as datums are added, with
+ * {@link MetricDatumUtils#estimateEncodedSize(MetricDatum, int)}.
+ */
+final class MetricDataBatchBuilder {
+
+    /**
+     * Maximum number of datums CW accepts in one request.
+     */
+    static final int MAX_DATUMS_PER_REQUEST = 1000;
+
+    /**
+     * Maximum request size; kept a bit under the 1 MB accepted by CW.
+     */
+    static final int MAX_REQUEST_BYTES = 1_000_000;
+
+    /**
+     * Parameters sent once per request, except the namespace value.
+     */
+    private static final String REQUEST_PREFIX = "Action=PutMetricData&Version=2010-08-01&Namespace=";
+
+    private final String namespace;
+    private final int maxDatums;
+    private final int maxBytes;
+    private final int requestOverhead;
+
+    private final List<MetricDatum> datums;
+    private int estimatedBytes;
+
+    /**
+     * Constructor using the CW limits.
+     *
+     * @param namespace CW namespace
+     */
+    MetricDataBatchBuilder(final String namespace) {
+
+        this(namespace, MAX_DATUMS_PER_REQUEST, MAX_REQUEST_BYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param namespace CW namespace
+     * @param maxDatums maximum number of datums per request
+     * @param maxBytes  maximum estimated request size in bytes
+     */
+    MetricDataBatchBuilder(final String namespace, final int maxDatums, final int maxBytes) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
+        Preconditions.checkArgument(maxDatums > 0, "Maximum number of datums must be positive.");
+        Preconditions.checkArgument(maxBytes > 0, "Maximum request size must be positive.");
+
+        this.namespace = namespace;
+        this.maxDatums = maxDatums;
+        this.maxBytes = maxBytes;
+        this.requestOverhead = REQUEST_PREFIX.length() + MetricDatumUtils.encodedLength(namespace);
+        this.datums = Lists.newArrayList();
+        this.estimatedBytes = requestOverhead;
+    }
+
+    /**
+     * Add a datum to the current request, if it fits.
+     * A datum is always accepted by an empty builder, even if it exceeds the size limit on its own.
+     *
+     * @param datum metric datum
+     * @return true if the datum was added, false if the current request must be built first
+     */
+    boolean add(final MetricDatum datum) {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        int datumBytes = MetricDatumUtils.estimateEncodedSize(datum, datums.size() + 1);
+        if (!datums.isEmpty() && (datums.size() >= maxDatums || estimatedBytes + datumBytes > maxBytes)) {
+
+            return false;
+        }
+
+        datums.add(datum);
+        estimatedBytes += datumBytes;
+        return true;
+    }
+
+    /**
+     * @return true if no datum was added since the last build
+     */
+    boolean isEmpty() {
+
+        return datums.isEmpty();
+    }
+
+    /**
+     * @return number of datums in the current request
+     */
+    int size() {
+
+        return datums.size();
+    }
+
+    /**
+     * @return true if the current request reached the maximum number of datums
+     */
+    boolean isFull() {
+
+        return datums.size() >= maxDatums;
+    }
+
+    /**
+     * @return estimated size in bytes of the current request
+     */
+    int estimatedSize() {
+
+        return estimatedBytes;
+    }
+
+    /**
+     * Build the current request and start a new one.
+     *
+     * @return request with all datums added since the last build
+     */
+    PutMetricDataRequest build() {
+
+        PutMetricDataRequest request = new PutMetricDataRequest()
+                .withNamespace(namespace)
+                .withMetricData(datums);
+        datums.clear();
+        estimatedBytes = requestOverhead;
+        return request;
+    }
+
+    /**
+     * Split a collection of datums into as few requests as possible.
+     *
+     * @param metricDatums datums to publish
+     * @return requests, in the datums order
+     */
+    List<PutMetricDataRequest> partition(final Collection<MetricDatum> metricDatums) {
+
+        List<PutMetricDataRequest> requests = Lists.newArrayList();
+        for (MetricDatum datum : metricDatums) {
+
+            if (!add(datum)) {
+
+                requests.add(build());
+                add(datum);
+            }
+        }
+
+        if (!isEmpty()) {
+
+            requests.add(build());
+        }
+        return requests;
+    }
+}
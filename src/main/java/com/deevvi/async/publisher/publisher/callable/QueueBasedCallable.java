@@ -1,21 +1,39 @@
 package com.deevvi.async.publisher.publisher.callable;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.deevvi.async.publisher.publisher.buffer.BlockingQueueMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.MetricsBuffer;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Async CW publisher using a queue for reading metrics.
+ * Async CW publisher using a queue or a {@link MetricsBuffer} for reading metrics.
+ * <p>
+ * The datums of the requests that cannot be sent, because CW fails or rejects them or the circuit of the
+ * {@link RetryPolicy} is open, are handed to a fallback publisher if any, or dropped and counted: the sender never waits for the circuit to close,
+ * so that it keeps draining the buffer. The callable stops when its thread is interrupted, handing the datums polled
+ * and not sent yet to the fallback publisher.
  */
 public final class QueueBasedCallable implements Callable<Object> {
 
@@ -25,14 +43,14 @@ public final class QueueBasedCallable implements Callable<Object> {
     private static final Logger LOG = LoggerFactory.getLogger(QueueBasedCallable.class);
 
     /**
-     * Maximum number of items to publish to CW per batch
+     * Maximum number of distinct statistic sets kept per aggregation window.
      */
-    private static final int MAX_ITEMS_PER_BATCH = 18;
+    private static final int MAX_AGGREGATED_KEYS = 4096;
 
     /**
-     * Queue used for reading metrics to publish.
+     * Buffer used for reading metrics to publish.
      */
-    private final BlockingQueue<MetricDatum> metricsQueue;
+    private final MetricsBuffer metricsBuffer;
 
     /**
      * CloudWatch client.
@@ -45,9 +63,45 @@ public final class QueueBasedCallable implements Callable<Object> {
     private final int maxMillisToWait;
 
     /**
-     * CloudWatch metrics namespace.
+     * Whether datums are folded into statistic sets before batching.
      */
-    private final String namespace;
+    private volatile boolean aggregationEnabled;
+
+    /**
+     * Builder splitting polled datums into requests that fit the CW limits.
+     */
+    private final MetricDataBatchBuilder batchBuilder;
+
+    /**
+     * Non-blocking CloudWatch client, null when requests are sent with the blocking client.
+     */
+    private final AmazonCloudWatchAsync asyncClient;
+
+    /**
+     * Bounds the number of requests in flight on the non-blocking client, null when the blocking client is used.
+     */
+    private final Semaphore inFlightRequests;
+
+    /**
+     * Scheduler of the retries of the failed requests sent with the non-blocking client, null when the blocking
+     * client is used.
+     */
+    private final ScheduledExecutorService retryScheduler;
+
+    /**
+     * Number of datums dropped because they couldn't be sent or were rejected, and there is no fallback publisher.
+     */
+    private final AtomicLong droppedDatums = new AtomicLong();
+
+    /**
+     * Retry policy of the requests to CW.
+     */
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * Publisher receiving the datums not sent to CW, null to drop them.
+     */
+    private volatile MetricsPublisher fallback;
 
     /**
      * Constructor.
@@ -59,15 +113,112 @@ public final class QueueBasedCallable implements Callable<Object> {
      */
     public QueueBasedCallable(final BlockingQueue<MetricDatum> metricsQueue, final AmazonCloudWatch client, final String namespace, final int maxMillisToWait) {
 
-        Preconditions.checkNotNull(metricsQueue, "Queue cannot be null.");
+        this(new BlockingQueueMetricsBuffer(metricsQueue), client, namespace, maxMillisToWait);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param metricsBuffer   buffer used for reading metrics
+     * @param client          AWS CW client
+     * @param namespace       CW namespace
+     * @param maxMillisToWait maximum time interval to wait to buffer metrics
+     */
+    public QueueBasedCallable(final MetricsBuffer metricsBuffer, final AmazonCloudWatch client, final String namespace, final int maxMillisToWait) {
+
+        Preconditions.checkNotNull(metricsBuffer, "Buffer cannot be null.");
+        Preconditions.checkNotNull(client, "AWS client cannot be null.");
+        Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
+        Preconditions.checkArgument(maxMillisToWait > 0, "Wait time cannot be negative.");
+
+        this.metricsBuffer = metricsBuffer;
+        this.client = client;
+        this.maxMillisToWait = maxMillisToWait;
+        this.batchBuilder = new MetricDataBatchBuilder(namespace);
+        this.asyncClient = null;
+        this.inFlightRequests = null;
+        this.retryScheduler = null;
+    }
+
+    /**
+     * Constructor for a non-blocking sender: requests are pipelined on the async client
+     * and their completions are handled through callbacks.
+     *
+     * @param metricsQueue        queue used for reading metrics
+     * @param client              AWS CW async client
+     * @param namespace           CW namespace
+     * @param maxMillisToWait     maximum time interval to wait to buffer metrics
+     * @param maxInFlightRequests maximum number of requests sent and not completed yet
+     */
+    public QueueBasedCallable(final BlockingQueue<MetricDatum> metricsQueue, final AmazonCloudWatchAsync client, final String namespace, final int maxMillisToWait, final int maxInFlightRequests) {
+
+        this(new BlockingQueueMetricsBuffer(metricsQueue), client, namespace, maxMillisToWait, maxInFlightRequests);
+    }
+
+    /**
+     * Constructor for a non-blocking sender: requests are pipelined on the async client
+     * and their completions are handled through callbacks.
+     *
+     * @param metricsBuffer       buffer used for reading metrics
+     * @param client              AWS CW async client
+     * @param namespace           CW namespace
+     * @param maxMillisToWait     maximum time interval to wait to buffer metrics
+     * @param maxInFlightRequests maximum number of requests sent and not completed yet
+     */
+    public QueueBasedCallable(final MetricsBuffer metricsBuffer, final AmazonCloudWatchAsync client, final String namespace, final int maxMillisToWait, final int maxInFlightRequests) {
+
+        Preconditions.checkNotNull(metricsBuffer, "Buffer cannot be null.");
         Preconditions.checkNotNull(client, "AWS client cannot be null.");
         Preconditions.checkNotNull(StringUtils.trimToNull(namespace), "Namespace cannot be null or empty.");
         Preconditions.checkArgument(maxMillisToWait > 0, "Wait time cannot be negative.");
+        Preconditions.checkArgument(maxInFlightRequests > 0, "Maximum number of in flight requests must be positive.");
 
-        this.metricsQueue = metricsQueue;
+        this.metricsBuffer = metricsBuffer;
         this.client = client;
         this.maxMillisToWait = maxMillisToWait;
-        this.namespace = namespace;
+        this.batchBuilder = new MetricDataBatchBuilder(namespace);
+        this.asyncClient = client;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cw-retry-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Enable or disable the aggregation stage.
+     * When enabled, datums polled during a wait interval are grouped by metric name, unit and minute
+     * and published as one statistic set per group, instead of one datum per measure.
+     *
+     * @param aggregationEnabled true to aggregate datums before batching
+     */
+    public void setAggregationEnabled(final boolean aggregationEnabled) {
+
+        this.aggregationEnabled = aggregationEnabled;
+    }
+
+    /**
+     * Set the retry policy of the requests to CW, shared with the other senders to the same account.
+     * While its circuit is open, no request is sent and the datums polled are handed to the fallback publisher, or
+     * dropped. With the non-blocking client, failed requests are retried after the backoff of the policy, without
+     * holding the sender; they keep their in flight slot meanwhile.
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+
+        Preconditions.checkNotNull(retryPolicy, "Retry policy cannot be null.");
+
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set a publisher receiving the datums that cannot be sent to CW, e.g. to write them to disk, instead of
+     * dropping them.
+     *
+     * @param fallback fallback publisher, null to drop the datums not sent
+     */
+    public void setFallback(final MetricsPublisher fallback) {
+
+        this.fallback = fallback;
     }
 
     /**
@@ -76,27 +227,32 @@ public final class QueueBasedCallable implements Callable<Object> {
     @Override
     public Object call() {
 
-        while (true) {
+        StatisticSetAggregator aggregator = null;
+        while (!Thread.currentThread().isInterrupted()) {
 
             try {
-                long now = System.currentTimeMillis();
-                List<MetricDatum> list = Lists.newArrayList();
-                while (list.size() < MAX_ITEMS_PER_BATCH && System.currentTimeMillis() - now < maxMillisToWait) {
+                List<MetricDatum> list;
+                if (aggregationEnabled) {
 
-                    MetricDatum poll = metricsQueue.poll(maxMillisToWait, TimeUnit.MILLISECONDS);
-                    if (poll != null) {
-                        list.add(poll);
+                    if (aggregator == null) {
+
+                        aggregator = new StatisticSetAggregator(MAX_AGGREGATED_KEYS);
                     }
+                    list = pollAggregated(aggregator);
+                } else {
+
+                    list = poll();
                 }
 
-                if (!list.isEmpty()) {
+                for (PutMetricDataRequest request : batchBuilder.partition(list)) {
 
-                    PutMetricDataRequest request = new PutMetricDataRequest()
-                            .withNamespace(namespace)
-                            .withMetricData(list);
+                    if (Thread.currentThread().isInterrupted()) {
 
-                    client.putMetricData(request);
-                    LOG.info("Published {} metrics in a batch into CW.", list.size());
+                        spill(request);
+                    } else {
+
+                        send(request);
+                    }
                 }
 
             } catch (Exception e) {
@@ -104,5 +260,200 @@ public final class QueueBasedCallable implements Callable<Object> {
                 LOG.warn(e.getMessage());
             }
         }
+
+        if (retryScheduler != null) {
+
+            // the retries already scheduled still run, and spill their datums if they fail again
+            retryScheduler.shutdown();
+        }
+        return null;
+    }
+
+    /**
+     * @return number of datums dropped because they couldn't be sent to CW or were rejected by it, and there is no
+     * fallback publisher
+     */
+    public long getDroppedDatums() {
+
+        return droppedDatums.get();
+    }
+
+    private void send(final PutMetricDataRequest request) {
+
+        RetryPolicy policy = retryPolicy;
+        try {
+
+            if (asyncClient == null) {
+
+                RetryPolicy.Outcome outcome = policy.execute(() -> client.putMetricData(request), false);
+                if (outcome == RetryPolicy.Outcome.SENT) {
+
+                    LOG.info("Published {} metrics in a batch into CW.", request.getMetricData().size());
+                } else {
+
+                    // failed or rejected: the fallback publisher may isolate the datums rejected
+                    spill(request);
+                }
+            } else {
+
+                inFlightRequests.acquire();
+                sendAsync(request, policy, 0);
+            }
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            spill(request);
+        }
+    }
+
+    /**
+     * Send a request with the non-blocking client, holding an in flight slot released once the request
+     * is sent, rejected or given up.
+     */
+    private void sendAsync(final PutMetricDataRequest request, final RetryPolicy policy, final int attempt) {
+
+        if (!policy.allowRequest()) {
+
+            inFlightRequests.release();
+            spill(request);
+            return;
+        }
+
+        AsyncHandler<PutMetricDataRequest, PutMetricDataResult> handler = new AsyncHandler<PutMetricDataRequest, PutMetricDataResult>() {
+
+            @Override
+            public void onError(final Exception exception) {
+
+                RetryPolicy.ErrorClass errorClass = policy.onFailure(exception);
+                if (errorClass == RetryPolicy.ErrorClass.PERMANENT) {
+
+                    inFlightRequests.release();
+                    LOG.warn("Request rejected by CW:", exception);
+                    spill(request);
+                    return;
+                }
+                if (attempt + 1 < policy.getMaxAttempts()) {
+
+                    LOG.debug("Attempt {} failed with a {} error, retrying: {}", attempt + 1, errorClass, exception.getMessage());
+                    try {
+
+                        retryScheduler.schedule(() -> sendAsync(request, policy, attempt + 1),
+                                policy.getBackoffMillis(attempt, errorClass), TimeUnit.MILLISECONDS);
+                        return;
+                    } catch (RejectedExecutionException e) {
+
+                        LOG.debug("Sender stopped, not retrying.");
+                    }
+                }
+
+                inFlightRequests.release();
+                LOG.warn("Exception on publishing metrics into CW after {} attempts:", attempt + 1, exception);
+                spill(request);
+            }
+
+            @Override
+            public void onSuccess(final PutMetricDataRequest request, final PutMetricDataResult result) {
+
+                inFlightRequests.release();
+                policy.onSuccess();
+                LOG.info("Published {} metrics in a batch into CW.", request.getMetricData().size());
+            }
+        };
+
+        try {
+
+            asyncClient.putMetricDataAsync(request, handler);
+        } catch (RuntimeException e) {
+
+            handler.onError(e);
+        }
+    }
+
+    /**
+     * Hand the datums of a request not sent to the fallback publisher, or drop them if there is none.
+     */
+    private void spill(final PutMetricDataRequest request) {
+
+        MetricsPublisher publisher = fallback;
+        if (publisher == null) {
+
+            droppedDatums.addAndGet(request.getMetricData().size());
+            LOG.warn("Dropped {} metrics not published into CW.", request.getMetricData().size());
+            return;
+        }
+
+        // an interrupted thread would close the file channels of the fallback publisher
+        boolean interrupted = Thread.interrupted();
+        try {
+
+            publisher.publish(request.getMetricData());
+            LOG.debug("Spilled {} metrics not published into CW.", request.getMetricData().size());
+        } catch (IOException | RuntimeException e) {
+
+            LOG.warn("Exception on spilling {} metrics not published into CW:", request.getMetricData().size(), e);
+        } finally {
+
+            if (interrupted) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private List<MetricDatum> poll() {
+
+        long now = System.currentTimeMillis();
+        List<MetricDatum> list = Lists.newArrayList();
+        while (list.size() < MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST && System.currentTimeMillis() - now < maxMillisToWait) {
+
+            if (!drainTo(list, MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST - list.size())) {
+
+                break;
+            }
+        }
+        return list;
+    }
+
+    private List<MetricDatum> pollAggregated(final StatisticSetAggregator aggregator) {
+
+        long now = System.currentTimeMillis();
+        List<MetricDatum> list = Lists.newArrayList();
+        List<MetricDatum> polled = Lists.newArrayList();
+        while (list.size() < MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST && !aggregator.isFull() && System.currentTimeMillis() - now < maxMillisToWait) {
+
+            polled.clear();
+            boolean waited = drainTo(polled, MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST - list.size());
+            for (MetricDatum datum : polled) {
+
+                if (!aggregator.add(datum)) {
+                    list.add(datum);
+                }
+            }
+            if (!waited) {
+
+                break;
+            }
+        }
+
+        aggregator.drainTo(list);
+        return list;
+    }
+
+    /**
+     * Move the available datums to a list, waiting up to the maximum wait time for the first one.
+     *
+     * @return false if the thread is interrupted, keeping the datums already polled
+     */
+    private boolean drainTo(final List<MetricDatum> sink, final int maxItems) {
+
+        try {
+
+            metricsBuffer.drainTo(sink, maxItems, maxMillisToWait, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,391 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.AmazonServiceException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy for the requests to CW, shared by all the threads sending to the same account.
+ * <p>
+ * A failed request is retried up to a maximum number of attempts, after an exponential backoff with full jitter:
+ * the delay before the retry {@code n} is random between 0 and {@code min(maxDelay, baseDelay * 2^n)}, one more
+ * doubling for throttling errors. Errors rejecting the request itself, e.g. an invalid value, are not retried.
+ * <p>
+ * A circuit breaker stops all the requests once several attempts in a row failed, whichever requests they belong to:
+ * the circuit stays open for a
+ * while, then a single probe request is let through; the circuit closes if it succeeds, and opens again otherwise.
+ * Instances are thread safe.
+ */
+public final class RetryPolicy {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+    /**
+     * Default maximum number of attempts for a request.
+     */
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default delay ceiling before the first retry.
+     */
+    private static final long DEFAULT_BASE_DELAY = 100;
+
+    /**
+     * Default maximum delay ceiling before a retry.
+     */
+    private static final long DEFAULT_MAX_DELAY = 10_000;
+
+    /**
+     * Default number of failed attempts in a row opening the circuit.
+     */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time the circuit stays open.
+     */
+    private static final long DEFAULT_OPEN_INTERVAL = 30_000;
+
+    /**
+     * Error codes of the throttled requests.
+     */
+    private static final Set<String> THROTTLING_ERROR_CODES = ImmutableSet.of("Throttling", "ThrottlingException",
+            "ThrottledException", "RequestThrottledException", "TooManyRequestsException",
+            "ProvisionedThroughputExceededException", "TransactionInProgressException", "RequestLimitExceeded",
+            "BandwidthLimitExceeded", "RequestThrottled", "SlowDown",
+            "PriorRequestNotComplete", "EC2ThrottledException");
+
+    /**
+     * Error codes of the requests signed with a clock too far from the CW one, or whose credentials expired.
+     */
+    private static final Set<String> CLOCK_SKEW_ERROR_CODES = ImmutableSet.of("RequestTimeTooSkewed", "RequestExpired",
+            "InvalidSignatureException", "SignatureDoesNotMatch", "AuthFailure", "RequestInTheFuture");
+
+    /**
+     * Error codes of the transient failures.
+     */
+    private static final Set<String> RETRYABLE_ERROR_CODES = ImmutableSet.of("RequestTimeout", "RequestTimeoutException",
+            "ServiceUnavailable", "InternalFailure", "InternalError");
+
+    /**
+     * Class of a failed request.
+     */
+    public enum ErrorClass {
+
+        /**
+         * Request throttled by CW: retried after a longer backoff.
+         */
+        THROTTLING,
+
+        /**
+         * Transient failure, e.g. a network error or a CW internal error, or any error not returned by CW: retried.
+         */
+        RETRYABLE,
+
+        /**
+         * Request rejected by CW because of its content, e.g. an invalid value or a timestamp too old: never retried.
+         */
+        PERMANENT
+    }
+
+    /**
+     * Outcome of a request.
+     */
+    public enum Outcome {
+
+        /**
+         * Request accepted by CW.
+         */
+        SENT,
+
+        /**
+         * Request rejected by CW with a permanent error.
+         */
+        REJECTED,
+
+        /**
+         * Request not sent: all its attempts failed, or the circuit is open.
+         */
+        FAILED
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int failureThreshold;
+    private final long openIntervalMillis;
+
+    /**
+     * Number of failed attempts in a row.
+     */
+    private int consecutiveFailures;
+
+    /**
+     * Time the circuit was opened, 0 if closed.
+     */
+    private long openedMillis;
+
+    /**
+     * Whether the probe request of a half-open circuit is in flight.
+     */
+    private boolean probing;
+
+    private long throttledCount;
+    private long rejectedCount;
+    private long circuitOpenedCount;
+
+    /**
+     * Constructor, with the default limits: 3 attempts, backoff from 100ms up to 10s, and a circuit opened
+     * for 30s after 5 failed attempts in a row.
+     */
+    public RetryPolicy() {
+
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_INTERVAL);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts        maximum number of attempts for a request, 1 to never retry
+     * @param baseDelayMillis    delay ceiling before the first retry
+     * @param maxDelayMillis     maximum delay ceiling before a retry
+     * @param failureThreshold   number of failed attempts in a row opening the circuit
+     * @param openIntervalMillis time the circuit stays open before a probe request is let through
+     */
+    public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis,
+                       final int failureThreshold, final long openIntervalMillis) {
+
+        Preconditions.checkArgument(maxAttempts > 0, "Maximum number of attempts must be positive.");
+        Preconditions.checkArgument(baseDelayMillis > 0, "Base delay must be positive.");
+        Preconditions.checkArgument(maxDelayMillis >= baseDelayMillis, "Maximum delay cannot be lower than the base delay.");
+        Preconditions.checkArgument(failureThreshold > 0, "Failure threshold must be positive.");
+        Preconditions.checkArgument(openIntervalMillis > 0, "Open interval must be positive.");
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.failureThreshold = failureThreshold;
+        this.openIntervalMillis = openIntervalMillis;
+    }
+
+    /**
+     * Classify the failure of a request.
+     *
+     * @param e exception thrown by the CW client
+     * @return class of the failure
+     */
+    public static ErrorClass classify(final Exception e) {
+
+        if (e instanceof AmazonServiceException) {
+
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            String errorCode = serviceException.getErrorCode();
+            int status = serviceException.getStatusCode();
+            if (THROTTLING_ERROR_CODES.contains(errorCode) || status == 429) {
+
+                return ErrorClass.THROTTLING;
+            }
+            if (RETRYABLE_ERROR_CODES.contains(errorCode) || CLOCK_SKEW_ERROR_CODES.contains(errorCode)
+                    || status == 408 || status == 401 || status == 403) {
+
+                // credentials may be renewed
+                return ErrorClass.RETRYABLE;
+            }
+            if (status >= 400 && status < 500) {
+
+                return ErrorClass.PERMANENT;
+            }
+        }
+
+        // e.g. a network error, a CW internal error, or a client shut down: never a reason to drop the datums
+        return ErrorClass.RETRYABLE;
+    }
+
+    /**
+     * Run a request, retrying its throttling and retryable failures after a backoff.
+     *
+     * @param request       request to CW, throwing the exception of the client if it fails
+     * @param waitWhileOpen whether to wait for the circuit to close, instead of giving up while it's open
+     * @return outcome of the request
+     * @throws InterruptedException - if the thread is interrupted while waiting
+     */
+    public Outcome execute(final Runnable request, final boolean waitWhileOpen) throws InterruptedException {
+
+        for (int attempt = 0; ; attempt++) {
+
+            if (waitWhileOpen) {
+
+                awaitPermit();
+            } else if (!allowRequest()) {
+
+                return Outcome.FAILED;
+            }
+
+            try {
+
+                request.run();
+                onSuccess();
+                return Outcome.SENT;
+            } catch (RuntimeException e) {
+
+                ErrorClass errorClass = onFailure(e);
+                if (errorClass == ErrorClass.PERMANENT) {
+
+                    LOG.warn("Request rejected by CW:", e);
+                    return Outcome.REJECTED;
+                }
+                if (attempt + 1 >= maxAttempts) {
+
+                    LOG.warn("Exception on publishing metrics into CW after {} attempts:", attempt + 1, e);
+                    return Outcome.FAILED;
+                }
+
+                LOG.debug("Attempt {} failed with a {} error, retrying: {}", attempt + 1, errorClass, e.getMessage());
+                Thread.sleep(getBackoffMillis(attempt, errorClass));
+            }
+        }
+    }
+
+    /**
+     * Wait until a request can be sent, see {@link #allowRequest()}.
+     *
+     * @throws InterruptedException - if the thread is interrupted while waiting
+     */
+    public void awaitPermit() throws InterruptedException {
+
+        while (!allowRequest()) {
+
+            Thread.sleep(Math.max(getRemainingOpenMillis(), baseDelayMillis));
+        }
+    }
+
+    /**
+     * Whether a request can be sent: the circuit is closed, or it's half-open and this request is its probe.
+     *
+     * @return false while the circuit is open
+     */
+    public synchronized boolean allowRequest() {
+
+        if (openedMillis == 0) {
+
+            return true;
+        }
+        if (probing || System.currentTimeMillis() - openedMillis < openIntervalMillis) {
+
+            return false;
+        }
+
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Record a request accepted by CW, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+
+        consecutiveFailures = 0;
+        openedMillis = 0;
+        probing = false;
+    }
+
+    /**
+     * Record a failed attempt; enough throttling and retryable failures in a row open the circuit, a permanent
+     * failure means that CW is available and counts as a success.
+     *
+     * @param e exception thrown by the CW client
+     * @return class of the failure
+     */
+    public synchronized ErrorClass onFailure(final Exception e) {
+
+        ErrorClass errorClass = classify(e);
+        if (errorClass == ErrorClass.PERMANENT) {
+
+            rejectedCount++;
+            onSuccess();
+            return errorClass;
+        }
+
+        if (errorClass == ErrorClass.THROTTLING) {
+
+            throttledCount++;
+        }
+        consecutiveFailures++;
+        if (probing || (openedMillis == 0 && consecutiveFailures >= failureThreshold)) {
+
+            if (openedMillis == 0) {
+
+                LOG.warn("{} attempts to send to CW failed in a row, stop sending for {} ms.", consecutiveFailures, openIntervalMillis);
+            }
+            openedMillis = System.currentTimeMillis();
+            probing = false;
+            circuitOpenedCount++;
+        }
+        return errorClass;
+    }
+
+    /**
+     * Get the delay before retrying a request: random between 0 and the exponential ceiling of the attempt.
+     *
+     * @param attempt    number of the failed attempt, from 0
+     * @param errorClass class of the failure
+     * @return delay in millis
+     */
+    public long getBackoffMillis(final int attempt, final ErrorClass errorClass) {
+
+        int doublings = Math.min(attempt + (errorClass == ErrorClass.THROTTLING ? 1 : 0), 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << doublings);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return time left until a probe request is let through, 0 if the circuit is closed or half-open
+     */
+    public synchronized long getRemainingOpenMillis() {
+
+        if (openedMillis == 0) {
+
+            return 0;
+        }
+        return Math.max(0, openedMillis + openIntervalMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * @return maximum number of attempts for a request
+     */
+    public int getMaxAttempts() {
+
+        return maxAttempts;
+    }
+
+    /**
+     * @return number of throttling failures
+     */
+    public synchronized long getThrottledCount() {
+
+        return throttledCount;
+    }
+
+    /**
+     * @return number of requests rejected with a permanent failure
+     */
+    public synchronized long getRejectedCount() {
+
+        return rejectedCount;
+    }
+
+    /**
+     * @return number of times the circuit was opened
+     */
+    public synchronized long getCircuitOpenedCount() {
+
+        return circuitOpenedCount;
+    }
+}
@@ -0,0 +1,307 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * In-memory list of the log files and spool segments of a folder, and of their state, so that a run doesn't have
+ * to list the folder nor check the files already published.
+ * <p>
+ * The manifest is built by listing the folder once, then listed again only when the modification time of the folder
+ * changes, i.e. when a file is created or deleted. The newest segment is {@link State#ACTIVE}, the older ones are
+ * {@link State#SEALED} until all their datums are published, then {@link State#DRAINED} until the retention period
+ * since their last checkpoint elapses. The active segment is never expired, whatever the retention period, since
+ * its writer may still append to it. Instances are not thread safe.
+ */
+final class SegmentManifest {
+
+    /**
+     * Interval after a change of the folder during which it's listed on each refresh, since a file created
+     * right after a listing may not change the modification time of the folder, depending on its precision.
+     */
+    private static final long RACY_CHANGE_MILLIS = 1000;
+
+    /**
+     * State of a segment.
+     */
+    enum State {
+
+        /**
+         * Newest segment, may still be written.
+         */
+        ACTIVE,
+
+        /**
+         * Older segment, with datums not published yet.
+         */
+        SEALED,
+
+        /**
+         * Older segment, all published.
+         */
+        DRAINED,
+
+        /**
+         * Segment past its retention period, being deleted.
+         */
+        DELETABLE
+    }
+
+    private final Path directory;
+    private final CheckpointStore checkpointStore;
+
+    /**
+     * All the segments, and the {@link State#ACTIVE} and {@link State#SEALED} ones, by file name.
+     */
+    private final NavigableMap<String, Segment> segments;
+    private final NavigableMap<String, Segment> undrained;
+
+    /**
+     * Modification time of the folder when it was last listed, and when it was listed.
+     */
+    private FileTime listedModifiedTime;
+    private long listedMillis;
+
+    /**
+     * Earliest time at which a published segment is past its retention period.
+     */
+    private long nextExpiryMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param directory       folder of the segments
+     * @param checkpointStore checkpoints of the segments
+     */
+    SegmentManifest(final String directory, final CheckpointStore checkpointStore) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(directory), "File path cannot be null or empty.");
+        Preconditions.checkNotNull(checkpointStore, "Checkpoint store cannot be null.");
+
+        this.directory = new File(directory).toPath();
+        this.checkpointStore = checkpointStore;
+        this.segments = Maps.newTreeMap();
+        this.undrained = Maps.newTreeMap();
+        this.nextExpiryMillis = Long.MAX_VALUE;
+    }
+
+    /**
+     * List the folder again if it changed since it was last listed.
+     *
+     * @throws IOException - if the checkpoint of a new segment cannot be read
+     */
+    void refresh() throws IOException {
+
+        FileTime modifiedTime = modifiedTime();
+        if (listedModifiedTime == null || !listedModifiedTime.equals(modifiedTime)
+                || modifiedTime.toMillis() >= listedMillis - RACY_CHANGE_MILLIS) {
+
+            listedMillis = System.currentTimeMillis();
+            listedModifiedTime = modifiedTime;
+            list();
+        }
+    }
+
+    /**
+     * List the folder again, e.g. if its modification time is not reliable.
+     *
+     * @throws IOException - if the checkpoint of a new segment cannot be read
+     */
+    void rebuild() throws IOException {
+
+        listedModifiedTime = null;
+        refresh();
+    }
+
+    /**
+     * @return segments which may have datums not published yet, oldest first
+     */
+    List<Segment> getUndrained() {
+
+        return ImmutableList.copyOf(undrained.values());
+    }
+
+    /**
+     * Record whether all the datums of a segment are published; a segment found with datums not published
+     * is published again, even if it was drained.
+     *
+     * @param segment   segment
+     * @param published whether all the datums of the segment are published
+     * @throws IOException - if the checkpoint of the segment cannot be read
+     */
+    void update(final Segment segment, final boolean published) throws IOException {
+
+        segment.publishedMillis = published ? checkpointStore.getLastUpdateTimestamp(segment.getName()) : 0;
+        if (published) {
+
+            nextExpiryMillis = Math.min(nextExpiryMillis, segment.publishedMillis);
+            if (segment.state == State.SEALED) {
+
+                segment.state = State.DRAINED;
+                undrained.remove(segment.getName());
+            }
+        } else if (segment.state == State.DRAINED || segment.state == State.DELETABLE) {
+
+            // written again since it was published
+            segment.state = segment.getName().equals(segments.lastKey()) ? State.ACTIVE : State.SEALED;
+            undrained.put(segment.getName(), segment);
+        }
+    }
+
+    /**
+     * Get the published segments whose retention period elapsed, marking them {@link State#DELETABLE}.
+     * Only the segments published for long enough are checked; the {@link State#ACTIVE} segment is kept
+     * until a newer segment seals it.
+     *
+     * @param retentionMillis retention period, since the last checkpoint of a segment
+     * @return segments to delete
+     */
+    List<Segment> getExpired(final long retentionMillis) {
+
+        long now = System.currentTimeMillis();
+        if (nextExpiryMillis == Long.MAX_VALUE || now - nextExpiryMillis <= retentionMillis) {
+
+            return ImmutableList.of();
+        }
+
+        List<Segment> expired = Lists.newArrayList();
+        nextExpiryMillis = Long.MAX_VALUE;
+        for (Segment segment : segments.values()) {
+
+            if (segment.publishedMillis > 0 && segment.state == State.DRAINED) {
+
+                if (now - segment.publishedMillis > retentionMillis) {
+
+                    segment.state = State.DELETABLE;
+                    expired.add(segment);
+                } else {
+
+                    nextExpiryMillis = Math.min(nextExpiryMillis, segment.publishedMillis);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Remove a deleted segment.
+     *
+     * @param segment segment
+     */
+    void remove(final Segment segment) {
+
+        segments.remove(segment.getName());
+        undrained.remove(segment.getName());
+    }
+
+    private FileTime modifiedTime() {
+
+        try {
+
+            return Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+
+            // folder deleted: listed again once it's back
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void list() throws IOException {
+
+        File[] files = directory.toFile().listFiles();
+        Map<String, File> listed = Maps.newHashMap();
+        if (files != null) {
+
+            for (File file : files) {
+
+                if (!file.isDirectory() && (FileUtils.isLogFile(file) || FileUtils.isSpoolFile(file))) {
+
+                    listed.put(file.getName(), file);
+                }
+            }
+        }
+
+        segments.keySet().retainAll(listed.keySet());
+        undrained.keySet().retainAll(listed.keySet());
+        for (File file : listed.values()) {
+
+            if (!segments.containsKey(file.getName())) {
+
+                Segment segment = new Segment(file);
+                segments.put(file.getName(), segment);
+                undrained.put(file.getName(), segment);
+                update(segment, checkpointStore.contains(file.getName()) && checkpointStore.getOffset(file.getName()) == file.length());
+            }
+        }
+        seal();
+    }
+
+    /**
+     * Make the newest segment the active one.
+     */
+    private void seal() throws IOException {
+
+        for (Segment segment : segments.headMap(segments.isEmpty() ? "" : segments.lastKey()).values()) {
+
+            if (segment.state == State.ACTIVE) {
+
+                segment.state = State.SEALED;
+                update(segment, segment.publishedMillis > 0);
+            }
+        }
+        if (!segments.isEmpty()) {
+
+            Segment newest = segments.lastEntry().getValue();
+            newest.state = State.ACTIVE;
+            undrained.put(newest.getName(), newest);
+        }
+    }
+
+    /**
+     * Log file or spool segment of the folder.
+     */
+    static final class Segment {
+
+        private final File file;
+        private State state;
+
+        /**
+         * Time of the last checkpoint of the segment if all its datums are published, 0 otherwise.
+         */
+        private long publishedMillis;
+
+        Segment(final File file) {
+
+            this.file = file;
+            this.state = State.SEALED;
+        }
+
+        File getFile() {
+
+            return file;
+        }
+
+        String getName() {
+
+            return file.getName();
+        }
+
+        State getState() {
+
+            return state;
+        }
+    }
+}
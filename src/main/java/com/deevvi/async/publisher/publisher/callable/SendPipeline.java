@@ -0,0 +1,257 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToIntFunction;
+
+/**
+ * Send stage of the publishing of a file: the requests read from the file are sent on other threads, so that the
+ * file is read and decoded while the previous requests are in flight, up to a maximum number of requests in flight,
+ * and optionally up to a maximum shared with the pipelines of the other files.
+ * <p>
+ * Requests are acknowledged in the order they were sent: the progress of the file is the end of the last request
+ * sent successfully together with all the earlier ones, or the end of the last datum published of the first request
+ * failed, when its datums' offsets are known. Once a request fails, no other request is sent.
+ * Instances are used by the thread reading the file only.
+ */
+final class SendPipeline {
+
+    private final ToIntFunction<PutMetricDataRequest> sender;
+    private final Executor executor;
+
+    /**
+     * Free slots for requests in flight.
+     */
+    private final Semaphore window;
+
+    /**
+     * Free slots for requests in flight shared with the pipelines of the other files, null if not capped.
+     */
+    private final Semaphore sharedWindow;
+
+    /**
+     * Requests not acknowledged yet, in the order they were sent.
+     */
+    private final Deque<Request> inFlight;
+
+    /**
+     * Offset following the datums acknowledged, -1 if none.
+     */
+    private long acknowledgedOffset = -1;
+
+    /**
+     * Offset of the last dictionary record before {@link #acknowledgedOffset}, -1 if unknown.
+     */
+    private long acknowledgedDictionaryOffset = -1;
+
+    private boolean failed;
+
+    /**
+     * Constructor.
+     *
+     * @param sender      sends a request, returning the number of its leading datums published, all of them
+     *                    unless it failed
+     * @param executor    threads sending the requests
+     * @param maxInFlight maximum number of requests in flight
+     */
+    SendPipeline(final ToIntFunction<PutMetricDataRequest> sender, final Executor executor, final int maxInFlight) {
+
+        this(sender, executor, maxInFlight, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sender       sends a request, returning the number of its leading datums published, all of them
+     *                     unless it failed
+     * @param executor     threads sending the requests
+     * @param maxInFlight  maximum number of requests in flight
+     * @param sharedWindow free slots for the requests in flight of all the pipelines, null if not capped
+     */
+    SendPipeline(final ToIntFunction<PutMetricDataRequest> sender, final Executor executor, final int maxInFlight,
+                 final Semaphore sharedWindow) {
+
+        Preconditions.checkNotNull(sender, "Sender cannot be null.");
+        Preconditions.checkNotNull(executor, "Executor cannot be null.");
+        Preconditions.checkArgument(maxInFlight > 0, "Maximum number of requests in flight must be positive.");
+
+        this.sender = sender;
+        this.executor = executor;
+        this.window = new Semaphore(maxInFlight);
+        this.sharedWindow = sharedWindow;
+        this.inFlight = Lists.newLinkedList();
+    }
+
+    /**
+     * Send a request once there is room in flight for it; an empty request is acknowledged with the earlier ones.
+     *
+     * @param request             request to send
+     * @param endOffset           offset in the file following the datums of the request
+     * @param endDictionaryOffset offset of the last dictionary record before the end offset, -1 if unknown
+     * @return false if an earlier request failed, in which case the request isn't sent
+     * @throws IOException - if the thread is interrupted while waiting for room
+     */
+    boolean send(final PutMetricDataRequest request, final long endOffset, final long endDictionaryOffset) throws IOException {
+
+        return send(request, endOffset, endDictionaryOffset, null);
+    }
+
+    /**
+     * Send a request once there is room in flight for it; an empty request is acknowledged with the earlier ones.
+     *
+     * @param request             request to send
+     * @param endOffset           offset in the file following the datums of the request
+     * @param endDictionaryOffset offset of the last dictionary record before the end offset, -1 if unknown
+     * @param datumOffsets        offsets following each datum of the request, null to acknowledge the request
+     *                            only once all its datums are published
+     * @return false if an earlier request failed, in which case the request isn't sent
+     * @throws IOException - if the thread is interrupted while waiting for room
+     */
+    boolean send(final PutMetricDataRequest request, final long endOffset, final long endDictionaryOffset,
+                 final DatumOffsets datumOffsets) throws IOException {
+
+        Preconditions.checkArgument(datumOffsets == null || datumOffsets.size() == request.getMetricData().size(),
+                "Datum offsets must match the datums of the request.");
+
+        acknowledge();
+        if (failed) {
+
+            return false;
+        }
+
+        Request sent = new Request(request.getMetricData().size(), endOffset, endDictionaryOffset, datumOffsets);
+        if (request.getMetricData().isEmpty()) {
+
+            sent.result = CompletableFuture.completedFuture(0);
+        } else {
+
+            try {
+
+                window.acquire();
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the requests in flight.", e);
+            }
+            if (sharedWindow != null) {
+
+                try {
+
+                    sharedWindow.acquire();
+                } catch (InterruptedException e) {
+
+                    window.release();
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the requests in flight.", e);
+                }
+            }
+            sent.result = CompletableFuture.supplyAsync(() -> sender.applyAsInt(request), executor);
+            sent.result.whenComplete((success, e) -> {
+
+                if (sharedWindow != null) {
+
+                    sharedWindow.release();
+                }
+                window.release();
+            });
+        }
+        inFlight.add(sent);
+        return true;
+    }
+
+    /**
+     * Wait until all the requests sent are completed, so that none is still in flight when the file is published again.
+     *
+     * @return true if all the requests were sent successfully
+     * @throws IOException - if the thread is interrupted while waiting
+     */
+    boolean await() throws IOException {
+
+        for (Request request : inFlight) {
+
+            try {
+
+                request.result.get();
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the requests in flight.", e);
+            } catch (ExecutionException e) {
+
+                // handled as a failed request
+            }
+        }
+        acknowledge();
+        return !failed;
+    }
+
+    /**
+     * @return offset following the last request acknowledged together with all the earlier ones, -1 if none
+     */
+    long getAcknowledgedOffset() {
+
+        acknowledge();
+        return acknowledgedOffset;
+    }
+
+    /**
+     * @return offset of the last dictionary record before {@link #getAcknowledgedOffset()}, -1 if unknown
+     */
+    long getAcknowledgedDictionaryOffset() {
+
+        return acknowledgedDictionaryOffset;
+    }
+
+    /**
+     * Acknowledge the completed requests at the head of the requests in flight.
+     */
+    private void acknowledge() {
+
+        while (!failed && !inFlight.isEmpty() && inFlight.peek().result.isDone()) {
+
+            Request head = inFlight.poll();
+            int published = head.result.isCompletedExceptionally() ? 0 : head.result.getNow(0);
+            if (published >= head.datums) {
+
+                acknowledgedOffset = head.endOffset;
+                acknowledgedDictionaryOffset = head.endDictionaryOffset;
+            } else {
+
+                if (published > 0 && head.datumOffsets != null) {
+
+                    acknowledgedOffset = head.datumOffsets.getEndOffset(published - 1);
+                    acknowledgedDictionaryOffset = head.datumOffsets.getEndDictionaryOffset(published - 1);
+                }
+                failed = true;
+            }
+        }
+    }
+
+    /**
+     * Request sent, and the end of its datums in the file.
+     */
+    private static final class Request {
+
+        private final int datums;
+        private final long endOffset;
+        private final long endDictionaryOffset;
+        private final DatumOffsets datumOffsets;
+        private CompletableFuture<Integer> result;
+
+        Request(final int datums, final long endOffset, final long endDictionaryOffset, final DatumOffsets datumOffsets) {
+
+            this.datums = datums;
+            this.endOffset = endOffset;
+            this.endDictionaryOffset = endDictionaryOffset;
+            this.datumOffsets = datumOffsets;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Folds raw metric datums into one {@link StatisticSet} per metric name, unit and minute.
+ * <p>
+ * Keys are stored in an open addressing table backed by parallel arrays, so adding a datum
+ * doesn't allocate. Instances are not thread safe and are meant to be confined to the sender thread.
+ */
+final class StatisticSetAggregator {
+
+    /**
+     * Width of a time bucket: one minute, the CW standard resolution.
+     */
+    private static final long BUCKET_MILLIS = 60_000L;
+
+    /**
+     * Standard storage resolution in seconds.
+     */
+    private static final int STANDARD_RESOLUTION = 60;
+
+    /**
+     * Maximum number of distinct keys kept before the aggregator must be drained.
+     */
+    private final int maxKeys;
+
+    /**
+     * Mask used to map a hash to a slot; table length is a power of two.
+     */
+    private final int mask;
+
+    private final String[] names;
+    private final String[] units;
+    private final long[] buckets;
+    private final double[] sums;
+    private final double[] minimums;
+    private final double[] maximums;
+    private final double[] sampleCounts;
+
+    /**
+     * Occupied slots in insertion order, used for draining and clearing without scanning the table.
+     */
+    private final int[] usedSlots;
+
+    /**
+     * Number of distinct keys currently stored.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param maxKeys maximum number of distinct keys to keep
+     */
+    StatisticSetAggregator(final int maxKeys) {
+
+        Preconditions.checkArgument(maxKeys > 0, "Maximum number of keys must be positive.");
+
+        int tableSize = Integer.highestOneBit(maxKeys * 2 - 1) << 1;
+        this.maxKeys = maxKeys;
+        this.mask = tableSize - 1;
+        this.names = new String[tableSize];
+        this.units = new String[tableSize];
+        this.buckets = new long[tableSize];
+        this.sums = new double[tableSize];
+        this.minimums = new double[tableSize];
+        this.maximums = new double[tableSize];
+        this.sampleCounts = new double[tableSize];
+        this.usedSlots = new int[maxKeys];
+    }
+
+    /**
+     * Fold a datum into its statistic set.
+     *
+     * @param datum metric datum
+     * @return true if the datum was aggregated, false if it cannot be aggregated or the aggregator is full
+     */
+    boolean add(final MetricDatum datum) {
+
+        if (!isAggregatable(datum)) {
+
+            return false;
+        }
+
+        String name = datum.getMetricName();
+        String unit = datum.getUnit();
+        long timestamp = datum.getTimestamp() != null ? datum.getTimestamp().getTime() : System.currentTimeMillis();
+        long bucket = timestamp - Math.floorMod(timestamp, BUCKET_MILLIS);
+        double value = datum.getValue();
+
+        int slot = mix(31 * (31 * name.hashCode() + Objects.hashCode(unit)) + Long.hashCode(bucket)) & mask;
+        while (names[slot] != null) {
+
+            if (buckets[slot] == bucket && names[slot].equals(name) && Objects.equals(units[slot], unit)) {
+
+                sums[slot] += value;
+                minimums[slot] = Math.min(minimums[slot], value);
+                maximums[slot] = Math.max(maximums[slot], value);
+                sampleCounts[slot] += 1;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == maxKeys) {
+
+            return false;
+        }
+
+        names[slot] = name;
+        units[slot] = unit;
+        buckets[slot] = bucket;
+        sums[slot] = value;
+        minimums[slot] = value;
+        maximums[slot] = value;
+        sampleCounts[slot] = 1;
+        usedSlots[size++] = slot;
+        return true;
+    }
+
+    /**
+     * @return true if no more distinct keys can be added
+     */
+    boolean isFull() {
+
+        return size == maxKeys;
+    }
+
+    /**
+     * @return true if nothing was aggregated since the last drain
+     */
+    boolean isEmpty() {
+
+        return size == 0;
+    }
+
+    /**
+     * Emit one datum per aggregated key and clear the aggregator.
+     *
+     * @param sink collection receiving the aggregated datums
+     */
+    void drainTo(final Collection<MetricDatum> sink) {
+
+        for (int index = 0; index < size; index++) {
+
+            int slot = usedSlots[index];
+            sink.add(new MetricDatum()
+                    .withMetricName(names[slot])
+                    .withUnit(units[slot])
+                    .withTimestamp(new Date(buckets[slot]))
+                    .withStatisticValues(new StatisticSet()
+                            .withSum(sums[slot])
+                            .withMinimum(minimums[slot])
+                            .withMaximum(maximums[slot])
+                            .withSampleCount(sampleCounts[slot])));
+        }
+        clear();
+    }
+
+    private void clear() {
+
+        for (int index = 0; index < size; index++) {
+
+            int slot = usedSlots[index];
+            names[slot] = null;
+            units[slot] = null;
+        }
+        size = 0;
+    }
+
+    private static boolean isAggregatable(final MetricDatum datum) {
+
+        return datum.getMetricName() != null
+                && datum.getValue() != null
+                && !datum.getValue().isNaN()
+                && !datum.getValue().isInfinite()
+                && datum.getStatisticValues() == null
+                && (datum.getDimensions() == null || datum.getDimensions().isEmpty())
+                && (datum.getStorageResolution() == null || datum.getStorageResolution() == STANDARD_RESOLUTION);
+    }
+
+    private static int mix(final int hash) {
+
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
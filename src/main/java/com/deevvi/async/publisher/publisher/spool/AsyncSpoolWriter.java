@@ -0,0 +1,412 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands datums over to a dedicated thread that appends them to the spool, so that appending never waits for the disk.
+ * <p>
+ * The writer thread gathers the batches appended during the durability window and writes them with one append
+ * to the underlying {@link SpoolWriter}: datums are on disk at most a window after they are appended, unless the
+ * disk fails, in which case the write is retried. {@link #flush()} waits until the datums appended before it are
+ * written. When the hand-off is full, appending waits for the writer thread.
+ */
+public final class AsyncSpoolWriter implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSpoolWriter.class);
+
+    /**
+     * Default maximum number of batches waiting to be written.
+     */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    /**
+     * Maximum number of datums written with one append.
+     */
+    private static final int MAX_DATUMS_PER_WRITE = 10_000;
+
+    /**
+     * Pause before writing again after a failed write, doubled after each failure in a row up to the maximum.
+     */
+    private static final long RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 10_000;
+
+    /**
+     * Minimum interval between two warnings about the same failing write.
+     */
+    private static final long FAILURE_LOG_INTERVAL_MILLIS = 60_000;
+
+    /**
+     * Interval at which an idle writer thread checks whether it's closed.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * Maximum time to wait for the pending batches to be written on close.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final SpoolWriter spoolWriter;
+    private final long durabilityWindowNanos;
+
+    /**
+     * Batches and flush requests, in the order they were made.
+     */
+    private final BlockingQueue<Batch> handOff;
+
+    private final ExecutorService writerThread;
+
+    private volatile boolean closed;
+
+    /**
+     * Number of datums dropped because they could not be encoded.
+     */
+    private final AtomicLong droppedMetrics;
+
+    /**
+     * Constructor.
+     *
+     * @param spoolWriter            writer of the spool segments
+     * @param durabilityWindowMillis maximum time a datum waits before being written; 0 writes as soon as possible
+     */
+    public AsyncSpoolWriter(final SpoolWriter spoolWriter, final long durabilityWindowMillis) {
+
+        this(spoolWriter, durabilityWindowMillis, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param spoolWriter            writer of the spool segments
+     * @param durabilityWindowMillis maximum time a datum waits before being written; 0 writes as soon as possible
+     * @param capacity               maximum number of batches waiting to be written
+     */
+    public AsyncSpoolWriter(final SpoolWriter spoolWriter, final long durabilityWindowMillis, final int capacity) {
+
+        Preconditions.checkNotNull(spoolWriter, "Spool writer cannot be null.");
+        Preconditions.checkArgument(durabilityWindowMillis >= 0, "Durability window cannot be negative.");
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+
+        this.spoolWriter = spoolWriter;
+        this.durabilityWindowNanos = TimeUnit.MILLISECONDS.toNanos(durabilityWindowMillis);
+        this.handOff = new LinkedBlockingQueue<>(capacity);
+        this.droppedMetrics = new AtomicLong();
+        this.writerThread = Executors.newSingleThreadExecutor();
+        this.writerThread.submit(this::writeLoop);
+    }
+
+    /**
+     * Hand datums over to the writer thread.
+     *
+     * @param metrics datums to write
+     * @throws IOException - if the writer is closed, or the thread is interrupted while the hand-off is full
+     */
+    public void append(final Collection<MetricDatum> metrics) throws IOException {
+
+        Preconditions.checkNotNull(metrics, "Metrics list cannot be null.");
+
+        enqueue(new Batch(ImmutableList.copyOf(metrics), null));
+    }
+
+    /**
+     * Wait until the datums appended before this call are written to the spool.
+     *
+     * @throws IOException - if the writer was closed before the datums could be written, or the thread is interrupted
+     */
+    public void flush() throws IOException {
+
+        Batch marker = new Batch(null, new CountDownLatch(1));
+        enqueue(marker);
+        try {
+
+            while (!marker.written.await(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                if (writerThread.isTerminated() && marker.written.getCount() > 0) {
+
+                    throw new IOException("Spool writer is closed.");
+                }
+            }
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the spool to be written.", e);
+        }
+
+        if (marker.failed) {
+
+            throw new IOException("Spool writer was closed before the metrics were written.");
+        }
+    }
+
+    /**
+     * @return number of datums dropped because they could not be encoded
+     */
+    public long getDroppedMetrics() {
+
+        return droppedMetrics.get();
+    }
+
+    /**
+     * Write the pending batches and stop the writer thread; later appends fail. The underlying spool writer isn't closed.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+        // ends the durability window in progress, if any
+        handOff.offer(new Batch(null, new CountDownLatch(1)));
+        writerThread.shutdown();
+        try {
+
+            if (!writerThread.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                writerThread.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            writerThread.shutdownNow();
+        }
+
+        Batch batch;
+        while ((batch = handOff.poll()) != null) {
+
+            if (batch.written != null) {
+
+                batch.failed = true;
+                batch.written.countDown();
+            } else {
+
+                LOG.warn("Spool writer closed; {} metrics not written.", batch.metrics.size());
+            }
+        }
+    }
+
+    private void enqueue(final Batch batch) throws IOException {
+
+        if (closed) {
+
+            throw new IOException("Spool writer is closed.");
+        }
+
+        try {
+
+            handOff.put(batch);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while handing metrics over to the spool writer.", e);
+        }
+    }
+
+    private void writeLoop() {
+
+        List<Batch> round = Lists.newArrayList();
+        try {
+
+            while (!closed || !handOff.isEmpty()) {
+
+                Batch first = handOff.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+
+                    continue;
+                }
+
+                round.add(first);
+                gather(round);
+                write(round);
+                round.forEach(Batch::done);
+                round.clear();
+            }
+        } catch (InterruptedException e) {
+
+            LOG.warn("Spool writer interrupted; {} batches not written.", round.size() + handOff.size());
+            round.forEach(Batch::fail);
+            round.forEach(Batch::done);
+        }
+    }
+
+    /**
+     * Add to the round the batches appended until the end of the durability window, a flush request,
+     * or the maximum number of datums per write.
+     */
+    private void gather(final List<Batch> round) throws InterruptedException {
+
+        long deadline = System.nanoTime() + durabilityWindowNanos;
+        int datums = round.get(0).size();
+        while (round.get(round.size() - 1).written == null && datums < MAX_DATUMS_PER_WRITE) {
+
+            long remaining = deadline - System.nanoTime();
+            Batch next = remaining > 0 && !closed ? handOff.poll(remaining, TimeUnit.NANOSECONDS) : handOff.poll();
+            if (next == null) {
+
+                return;
+            }
+            round.add(next);
+            datums += next.size();
+        }
+    }
+
+    /**
+     * Write the datums of the round, retrying on IO failures with an exponential backoff until the writer is closed.
+     * If a datum cannot be encoded, the batches are written one by one and the invalid ones are dropped.
+     */
+    private void write(final List<Batch> round) throws InterruptedException {
+
+        List<MetricDatum> datums = Lists.newArrayList();
+        round.forEach(batch -> batch.addTo(datums));
+        if (datums.isEmpty()) {
+
+            return;
+        }
+
+        boolean isolate = false;
+        int failures = 0;
+        long lastLogMillis = 0;
+        while (true) {
+
+            try {
+
+                if (isolate) {
+
+                    writeOneByOne(round);
+                } else {
+
+                    spoolWriter.append(datums);
+                }
+                if (failures > 0) {
+
+                    LOG.info("Wrote {} metrics to the spool after {} failed attempts.", datums.size(), failures);
+                }
+                return;
+            } catch (IllegalArgumentException e) {
+
+                isolate = true;
+            } catch (IOException e) {
+
+                if (closed) {
+
+                    LOG.error("Spool writer closed after a failed write; {} metrics not written.", datums.size(), e);
+                    round.forEach(Batch::fail);
+                    return;
+                }
+
+                failures++;
+                long now = System.currentTimeMillis();
+                if (failures == 1) {
+
+                    LOG.warn("Exception on writing to the spool, retrying:", e);
+                    lastLogMillis = now;
+                } else if (now - lastLogMillis >= FAILURE_LOG_INTERVAL_MILLIS) {
+
+                    LOG.warn("Writing to the spool still fails after {} attempts, retrying: {}", failures, e.getMessage());
+                    lastLogMillis = now;
+                }
+                backOff(failures);
+            }
+        }
+    }
+
+    /**
+     * Wait before retrying a failed write, returning early if the writer is closed.
+     */
+    private void backOff(final int failures) throws InterruptedException {
+
+        long delay = Math.min(MAX_RETRY_MILLIS, RETRY_MILLIS << Math.min(failures - 1, 20));
+        long deadline = System.currentTimeMillis() + delay;
+        long remaining;
+        while (!closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+
+            Thread.sleep(Math.min(remaining, IDLE_POLL_MILLIS));
+        }
+    }
+
+    private void writeOneByOne(final List<Batch> round) throws IOException {
+
+        for (Batch batch : round) {
+
+            if (batch.metrics != null && !batch.isWritten) {
+
+                try {
+
+                    spoolWriter.append(batch.metrics);
+                } catch (IllegalArgumentException e) {
+
+                    LOG.warn("Dropped {} metrics that cannot be written to the spool:", batch.metrics.size(), e);
+                    droppedMetrics.addAndGet(batch.metrics.size());
+                }
+                batch.isWritten = true;
+            }
+        }
+    }
+
+    /**
+     * Datums appended by one call, or a flush request.
+     */
+    private static final class Batch {
+
+        /**
+         * Datums to write, null for a flush request.
+         */
+        private final List<MetricDatum> metrics;
+
+        /**
+         * Released when the flush request is processed, null for datums.
+         */
+        private final CountDownLatch written;
+
+        private volatile boolean failed;
+        private boolean isWritten;
+
+        Batch(final List<MetricDatum> metrics, final CountDownLatch written) {
+
+            this.metrics = metrics;
+            this.written = written;
+        }
+
+        int size() {
+
+            return metrics != null ? metrics.size() : 0;
+        }
+
+        void addTo(final List<MetricDatum> datums) {
+
+            if (metrics != null) {
+
+                datums.addAll(metrics);
+            }
+        }
+
+        void fail() {
+
+            failed = true;
+        }
+
+        void done() {
+
+            if (written != null) {
+
+                written.countDown();
+            }
+        }
+    }
+}
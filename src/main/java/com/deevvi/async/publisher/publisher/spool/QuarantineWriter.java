@@ -0,0 +1,150 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Appends the datums permanently rejected by CW, each one with its error, to the hourly quarantine segments of
+ * a directory, so that they can be inspected and published again once fixed. Quarantine segments are in the spool
+ * format, see {@link SegmentReader#getError()}; they are never published nor deleted by the publisher.
+ * <p>
+ * Each datum is forced to the device before {@link #write(MetricDatum, String)} returns, since the quarantine
+ * segment is its only copy once the spool is checkpointed past it. Instances are thread safe.
+ */
+public final class QuarantineWriter implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(QuarantineWriter.class);
+
+    /**
+     * Folder where the quarantine segments are stored.
+     */
+    private final String directory;
+
+    /**
+     * Quarantine segment being written, null until the first write.
+     */
+    private SegmentFile segment;
+
+    /**
+     * Number of datums quarantined.
+     */
+    private long quarantined;
+
+    /**
+     * Constructor.
+     *
+     * @param directory folder where the quarantine segments are stored
+     */
+    public QuarantineWriter(final String directory) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(directory), "File path cannot be null or empty.");
+
+        this.directory = directory;
+    }
+
+    /**
+     * Append a datum rejected by CW to the quarantine segment of the current hour.
+     *
+     * @param datum metric datum
+     * @param error error returned by CW
+     * @throws IOException - if the datum cannot be written
+     */
+    public synchronized void write(final MetricDatum datum, final String error) throws IOException {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        openSegment(Paths.get(directory + FileUtils.generateQuarantineFileSuffix(System.currentTimeMillis())));
+        SegmentEncoder encoder = segment.getEncoder();
+        try {
+
+            encoder.encode(datum, StringUtils.defaultString(error));
+        } catch (RuntimeException e) {
+
+            encoder.discard();
+            throw e;
+        }
+
+        try {
+
+            segment.writePending();
+            segment.getChannel().force(false);
+            encoder.commit();
+            quarantined++;
+        } catch (IOException e) {
+
+            encoder.discard();
+            abortSegment();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of datums quarantined
+     */
+    public synchronized long getQuarantinedCount() {
+
+        return quarantined;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+
+        closeSegment();
+    }
+
+    private void openSegment(final Path path) throws IOException {
+
+        if (segment != null && path.equals(segment.getPath())) {
+
+            return;
+        }
+
+        closeSegment();
+        segment = SegmentFile.open(path);
+    }
+
+    /**
+     * Close the segment after a failed write, truncating the partial record it may end with.
+     */
+    private void abortSegment() {
+
+        try {
+
+            segment.abort();
+        } catch (IOException e) {
+
+            LOG.warn("Exception on repairing quarantine segment {}:", segment.getPath(), e);
+        }
+        segment = null;
+    }
+
+    private void closeSegment() {
+
+        if (segment != null) {
+
+            try {
+
+                segment.close();
+            } catch (IOException e) {
+
+                LOG.warn("Exception on closing quarantine segment:", e);
+            }
+        }
+        segment = null;
+    }
+}
@@ -0,0 +1,370 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.DATUM;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.DICTIONARY;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.ERROR;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.FRAMING_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_DIMENSIONS;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_NAME;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_RESOLUTION;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_STATISTICS;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_TIMESTAMP;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_UNIT;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_VALUE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HEADER_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.MAGIC;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.MAX_ERROR_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.VERSION;
+
+/**
+ * Encodes datums into the records of one spool segment, see {@link SpoolFormat}.
+ * <p>
+ * Records are accumulated in a reusable buffer; once the buffer is written to the segment, {@link #commit()} makes
+ * its dictionary entries part of the segment state, while {@link #discard()} forgets them. Instances are not thread safe.
+ */
+public final class SegmentEncoder {
+
+    /**
+     * Initial size of the records buffer.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Upper bound of the size of a datum record, without dimensions.
+     */
+    private static final int MAX_DATUM_RECORD_SIZE = FRAMING_SIZE + 1 + 1 + 4 + 4 + 8 + 8 + 4 * 8 + 4 + 2;
+
+    /**
+     * Size of a dimension in a datum record: ids of name and value.
+     */
+    private static final int DIMENSION_SIZE = 8;
+
+    /**
+     * Ids of the strings of the segment, by string.
+     */
+    private final Map<String, Integer> dictionary;
+
+    /**
+     * Strings of the segment, by id.
+     */
+    private final List<String> strings;
+
+    private final CRC32 crc;
+
+    /**
+     * Records not written yet.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Size of the segment, without the records not written yet.
+     */
+    private long position;
+
+    /**
+     * Offset of the last dictionary record, -1 if none.
+     */
+    private long lastDictionaryOffset;
+
+    /**
+     * State of the dictionary as of the last commit.
+     */
+    private int committedStrings;
+    private long committedLastDictionaryOffset;
+
+    /**
+     * Constructor for a new, empty segment.
+     */
+    public SegmentEncoder() {
+
+        this(Lists.newArrayList(), -1, 0);
+    }
+
+    private SegmentEncoder(final List<String> strings, final long lastDictionaryOffset, final long position) {
+
+        this.dictionary = Maps.newHashMap();
+        for (int id = 0; id < strings.size(); id++) {
+
+            dictionary.put(strings.get(id), id);
+        }
+        this.strings = strings;
+        this.crc = new CRC32();
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.position = position;
+        this.lastDictionaryOffset = lastDictionaryOffset;
+        this.committedStrings = strings.size();
+        this.committedLastDictionaryOffset = lastDictionaryOffset;
+    }
+
+    /**
+     * Create an encoder appending to an existing segment: the dictionary is read back from the segment and
+     * an incomplete record left at its end by a crash is truncated.
+     *
+     * @param segment segment file
+     * @return encoder positioned at the end of the segment
+     * @throws IOException - if the segment cannot be read, or isn't a spool segment
+     */
+    public static SegmentEncoder resume(final Path segment) throws IOException {
+
+        List<String> strings = Lists.newArrayList();
+        long lastDictionaryOffset;
+        long end;
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            reader.skipToEnd();
+            for (int id = 0; id < reader.getDictionarySize(); id++) {
+
+                strings.add(reader.getString(id));
+            }
+            lastDictionaryOffset = reader.getLastDictionaryOffset();
+            end = reader.position();
+        }
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+
+            if (channel.size() > end) {
+
+                channel.truncate(end);
+            }
+        }
+        return new SegmentEncoder(strings, lastDictionaryOffset, end);
+    }
+
+    /**
+     * Encode a datum, preceded by the dictionary records of the strings new to the segment
+     * and, for an empty segment, by the segment header.
+     *
+     * @param datum metric datum
+     */
+    public void encode(final MetricDatum datum) {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+
+        startSegment();
+        List<Dimension> dimensions = datum.getDimensions();
+        int nameId = datum.getMetricName() != null ? idOf(datum.getMetricName()) : -1;
+        int unitId = datum.getUnit() != null ? idOf(datum.getUnit()) : -1;
+        for (Dimension dimension : dimensions) {
+
+            Preconditions.checkArgument(dimension.getName() != null && dimension.getValue() != null,
+                    "Dimension name and value cannot be null.");
+            idOf(dimension.getName());
+            idOf(dimension.getValue());
+        }
+
+        int flags = (nameId >= 0 ? HAS_NAME : 0)
+                | (unitId >= 0 ? HAS_UNIT : 0)
+                | (datum.getTimestamp() != null ? HAS_TIMESTAMP : 0)
+                | (datum.getValue() != null ? HAS_VALUE : 0)
+                | (datum.getStatisticValues() != null ? HAS_STATISTICS : 0)
+                | (datum.getStorageResolution() != null ? HAS_RESOLUTION : 0)
+                | (!dimensions.isEmpty() ? HAS_DIMENSIONS : 0);
+
+        ensureCapacity(MAX_DATUM_RECORD_SIZE + dimensions.size() * DIMENSION_SIZE);
+        int start = startRecord(DATUM);
+        buffer.put((byte) flags);
+        if (nameId >= 0) {
+
+            buffer.putInt(nameId);
+        }
+        if (unitId >= 0) {
+
+            buffer.putInt(unitId);
+        }
+        if (datum.getTimestamp() != null) {
+
+            buffer.putLong(datum.getTimestamp().getTime());
+        }
+        if (datum.getValue() != null) {
+
+            buffer.putDouble(datum.getValue());
+        }
+        if (datum.getStatisticValues() != null) {
+
+            StatisticSet statistics = datum.getStatisticValues();
+            buffer.putDouble(orNaN(statistics.getSampleCount()));
+            buffer.putDouble(orNaN(statistics.getSum()));
+            buffer.putDouble(orNaN(statistics.getMinimum()));
+            buffer.putDouble(orNaN(statistics.getMaximum()));
+        }
+        if (datum.getStorageResolution() != null) {
+
+            buffer.putInt(datum.getStorageResolution());
+        }
+        if (!dimensions.isEmpty()) {
+
+            buffer.putShort((short) dimensions.size());
+            for (Dimension dimension : dimensions) {
+
+                buffer.putInt(dictionary.get(dimension.getName()));
+                buffer.putInt(dictionary.get(dimension.getValue()));
+            }
+        }
+        endRecord(start);
+    }
+
+    /**
+     * Encode a datum rejected by CW, preceded by its error, in a quarantine segment.
+     *
+     * @param datum metric datum
+     * @param error error message, truncated to {@link SpoolFormat#MAX_ERROR_SIZE} bytes
+     */
+    public void encode(final MetricDatum datum, final String error) {
+
+        Preconditions.checkNotNull(datum, "Metric datum cannot be null.");
+        Preconditions.checkNotNull(error, "Error cannot be null.");
+
+        startSegment();
+        byte[] bytes = error.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_ERROR_SIZE);
+        ensureCapacity(FRAMING_SIZE + 1 + 2 + length);
+        int start = startRecord(ERROR);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+        endRecord(start);
+        encode(datum);
+    }
+
+    /**
+     * @return the records not written yet, ready to be read; the encoder state isn't changed
+     */
+    public ByteBuffer pending() {
+
+        ByteBuffer pending = buffer.duplicate();
+        // through Buffer: the covariant ByteBuffer overrides don't exist on Java 8
+        ((Buffer) pending).flip();
+        return pending;
+    }
+
+    /**
+     * @return number of bytes not written yet
+     */
+    public int pendingSize() {
+
+        return buffer.position();
+    }
+
+    /**
+     * Mark the pending records as written to the segment.
+     */
+    public void commit() {
+
+        position += buffer.position();
+        ((Buffer) buffer).clear();
+        committedStrings = strings.size();
+        committedLastDictionaryOffset = lastDictionaryOffset;
+    }
+
+    /**
+     * Drop the pending records, e.g. after a failed write; strings they added to the dictionary are forgotten.
+     */
+    public void discard() {
+
+        ((Buffer) buffer).clear();
+        while (strings.size() > committedStrings) {
+
+            dictionary.remove(strings.remove(strings.size() - 1));
+        }
+        lastDictionaryOffset = committedLastDictionaryOffset;
+    }
+
+    /**
+     * @return size of the segment, without the records not written yet
+     */
+    public long position() {
+
+        return position;
+    }
+
+    private int idOf(final String value) {
+
+        Integer id = dictionary.get(value);
+        if (id != null) {
+
+            return id;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Preconditions.checkArgument(bytes.length <= Short.MAX_VALUE, "String too long for the spool: %s bytes.", bytes.length);
+
+        int newId = strings.size();
+        ensureCapacity(FRAMING_SIZE + 1 + 4 + 8 + 2 + bytes.length);
+        long offset = position + buffer.position();
+        int start = startRecord(DICTIONARY);
+        buffer.putInt(newId);
+        buffer.putLong(lastDictionaryOffset);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        endRecord(start);
+
+        strings.add(value);
+        dictionary.put(value, newId);
+        lastDictionaryOffset = offset;
+        return newId;
+    }
+
+    /**
+     * Write the segment header before the first record of an empty segment.
+     */
+    private void startSegment() {
+
+        if (position == 0 && buffer.position() == 0) {
+
+            ensureCapacity(HEADER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.put(new byte[HEADER_SIZE - 5]);
+        }
+    }
+
+    private int startRecord(final byte type) {
+
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(type);
+        return start;
+    }
+
+    private void endRecord(final int start) {
+
+        int length = buffer.position() - start - 4;
+        buffer.putInt(start, length);
+        crc.reset();
+        crc.update(buffer.array(), start + 4, length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void ensureCapacity(final int bytes) {
+
+        if (buffer.remaining() < bytes) {
+
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            ((Buffer) buffer).flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private static double orNaN(final Double value) {
+
+        return value != null ? value : Double.NaN;
+    }
+}
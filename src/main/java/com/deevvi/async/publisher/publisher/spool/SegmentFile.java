@@ -0,0 +1,168 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Segment open for appending: its channel, positioned after its last complete record, and the encoder of its records.
+ * A segment ending with a partial record, e.g. after a failed write or a crash, is truncated when opened, or when
+ * aborted after the failed write. Instances are not thread safe.
+ */
+final class SegmentFile implements Closeable {
+
+    /**
+     * Opens the channel of a segment for writing.
+     */
+    @FunctionalInterface
+    interface ChannelOpener {
+
+        /**
+         * @param path segment path
+         * @return channel open for writing, creating the segment if needed
+         * @throws IOException - if the segment cannot be opened
+         */
+        FileChannel open(Path path) throws IOException;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final SegmentEncoder encoder;
+
+    private SegmentFile(final Path path, final FileChannel channel, final SegmentEncoder encoder) {
+
+        this.path = path;
+        this.channel = channel;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Open a segment for appending, creating it if needed, or resuming its encoder if it has records.
+     *
+     * @param path segment path
+     * @return segment open
+     * @throws IOException - if the segment cannot be opened or resumed
+     */
+    static SegmentFile open(final Path path) throws IOException {
+
+        return open(path, SegmentFile::openChannel);
+    }
+
+    /**
+     * Open a segment for appending, creating it if needed, or resuming its encoder if it has records.
+     *
+     * @param path   segment path
+     * @param opener opens the channel of the segment
+     * @return segment open
+     * @throws IOException - if the segment cannot be opened or resumed
+     */
+    static SegmentFile open(final Path path, final ChannelOpener opener) throws IOException {
+
+        Preconditions.checkNotNull(path, "Segment path cannot be null.");
+        Preconditions.checkNotNull(opener, "Channel opener cannot be null.");
+
+        FileChannel channel = opener.open(path);
+        try {
+
+            SegmentEncoder encoder = channel.size() > 0 ? SegmentEncoder.resume(path) : new SegmentEncoder();
+            channel.position(encoder.position());
+            return new SegmentFile(path, channel, encoder);
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the records encoded and not committed yet; the caller commits them once they are durable enough.
+     *
+     * @return number of bytes written
+     * @throws IOException - if the records cannot be written; the segment may then end with a partial record
+     */
+    int writePending() throws IOException {
+
+        ByteBuffer pending = encoder.pending();
+        int size = pending.remaining();
+        while (pending.hasRemaining()) {
+
+            channel.write(pending);
+        }
+        return size;
+    }
+
+    /**
+     * Close the segment after a failed write, truncating the records written and not committed, so that the segment
+     * ends with a complete record and can be completely published.
+     *
+     * @throws IOException - if the segment cannot be truncated
+     */
+    void abort() throws IOException {
+
+        long committed = encoder.position();
+        try {
+
+            channel.close();
+        } finally {
+
+            // through a new channel: the failed one may be closed, e.g. by an interrupt
+            try (FileChannel repair = FileChannel.open(path, StandardOpenOption.WRITE)) {
+
+                if (repair.size() > committed) {
+
+                    repair.truncate(committed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the channel of a segment for writing, creating the segment if needed.
+     *
+     * @param path segment path
+     * @return channel open for writing
+     * @throws IOException - if the segment cannot be opened
+     */
+    static FileChannel openChannel(final Path path) throws IOException {
+
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return segment path
+     */
+    Path getPath() {
+
+        return path;
+    }
+
+    /**
+     * @return channel of the segment
+     */
+    FileChannel getChannel() {
+
+        return channel;
+    }
+
+    /**
+     * @return encoder of the records of the segment
+     */
+    SegmentEncoder getEncoder() {
+
+        return encoder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+}
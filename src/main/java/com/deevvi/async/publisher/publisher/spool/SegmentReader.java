@@ -0,0 +1,526 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.DATUM;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.DICTIONARY;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.ERROR;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.FRAMING_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_DIMENSIONS;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_NAME;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_RESOLUTION;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_STATISTICS;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_TIMESTAMP;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_UNIT;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HAS_VALUE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.HEADER_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.MAGIC;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.MAX_RECORD_SIZE;
+import static com.deevvi.async.publisher.publisher.spool.SpoolFormat.VERSION;
+
+/**
+ * Reads the datums of a spool segment, see {@link SpoolFormat}.
+ * <p>
+ * Records are read from a file channel into a reusable direct buffer. Reading stops at the first incomplete record,
+ * which may still be being written; records with a wrong CRC are skipped and counted. {@link #position()} is the
+ * exact byte offset following the last record read, to be used as a checkpoint. Instances are not thread safe.
+ * <p>
+ * Resuming from a checkpoint needs the dictionary entries written before it: given the offset of the last of them,
+ * {@link #getLastDictionaryOffset()} when the checkpoint was taken, they are read by following the chain of
+ * dictionary records backwards, without reading the datums before the checkpoint.
+ */
+public final class SegmentReader implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentReader.class);
+
+    /**
+     * Size of the read buffer; grown for larger records.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path segment;
+    private final FileChannel channel;
+    private final CRC32 crc;
+
+    /**
+     * Bytes read from the segment, starting at {@link #bufferOffset}.
+     */
+    private ByteBuffer buffer;
+    private long bufferOffset;
+
+    /**
+     * Offset following the last record read.
+     */
+    private long position;
+
+    /**
+     * Strings of the segment, by id.
+     */
+    private final List<String> strings;
+    private long lastDictionaryOffset;
+
+    /**
+     * Datum decoded by the last call to {@link #readRecord(boolean)}, null if the record wasn't a valid datum.
+     */
+    private MetricDatum decoded;
+
+    /**
+     * Error of the last datum read, and error record read before the next datum, in a quarantine segment.
+     */
+    private String error;
+    private String pendingError;
+
+    private long corruptRecords;
+
+    /**
+     * Constructor.
+     *
+     * @param segment     segment file
+     * @param startOffset offset to start reading from, a record boundary returned by {@link #position()}, or 0
+     * @throws IOException - if the segment cannot be read, or isn't a spool segment of a supported version
+     */
+    public SegmentReader(final Path segment, final long startOffset) throws IOException {
+
+        this(segment, startOffset, -1);
+    }
+
+    /**
+     * Constructor resuming from a checkpoint.
+     *
+     * @param segment          segment file
+     * @param startOffset      offset to start reading from, a record boundary returned by {@link #position()}, or 0
+     * @param dictionaryOffset offset of the last dictionary record before the start offset, returned by
+     *                         {@link #getLastDictionaryOffset()}; if negative or invalid, the segment is read from
+     *                         its start up to the start offset
+     * @throws IOException - if the segment cannot be read, or isn't a spool segment of a supported version
+     */
+    public SegmentReader(final Path segment, final long startOffset, final long dictionaryOffset) throws IOException {
+
+        Preconditions.checkNotNull(segment, "Segment cannot be null.");
+        Preconditions.checkArgument(startOffset >= 0, "Start offset cannot be negative.");
+
+        this.segment = segment;
+        this.channel = FileChannel.open(segment, StandardOpenOption.READ);
+        this.crc = new CRC32();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        // through Buffer: the covariant ByteBuffer overrides don't exist on Java 8
+        ((Buffer) this.buffer).limit(0);
+        this.strings = Lists.newArrayList();
+        this.lastDictionaryOffset = -1;
+
+        try {
+
+            readHeader();
+            if (dictionaryOffset < HEADER_SIZE || dictionaryOffset >= startOffset || !readDictionaryChain(dictionaryOffset)) {
+
+                strings.clear();
+                lastDictionaryOffset = -1;
+                skipTo(startOffset);
+            } else if (position > 0) {
+
+                position = startOffset;
+            }
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next datum.
+     *
+     * @return next datum, null if there is no complete record left
+     * @throws IOException - if an IO exception occurs
+     */
+    public MetricDatum next() throws IOException {
+
+        while (readRecord(true)) {
+
+            if (decoded != null) {
+
+                MetricDatum datum = decoded;
+                decoded = null;
+                return datum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return offset following the last record read
+     */
+    public long position() {
+
+        return position;
+    }
+
+    /**
+     * @return error of the datum returned by the last call to {@link #next()}, in a quarantine segment; null if none
+     */
+    public String getError() {
+
+        return error;
+    }
+
+    /**
+     * @return number of records skipped because of a wrong CRC or of a reference to an unknown string
+     */
+    public long getCorruptRecords() {
+
+        return corruptRecords;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    /**
+     * Read all the complete records, without decoding datums.
+     *
+     * @throws IOException - if an IO exception occurs
+     */
+    void skipToEnd() throws IOException {
+
+        skipTo(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return number of strings in the dictionary read so far
+     */
+    int getDictionarySize() {
+
+        return strings.size();
+    }
+
+    /**
+     * @param id string id
+     * @return string with that id
+     */
+    String getString(final int id) {
+
+        return strings.get(id);
+    }
+
+    /**
+     * @return offset of the last dictionary record read, -1 if none
+     */
+    public long getLastDictionaryOffset() {
+
+        return lastDictionaryOffset;
+    }
+
+    /**
+     * Read the records before an offset, for their dictionary entries only.
+     *
+     * @param offset offset to stop at
+     */
+    private void skipTo(final long offset) throws IOException {
+
+        boolean read = true;
+        while (read && position < offset) {
+
+            read = readRecord(false);
+        }
+    }
+
+    /**
+     * Read the dictionary records chained from a dictionary record, down to the first one of the segment.
+     *
+     * @param offset offset of the last dictionary record
+     * @return false if the chain is broken, e.g. by a wrong offset or a corrupted record
+     */
+    private boolean readDictionaryChain(final long offset) throws IOException {
+
+        long current = offset;
+        while (current >= HEADER_SIZE) {
+
+            if (!fillBackward(current, 4)) {
+
+                return false;
+            }
+            int length = buffer.getInt((int) (current - bufferOffset));
+            if (length < 1 || length > MAX_RECORD_SIZE || !fillBackward(current, length + FRAMING_SIZE)) {
+
+                return false;
+            }
+
+            int body = (int) (current - bufferOffset) + 4;
+            ByteBuffer view = buffer.duplicate();
+            ((Buffer) view).limit(body + length).position(body);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != buffer.getInt(body + length) || buffer.get(body) != DICTIONARY) {
+
+                return false;
+            }
+
+            readDictionary(body + 1);
+            current = buffer.getLong(body + 5);
+        }
+        lastDictionaryOffset = offset;
+        return true;
+    }
+
+    private void readHeader() throws IOException {
+
+        if (!fill(0, HEADER_SIZE)) {
+
+            // empty segment, or header not completely written yet
+            position = 0;
+            return;
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+
+            throw new IOException("Not a spool segment: " + segment);
+        }
+        if (buffer.get(4) > VERSION) {
+
+            throw new IOException("Unsupported spool segment version " + buffer.get(4) + ": " + segment);
+        }
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Read the record at the current position.
+     *
+     * @param decode whether a datum record is decoded into {@link #decoded}
+     * @return true if a complete record was read, or skipped because it's corrupted
+     */
+    private boolean readRecord(final boolean decode) throws IOException {
+
+        if (position < HEADER_SIZE || !fill(position, 4)) {
+
+            return false;
+        }
+
+        int index = (int) (position - bufferOffset);
+        int length = buffer.getInt(index);
+        if (length < 1 || length > MAX_RECORD_SIZE) {
+
+            LOG.warn("Invalid record length {} at offset {} of {}; the rest of the segment is ignored.", length, position, segment);
+            return false;
+        }
+        if (!fill(position, length + FRAMING_SIZE)) {
+
+            return false;
+        }
+
+        index = (int) (position - bufferOffset);
+        int body = index + 4;
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).limit(body + length).position(body);
+        crc.reset();
+        crc.update(view);
+        if ((int) crc.getValue() != buffer.getInt(body + length)) {
+
+            LOG.warn("Invalid CRC for the record at offset {} of {}; record skipped.", position, segment);
+            corruptRecords++;
+            position += length + FRAMING_SIZE;
+            return true;
+        }
+
+        byte type = buffer.get(body);
+        if (type == DICTIONARY) {
+
+            readDictionary(body + 1);
+            lastDictionaryOffset = position;
+        } else if (type == ERROR && decode) {
+
+            pendingError = readError(body + 1);
+        } else if (type == DATUM && decode) {
+
+            decoded = readDatum(body + 1);
+            error = pendingError;
+            pendingError = null;
+            if (decoded == null) {
+
+                LOG.warn("Unknown string referenced by the record at offset {} of {}; record skipped.", position, segment);
+                corruptRecords++;
+            }
+        }
+
+        position += length + FRAMING_SIZE;
+        return true;
+    }
+
+    private void readDictionary(final int index) {
+
+        int id = buffer.getInt(index);
+        int size = buffer.getShort(index + 12);
+        byte[] bytes = new byte[size];
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(index + 14);
+        view.get(bytes);
+
+        while (strings.size() <= id) {
+
+            strings.add(null);
+        }
+        strings.set(id, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private String readError(final int index) {
+
+        byte[] bytes = new byte[buffer.getShort(index)];
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(index + 2);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MetricDatum readDatum(final int start) {
+
+        int index = start;
+        int flags = buffer.get(index++);
+        MetricDatum datum = new MetricDatum();
+        if ((flags & HAS_NAME) != 0) {
+
+            datum.setMetricName(string(buffer.getInt(index)));
+            index += 4;
+            if (datum.getMetricName() == null) {
+
+                return null;
+            }
+        }
+        if ((flags & HAS_UNIT) != 0) {
+
+            datum.setUnit(string(buffer.getInt(index)));
+            index += 4;
+            if (datum.getUnit() == null) {
+
+                return null;
+            }
+        }
+        if ((flags & HAS_TIMESTAMP) != 0) {
+
+            datum.setTimestamp(new Date(buffer.getLong(index)));
+            index += 8;
+        }
+        if ((flags & HAS_VALUE) != 0) {
+
+            datum.setValue(buffer.getDouble(index));
+            index += 8;
+        }
+        if ((flags & HAS_STATISTICS) != 0) {
+
+            datum.setStatisticValues(new StatisticSet()
+                    .withSampleCount(orNull(buffer.getDouble(index)))
+                    .withSum(orNull(buffer.getDouble(index + 8)))
+                    .withMinimum(orNull(buffer.getDouble(index + 16)))
+                    .withMaximum(orNull(buffer.getDouble(index + 24))));
+            index += 32;
+        }
+        if ((flags & HAS_RESOLUTION) != 0) {
+
+            datum.setStorageResolution(buffer.getInt(index));
+            index += 4;
+        }
+        if ((flags & HAS_DIMENSIONS) != 0) {
+
+            int count = buffer.getShort(index);
+            index += 2;
+            List<Dimension> dimensions = Lists.newArrayListWithCapacity(count);
+            for (int dimension = 0; dimension < count; dimension++) {
+
+                String name = string(buffer.getInt(index));
+                String value = string(buffer.getInt(index + 4));
+                index += 8;
+                if (name == null || value == null) {
+
+                    return null;
+                }
+                dimensions.add(new Dimension().withName(name).withValue(value));
+            }
+            datum.setDimensions(dimensions);
+        }
+        return datum;
+    }
+
+    private String string(final int id) {
+
+        return id >= 0 && id < strings.size() ? strings.get(id) : null;
+    }
+
+    /**
+     * Make sure the buffer holds a range of the segment, reading from the channel if needed.
+     *
+     * @param offset offset of the range in the segment
+     * @param size   size of the range
+     * @return false if the segment ends before the end of the range
+     */
+    private boolean fill(final long offset, final int size) throws IOException {
+
+        if (offset >= bufferOffset && offset + size <= bufferOffset + buffer.limit()) {
+
+            return true;
+        }
+
+        if (buffer.capacity() < size) {
+
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        }
+        ((Buffer) buffer).clear();
+        bufferOffset = offset;
+        while (buffer.hasRemaining()) {
+
+            if (channel.read(buffer, bufferOffset + buffer.position()) < 0) {
+
+                break;
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer.limit() >= size;
+    }
+
+    /**
+     * Make sure the buffer holds a range of the segment, reading the range at the end of the buffer if needed,
+     * so that the records before it are read too.
+     *
+     * @param offset offset of the range in the segment
+     * @param size   size of the range
+     * @return false if the segment ends before the end of the range
+     */
+    private boolean fillBackward(final long offset, final int size) throws IOException {
+
+        if (offset >= bufferOffset && offset + size <= bufferOffset + buffer.limit()) {
+
+            return true;
+        }
+
+        long start = Math.max(0, offset + size - Math.max(buffer.capacity(), size));
+        return fill(start, (int) (offset + size - start));
+    }
+
+    private static Double orNull(final double value) {
+
+        return Double.isNaN(value) ? null : value;
+    }
+}
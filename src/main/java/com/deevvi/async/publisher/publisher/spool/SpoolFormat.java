@@ -0,0 +1,106 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+/**
+ * Binary layout of spool segments.
+ * <p>
+ * A segment starts with an 8 bytes header: the magic number, the format version and 3 reserved bytes.
+ * It is followed by records, each one framed as:
+ * <pre>
+ *     int   length   number of bytes of type and payload
+ *     byte  type     {@link #DICTIONARY}, {@link #DATUM} or {@link #ERROR}
+ *     ...   payload
+ *     int   crc      CRC32 of type and payload
+ * </pre>
+ * A dictionary record assigns the next id to a string (metric name, unit, dimension name or value) and points to
+ * the previous dictionary record of the segment. Datum records reference strings by id, so each string is written
+ * once per segment. Error records are only written in quarantine segments, before the datum rejected by CW.
+ * All numbers are big endian.
+ */
+final class SpoolFormat {
+
+    /**
+     * Magic number, "CWSP".
+     */
+    static final int MAGIC = 0x43575350;
+
+    /**
+     * Current format version.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Size of the segment header.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of the framing of a record: length before, CRC after.
+     */
+    static final int FRAMING_SIZE = 8;
+
+    /**
+     * Maximum size of the type and payload of a record; larger lengths can only come from a corrupted segment.
+     */
+    static final int MAX_RECORD_SIZE = 1 << 20;
+
+    /**
+     * Record type of a dictionary entry: int id, long offset of the previous dictionary record or -1, UTF-8 string.
+     */
+    static final byte DICTIONARY = 1;
+
+    /**
+     * Record type of a datum: byte flags, then the fields present according to the flags.
+     */
+    static final byte DATUM = 2;
+
+    /**
+     * Record type of the error of the next datum: short length, UTF-8 error message.
+     */
+    static final byte ERROR = 3;
+
+    /**
+     * Maximum size of an error message, longer ones are truncated.
+     */
+    static final int MAX_ERROR_SIZE = 4096;
+
+    /**
+     * Datum flag: int id of the metric name.
+     */
+    static final int HAS_NAME = 1;
+
+    /**
+     * Datum flag: int id of the unit.
+     */
+    static final int HAS_UNIT = 1 << 1;
+
+    /**
+     * Datum flag: long timestamp in millis.
+     */
+    static final int HAS_TIMESTAMP = 1 << 2;
+
+    /**
+     * Datum flag: double value.
+     */
+    static final int HAS_VALUE = 1 << 3;
+
+    /**
+     * Datum flag: statistic set as 4 doubles (sample count, sum, minimum, maximum), NaN standing for a missing field.
+     */
+    static final int HAS_STATISTICS = 1 << 4;
+
+    /**
+     * Datum flag: int storage resolution.
+     */
+    static final int HAS_RESOLUTION = 1 << 5;
+
+    /**
+     * Datum flag: short number of dimensions, then int ids of name and value of each dimension.
+     */
+    static final int HAS_DIMENSIONS = 1 << 6;
+
+    /**
+     * Private constructor, to avoid class init.
+     */
+    private SpoolFormat() {
+    }
+}
@@ -0,0 +1,54 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signal raised when new datums may be available in a spool folder, e.g. after each write of a {@link SpoolWriter}
+ * or on a file system notification, so that the reader of the spool waits for data instead of polling.
+ * <p>
+ * The signal is a version number: a reader notes the version, reads the spool, then waits until the version changes.
+ */
+public final class SpoolSignal {
+
+    private long version;
+
+    /**
+     * Raise the signal, waking up the threads waiting for it.
+     */
+    public synchronized void signal() {
+
+        version++;
+        notifyAll();
+    }
+
+    /**
+     * @return current version of the signal
+     */
+    public synchronized long version() {
+
+        return version;
+    }
+
+    /**
+     * Wait until the signal is raised after a given version, or a timeout elapses.
+     *
+     * @param seenVersion   version noted before reading the spool
+     * @param timeoutMillis maximum time to wait in millis
+     * @return true if the signal was raised since the version
+     * @throws InterruptedException - if the thread is interrupted while waiting
+     */
+    public synchronized boolean await(final long seenVersion, final long timeoutMillis) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (version == seenVersion) {
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
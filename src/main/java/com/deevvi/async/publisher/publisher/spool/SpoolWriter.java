@@ -0,0 +1,621 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Appends datums to the spool segments of a directory, through a channel kept open on the active segment.
+ * <p>
+ * Concurrent appends are group committed: each caller queues its batch, and the caller holding the write lock
+ * encodes all the queued batches and writes them with a single write, while the other callers wait for the outcome
+ * of their own batch. The active segment is rolled over between two writes at the end of the hour, and once it
+ * reaches the maximum size or age set by {@link #setRollingPolicy(long, long)}. Segments are numbered in sequence;
+ * on start, the latest segment is resumed if it may still be written, or else repaired.
+ * Written datums are forced to the device according to a {@link SyncPolicy}, {@link SyncPolicy#NONE} by default.
+ * Each write raises the writer's {@link SpoolSignal}, to wake up the reader of the spool.
+ * A directory must be written by one writer only.
+ */
+public final class SpoolWriter implements Closeable {
+
+    /**
+     * Class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolWriter.class);
+
+    /**
+     * Folder where the segments are stored.
+     */
+    private final String directory;
+
+    private final LongSupplier currentTimeMillis;
+
+    /**
+     * Opens the channels of the segments.
+     */
+    private final SegmentFile.ChannelOpener channelOpener;
+
+    /**
+     * Signal raised after each write.
+     */
+    private final SpoolSignal signal;
+
+    /**
+     * Batches waiting to be written.
+     */
+    private final Queue<Batch> queue;
+
+    /**
+     * Lock held by the caller writing the queued batches; guards the fields below.
+     */
+    private final ReentrantLock writeLock;
+
+    /**
+     * Batches of the group commit in progress.
+     */
+    private final List<Batch> round;
+
+    /**
+     * Active segment, null until the first write and after a failed write.
+     */
+    private SegmentFile segment;
+
+    /**
+     * Time when the active segment must be rolled over.
+     */
+    private long segmentEndMillis;
+
+    /**
+     * Sequence number of the active segment, -1 until the latest segment of the directory is found.
+     */
+    private long sequence;
+
+    /**
+     * Size in bytes and age in millis at which a segment is rolled over, 0 for no limit.
+     */
+    private long maxSegmentBytes;
+    private long maxSegmentAgeMillis;
+
+    private boolean closed;
+
+    private SyncPolicy syncPolicy;
+
+    /**
+     * Background thread forcing the active segment, with the {@link SyncPolicy#PERIODIC} policy only.
+     */
+    private ScheduledExecutorService syncThread;
+
+    /**
+     * Whether the active segment has datums not forced yet.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Number of writes done, each one holding one or more batches.
+     */
+    private volatile long commits;
+
+    /**
+     * Time spent in commits, from encoding to the end of the write or force.
+     */
+    private volatile long commitNanos;
+
+    private volatile long bytesWritten;
+
+    /**
+     * Number of forces and time spent in them.
+     */
+    private final AtomicLong syncs;
+    private final AtomicLong syncNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param directory folder where the segments are stored
+     */
+    public SpoolWriter(final String directory) {
+
+        this(directory, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory         folder where the segments are stored
+     * @param currentTimeMillis source of the current time, deciding the active segment
+     */
+    @VisibleForTesting
+    SpoolWriter(final String directory, final LongSupplier currentTimeMillis) {
+
+        this(directory, currentTimeMillis, SegmentFile::openChannel);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory         folder where the segments are stored
+     * @param currentTimeMillis source of the current time, deciding the active segment
+     * @param channelOpener     opens the channels of the segments
+     */
+    @VisibleForTesting
+    SpoolWriter(final String directory, final LongSupplier currentTimeMillis, final SegmentFile.ChannelOpener channelOpener) {
+
+        Preconditions.checkNotNull(StringUtils.trimToNull(directory), "File path cannot be null or empty.");
+        Preconditions.checkNotNull(currentTimeMillis, "Time source cannot be null.");
+        Preconditions.checkNotNull(channelOpener, "Channel opener cannot be null.");
+
+        this.directory = directory;
+        this.currentTimeMillis = currentTimeMillis;
+        this.channelOpener = channelOpener;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.writeLock = new ReentrantLock();
+        this.round = Lists.newArrayList();
+        this.signal = new SpoolSignal();
+        this.syncPolicy = SyncPolicy.NONE;
+        this.sequence = -1;
+        this.syncs = new AtomicLong();
+        this.syncNanos = new AtomicLong();
+    }
+
+    /**
+     * Set when written datums are forced to the storage device.
+     *
+     * @param syncPolicy         sync policy
+     * @param syncIntervalMillis interval between two forces, used by {@link SyncPolicy#PERIODIC} policy
+     */
+    public void setSyncPolicy(final SyncPolicy syncPolicy, final long syncIntervalMillis) {
+
+        Preconditions.checkNotNull(syncPolicy, "Sync policy cannot be null.");
+        Preconditions.checkArgument(syncPolicy != SyncPolicy.PERIODIC || syncIntervalMillis > 0, "Sync interval must be positive.");
+
+        writeLock.lock();
+        try {
+
+            Preconditions.checkState(!closed, "Spool writer is closed.");
+
+            if (syncThread != null) {
+
+                syncThread.shutdown();
+                syncThread = null;
+            }
+            this.syncPolicy = syncPolicy;
+            if (syncPolicy == SyncPolicy.PERIODIC) {
+
+                syncThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+                    Thread thread = new Thread(runnable, "spool-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                syncThread.scheduleWithFixedDelay(this::syncActiveSegment, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Set when the active segment is rolled over, in addition to the end of each hour. Smaller segments are published
+     * and deleted sooner; a segment may exceed the maximum size by the datums of one write.
+     *
+     * @param maxSegmentBytes     size in bytes at which a segment is rolled over, 0 for no limit
+     * @param maxSegmentAgeMillis age in millis at which a segment is rolled over, 0 for no limit; applies to the
+     *                            segments opened after the call, a resumed segment being as old as its resumption
+     */
+    public void setRollingPolicy(final long maxSegmentBytes, final long maxSegmentAgeMillis) {
+
+        Preconditions.checkArgument(maxSegmentBytes >= 0, "Maximum segment size cannot be negative.");
+        Preconditions.checkArgument(maxSegmentAgeMillis >= 0, "Maximum segment age cannot be negative.");
+
+        writeLock.lock();
+        try {
+
+            this.maxSegmentBytes = maxSegmentBytes;
+            this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Append datums to the active segment; returns once they are written, possibly together with datums
+     * appended concurrently by other threads.
+     *
+     * @param metrics datums to write
+     * @throws IOException              - if the datums could not be written, or the writer is closed
+     * @throws IllegalArgumentException - if a datum cannot be encoded; the other datums of the call aren't written either
+     */
+    public void append(final Collection<MetricDatum> metrics) throws IOException {
+
+        Preconditions.checkNotNull(metrics, "Metrics list cannot be null.");
+
+        Batch batch = new Batch(metrics);
+        queue.add(batch);
+        writeLock.lock();
+        try {
+
+            if (!batch.done) {
+
+                // an interrupted caller would close the channel and fail the batches of the other callers
+                boolean interrupted = Thread.interrupted();
+                try {
+
+                    commit();
+                } finally {
+
+                    if (interrupted) {
+
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        } finally {
+
+            writeLock.unlock();
+        }
+
+        if (batch.invalid != null) {
+
+            throw new IllegalArgumentException("Invalid metric datum: " + batch.invalid.getMessage(), batch.invalid);
+        }
+        if (batch.failure != null) {
+
+            throw new IOException(batch.failure.getMessage(), batch.failure);
+        }
+    }
+
+    /**
+     * @return signal raised after each write
+     */
+    public SpoolSignal getSignal() {
+
+        return signal;
+    }
+
+    /**
+     * @return number of writes done, each one holding one or more batches
+     */
+    public long getCommits() {
+
+        return commits;
+    }
+
+    /**
+     * @return time in nanos spent in commits, from encoding to the end of the write, or of the force with the
+     * {@link SyncPolicy#PER_COMMIT} policy
+     */
+    public long getCommitNanos() {
+
+        return commitNanos;
+    }
+
+    /**
+     * @return number of bytes written to the segments
+     */
+    public long getBytesWritten() {
+
+        return bytesWritten;
+    }
+
+    /**
+     * @return number of times the written datums were forced to the storage device
+     */
+    public long getSyncs() {
+
+        return syncs.get();
+    }
+
+    /**
+     * @return time in nanos spent forcing the written datums to the storage device
+     */
+    public long getSyncNanos() {
+
+        return syncNanos.get();
+    }
+
+    /**
+     * Close the active segment, forcing it unless the policy is {@link SyncPolicy#NONE}; later appends fail.
+     */
+    @Override
+    public void close() {
+
+        writeLock.lock();
+        try {
+
+            closed = true;
+            if (syncThread != null) {
+
+                syncThread.shutdown();
+                syncThread = null;
+            }
+            closeSegment();
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write all the queued batches. Must be called while holding the write lock.
+     */
+    private void commit() {
+
+        long start = System.nanoTime();
+        Batch batch;
+        while ((batch = queue.poll()) != null) {
+
+            round.add(batch);
+        }
+
+        try {
+
+            if (closed) {
+
+                throw new IOException("Spool writer is closed.");
+            }
+
+            openSegment();
+            encodeRound();
+            int size = segment.writePending();
+            dirty = true;
+            if (syncPolicy == SyncPolicy.PER_COMMIT) {
+
+                sync(segment.getChannel());
+            }
+            segment.getEncoder().commit();
+            bytesWritten += size;
+            commitNanos += System.nanoTime() - start;
+            commits++;
+            completeRound(null);
+            signal.signal();
+        } catch (IOException | RuntimeException e) {
+
+            // the segment may end with a partial record: cut it before rolling over, or it's never completely published
+            abortSegment();
+            completeRound(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    /**
+     * Encode the batches of the round; a batch with an invalid datum is failed and removed from the round.
+     */
+    private void encodeRound() {
+
+        SegmentEncoder encoder = segment.getEncoder();
+        int index = 0;
+        while (index < round.size()) {
+
+            Batch batch = round.get(index);
+            try {
+
+                for (MetricDatum datum : batch.metrics) {
+
+                    encoder.encode(datum);
+                }
+                index++;
+            } catch (RuntimeException e) {
+
+                // records of the batch are mixed with the previous ones: encode the previous ones again
+                encoder.discard();
+                round.remove(index);
+                batch.invalid = e;
+                batch.complete(null);
+                index = 0;
+            }
+        }
+    }
+
+    private void completeRound(final IOException failure) {
+
+        round.forEach(batch -> batch.complete(failure));
+        round.clear();
+    }
+
+    /**
+     * Make sure the channel is open on a segment which doesn't have to be rolled over.
+     */
+    private void openSegment() throws IOException {
+
+        long now = currentTimeMillis.getAsLong();
+        if (segment != null && now < segmentEndMillis && (maxSegmentBytes == 0 || segment.getEncoder().position() < maxSegmentBytes)) {
+
+            return;
+        }
+
+        closeSegment();
+        Path path = sequence < 0 ? recoverLatestSegment(now) : null;
+        if (path == null) {
+
+            sequence++;
+            path = segmentPath(now, sequence);
+        }
+        segment = SegmentFile.open(path, channelOpener);
+        segmentEndMillis = Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.HOURS).plusHours(1).toInstant().toEpochMilli();
+        if (maxSegmentAgeMillis > 0) {
+
+            segmentEndMillis = Math.min(segmentEndMillis, now + maxSegmentAgeMillis);
+        }
+    }
+
+    /**
+     * Find the latest segment of the directory and continue its sequence.
+     *
+     * @return the latest segment if it may still be written, i.e. it's from the current hour and not full, null otherwise
+     */
+    private Path recoverLatestSegment(final long now) {
+
+        sequence = 0;
+        File[] segments = new File(directory).listFiles(FileUtils::isSpoolFile);
+        if (segments == null || segments.length == 0) {
+
+            return null;
+        }
+
+        File latest = Collections.max(Arrays.asList(segments));
+        sequence = FileUtils.getSpoolFileSequence(latest);
+        if (latest.getName().equals(segmentPath(now, sequence).getFileName().toString())
+                && (maxSegmentBytes == 0 || latest.length() < maxSegmentBytes)) {
+
+            return latest.toPath();
+        }
+
+        // sealed: truncate an incomplete record left by a crash, so that the segment can be completely published
+        try {
+
+            if (latest.length() > 0) {
+
+                SegmentEncoder.resume(latest.toPath());
+            }
+        } catch (IOException | RuntimeException e) {
+
+            LOG.warn("Exception on repairing spool segment {}:", latest, e);
+        }
+        return null;
+    }
+
+    private Path segmentPath(final long timeMillis, final long segmentSequence) {
+
+        return Paths.get(directory + FileUtils.generateSpoolFileSuffix(timeMillis, segmentSequence));
+    }
+
+    /**
+     * Force the active segment if it has datums not forced yet, without holding the write lock during the force.
+     */
+    private void syncActiveSegment() {
+
+        FileChannel active;
+        writeLock.lock();
+        try {
+
+            active = segment != null ? segment.getChannel() : null;
+        } finally {
+
+            writeLock.unlock();
+        }
+
+        if (active != null && dirty) {
+
+            try {
+
+                sync(active);
+            } catch (ClosedChannelException e) {
+
+                // segment rolled over or writer closed: the segment was forced on close
+            } catch (IOException e) {
+
+                LOG.warn("Exception on forcing spool segment:", e);
+            }
+        }
+    }
+
+    private void sync(final FileChannel segmentChannel) throws IOException {
+
+        dirty = false;
+        long start = System.nanoTime();
+        segmentChannel.force(false);
+        syncNanos.addAndGet(System.nanoTime() - start);
+        syncs.incrementAndGet();
+    }
+
+    /**
+     * Close the active segment after a failed write, truncating the partial record it may end with.
+     */
+    private void abortSegment() {
+
+        SegmentFile aborted = segment;
+        segment = null;
+        if (aborted == null) {
+
+            return;
+        }
+
+        try {
+
+            if (syncPolicy != SyncPolicy.NONE && dirty) {
+
+                sync(aborted.getChannel());
+            }
+        } catch (IOException e) {
+
+            LOG.warn("Exception on forcing spool segment:", e);
+        }
+        try {
+
+            aborted.abort();
+        } catch (IOException e) {
+
+            LOG.warn("Exception on repairing spool segment {}:", aborted.getPath(), e);
+        }
+    }
+
+    private void closeSegment() {
+
+        if (segment != null) {
+
+            try (SegmentFile closing = segment) {
+
+                if (syncPolicy != SyncPolicy.NONE && dirty) {
+
+                    sync(closing.getChannel());
+                }
+            } catch (IOException e) {
+
+                LOG.warn("Exception on closing spool segment:", e);
+            }
+        }
+        segment = null;
+    }
+
+    /**
+     * Datums appended by one call, and the outcome of their write.
+     */
+    private static final class Batch {
+
+        private final Collection<MetricDatum> metrics;
+        private boolean done;
+        private IOException failure;
+        private RuntimeException invalid;
+
+        Batch(final Collection<MetricDatum> metrics) {
+
+            this.metrics = metrics;
+        }
+
+        void complete(final IOException failure) {
+
+            this.failure = failure;
+            this.done = true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+/**
+ * When the spool forces written datums to the storage device, i.e. what survives an OS crash or a power loss.
+ */
+public enum SyncPolicy {
+
+    /**
+     * Never force: the OS writes the data back when it sees fit. Datums survive a crash of the JVM only.
+     */
+    NONE,
+
+    /**
+     * Force the active segment at a fixed interval, from a background thread: at most an interval of datums is lost.
+     */
+    PERIODIC,
+
+    /**
+     * Force after each group commit, before the appending threads return: no acknowledged datum is lost.
+     */
+    PER_COMMIT
+}
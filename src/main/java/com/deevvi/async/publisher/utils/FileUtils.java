@@ -4,8 +4,10 @@ import com.google.common.base.Preconditions;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -14,11 +16,18 @@ import java.util.regex.Pattern;
 public final class FileUtils {
 
     private static final String TIME_ROLLING_LOG_FILE_SUFFIX = "/metrics-logs-%s.log";
+    /**
+     * Spool segments are named by hour and sequence number, so that the names sort in the order the segments are created.
+     */
+    private static final String SPOOL_FILE_SUFFIX = "/metrics-spool-%s_%010d.seg";
+    private static final String QUARANTINE_FILE_SUFFIX = "/metrics-quarantine-%s.seg";
     private static final String PROPERTIES_FILE_EXTENSION = ".properties";
     private static final String EXTENSION_SEPARATOR = ".";
 
-    private static final SimpleDateFormat TEMPLATE = new SimpleDateFormat("yyyy-MM-dd-HH");
+    private static final DateTimeFormatter TEMPLATE = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH").withZone(ZoneId.systemDefault());
     private static final Pattern TIME_ROLLING_LOG_FILE_PATTERN = Pattern.compile("metrics-logs-\\d{4}-\\d{1,2}-\\d{1,2}-\\d{1,2}.log\\z");
+    private static final Pattern SPOOL_FILE_PATTERN = Pattern.compile("metrics-spool-\\d{4}-\\d{1,2}-\\d{1,2}-\\d{1,2}_(\\d{1,18}).seg\\z");
+    private static final Pattern QUARANTINE_FILE_PATTERN = Pattern.compile("metrics-quarantine-\\d{4}-\\d{1,2}-\\d{1,2}-\\d{1,2}.seg\\z");
 
     /**
      * Private constructor, to avoid class init.
@@ -33,7 +42,46 @@ public final class FileUtils {
      */
     public static String generateLogFileTimeRollingSuffix() {
 
-        return String.format(TIME_ROLLING_LOG_FILE_SUFFIX, TEMPLATE.format(new Date()));
+        return String.format(TIME_ROLLING_LOG_FILE_SUFFIX, TEMPLATE.format(Instant.now()));
+    }
+
+    /**
+     * Build the name for a spool segment.
+     *
+     * @param timeMillis creation time of the segment in millis
+     * @param sequence   sequence number of the segment
+     * @return file name
+     */
+    public static String generateSpoolFileSuffix(long timeMillis, long sequence) {
+
+        Preconditions.checkArgument(sequence >= 0, "Sequence number cannot be negative.");
+
+        return String.format(SPOOL_FILE_SUFFIX, TEMPLATE.format(Instant.ofEpochMilli(timeMillis)), sequence);
+    }
+
+    /**
+     * Get the sequence number of a spool segment.
+     *
+     * @param file spool segment
+     * @return sequence number
+     */
+    public static long getSpoolFileSequence(File file) {
+
+        Matcher matcher = SPOOL_FILE_PATTERN.matcher(file.getName());
+        Preconditions.checkArgument(matcher.find(), "Not a spool segment: %s", file);
+
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Build the name for the hourly quarantine segment, holding the datums rejected by CW.
+     *
+     * @param timeMillis time of the rejection in millis
+     * @return file name
+     */
+    public static String generateQuarantineFileSuffix(long timeMillis) {
+
+        return String.format(QUARANTINE_FILE_SUFFIX, TEMPLATE.format(Instant.ofEpochMilli(timeMillis)));
     }
 
     /**
@@ -61,6 +109,28 @@ public final class FileUtils {
         return TIME_ROLLING_LOG_FILE_PATTERN.matcher(file.getName()).find();
     }
 
+    /**
+     * Validate if a file is a binary spool segment.
+     *
+     * @param file input file
+     * @return true if is a spool segment, false otherwise
+     */
+    public static boolean isSpoolFile(File file) {
+
+        return SPOOL_FILE_PATTERN.matcher(file.getName()).find();
+    }
+
+    /**
+     * Validate if a file is a quarantine segment.
+     *
+     * @param file input file
+     * @return true if is a quarantine segment, false otherwise
+     */
+    public static boolean isQuarantineFile(File file) {
+
+        return QUARANTINE_FILE_PATTERN.matcher(file.getName()).find();
+    }
+
     /**
      * Validate path where log files are going to be stored.
      * 
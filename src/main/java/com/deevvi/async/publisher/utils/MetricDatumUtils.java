@@ -0,0 +1,150 @@
+package com.deevvi.async.publisher.utils;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * Helper class for estimating the size of metric datum instances, as sent to CW.
+ * <p>
+ * The SDK sends a datum as URL encoded query parameters; estimates are an upper bound of their length.
+ */
+public final class MetricDatumUtils {
+
+    /**
+     * Parameter prefix sent for each datum field, followed by the datum index.
+     */
+    private static final String MEMBER_PREFIX = "&MetricData.member.";
+
+    /**
+     * Upper bound for the length of a double rendered by the SDK, e.g. -1.2345678901234567E-300.
+     */
+    private static final int MAX_DOUBLE_LENGTH = 24;
+
+    /**
+     * Length of an URL encoded ISO 8601 timestamp: 2019-07-30T07%3A00%3A00.000Z.
+     */
+    private static final int TIMESTAMP_LENGTH = 28;
+
+    /**
+     * Upper bound for the length of an integer value.
+     */
+    private static final int MAX_INT_LENGTH = 11;
+
+    /**
+     * Private constructor, to avoid class init.
+     */
+    private MetricDatumUtils() {
+    }
+
+    /**
+     * Estimate the encoded size of a datum, as the first one of a request.
+     *
+     * @param datum datum
+     * @return upper bound of the number of bytes used by the datum in a request
+     */
+    public static int estimateEncodedSize(final MetricDatum datum) {
+
+        return estimateEncodedSize(datum, 1);
+    }
+
+    /**
+     * Estimate the encoded size of a datum.
+     *
+     * @param datum datum
+     * @param index 1-based position of the datum in the request
+     * @return upper bound of the number of bytes used by the datum in the request
+     */
+    public static int estimateEncodedSize(final MetricDatum datum, final int index) {
+
+        Preconditions.checkNotNull(datum, "Argument cannot be null.");
+
+        int prefix = MEMBER_PREFIX.length() + digits(index) + 1;
+        int size = 0;
+
+        if (datum.getMetricName() != null) {
+
+            size += prefix + "MetricName=".length() + encodedLength(datum.getMetricName());
+        }
+        if (datum.getUnit() != null) {
+
+            size += prefix + "Unit=".length() + encodedLength(datum.getUnit());
+        }
+        if (datum.getTimestamp() != null) {
+
+            size += prefix + "Timestamp=".length() + TIMESTAMP_LENGTH;
+        }
+        if (datum.getValue() != null) {
+
+            size += prefix + "Value=".length() + MAX_DOUBLE_LENGTH;
+        }
+        if (datum.getStorageResolution() != null) {
+
+            size += prefix + "StorageResolution=".length() + MAX_INT_LENGTH;
+        }
+
+        StatisticSet statistics = datum.getStatisticValues();
+        if (statistics != null) {
+
+            size += 4 * (prefix + "StatisticValues.".length() + MAX_DOUBLE_LENGTH + 1)
+                    + "SampleCount".length() + "Sum".length() + "Minimum".length() + "Maximum".length();
+        }
+
+        List<Dimension> dimensions = datum.getDimensions();
+        for (int dimension = 0; dimension < dimensions.size(); dimension++) {
+
+            int dimensionPrefix = prefix + "Dimensions.member.".length() + digits(dimension + 1);
+            size += dimensionPrefix + ".Name=".length() + encodedLength(dimensions.get(dimension).getName())
+                    + dimensionPrefix + ".Value=".length() + encodedLength(dimensions.get(dimension).getValue());
+        }
+        return size;
+    }
+
+    /**
+     * Length of a string once URL encoded as UTF-8.
+     *
+     * @param value string to encode
+     * @return number of encoded characters, 0 for null
+     */
+    public static int encodedLength(final String value) {
+
+        if (value == null) {
+
+            return 0;
+        }
+
+        int length = 0;
+        for (int index = 0; index < value.length(); index++) {
+
+            char c = value.charAt(index);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+
+                length += 1;
+            } else if (c < 0x80) {
+
+                length += 3;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+
+                length += 6;
+            } else {
+
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    private static int digits(final int value) {
+
+        int digits = 1;
+        for (int remaining = value; remaining >= 10; remaining /= 10) {
+
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -1,15 +1,23 @@
 package com.deevvi.async.publisher.metric;
 
 
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.google.common.collect.Lists;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Milliseconds;
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.times;
 
@@ -72,4 +80,30 @@ public class AWSCloudWatchMetricTest {
         Mockito.verify(publisher, times(1)).publish(anyList());
         Mockito.verifyNoMoreInteractions(publisher);
     }
+
+    @Test
+    public void testClock() throws IOException {
+
+        //setup
+        MetricsPublisher metricsPublisher = Mockito.mock(MetricsPublisher.class);
+        List<MetricDatum> published = Lists.newArrayList();
+        Mockito.doAnswer(invocation -> published.addAll(invocation.<Collection<MetricDatum>>getArgument(0)))
+                .when(metricsPublisher).publish(anyCollection());
+        MetricClock clock = Mockito.mock(MetricClock.class);
+        Mockito.when(clock.monotonicNanos()).thenReturn(1_000_000L, 3_500_000L);
+        Mockito.when(clock.wallClockMillis()).thenReturn(42L);
+        AWSCloudWatchMetric clockedMetric = new AWSCloudWatchMetric(metricsPublisher, "test");
+        clockedMetric.setClock(clock);
+
+        //call
+        clockedMetric.open();
+        clockedMetric.close();
+
+        //verify
+        assertThat(published).containsExactly(new MetricDatum()
+                .withMetricName("test.Duration")
+                .withValue(2.5)
+                .withUnit(Milliseconds)
+                .withTimestamp(new Date(42L)));
+    }
 }
@@ -0,0 +1,53 @@
+package com.deevvi.async.publisher.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link CachedMetricClock} class.
+ */
+public class CachedMetricClockTest {
+
+    @Test
+    public void testInvalidTick() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CachedMetricClock(0));
+    }
+
+    @Test
+    public void testWallClockIsUpdated() throws Exception {
+
+        //setup
+        CachedMetricClock clock = new CachedMetricClock(5);
+        long first = clock.wallClockMillis();
+
+        //call
+        Thread.sleep(100);
+        long second = clock.wallClockMillis();
+
+        //verify
+        assertThat(second - first).isAtLeast(50L);
+        assertThat(Math.abs(System.currentTimeMillis() - second)).isAtMost(50L);
+        clock.closeClock();
+    }
+
+    @Test
+    public void testWallClockIsFrozenAfterClose() throws Exception {
+
+        //setup
+        CachedMetricClock clock = new CachedMetricClock(5);
+        clock.closeClock();
+        Thread.sleep(20);
+
+        //call
+        long first = clock.wallClockMillis();
+        Thread.sleep(50);
+        long second = clock.wallClockMillis();
+
+        //verify
+        assertThat(second).isEqualTo(first);
+    }
+}
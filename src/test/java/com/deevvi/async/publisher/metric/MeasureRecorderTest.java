@@ -0,0 +1,94 @@
+package com.deevvi.async.publisher.metric;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Milliseconds;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+/**
+ * Tests for {@link MeasureRecorder} class.
+ */
+public class MeasureRecorderTest {
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new MeasureRecorder(null, 16));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MeasureRecorder(Mockito.mock(MetricsPublisher.class), 0));
+    }
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+
+        //setup
+        MeasureRecorder recorder = new MeasureRecorder(Mockito.mock(MetricsPublisher.class), 1000);
+
+        //verify
+        assertThat(recorder.getCapacity()).isEqualTo(1024);
+        recorder.closeRecorder();
+    }
+
+    @Test
+    public void testRecordedMeasuresArePublished() throws Exception {
+
+        //setup
+        MetricsPublisher publisher = Mockito.mock(MetricsPublisher.class);
+        List<MetricDatum> published = Lists.newCopyOnWriteArrayList();
+        Mockito.doAnswer(invocation -> published.addAll(invocation.<Collection<MetricDatum>>getArgument(0)))
+                .when(publisher).publish(anyCollection());
+        MeasureRecorder recorder = new MeasureRecorder(publisher, 16);
+
+        //call
+        boolean recorded = recorder.record(new MetricNames("Get"), new String[]{"Success", "Users"}, new int[]{1, 0}, new double[]{3.0, 1.0},
+                new long[]{1000L, 2000L}, 2, 12.0, 3000L);
+        recorder.closeRecorder();
+        waitUntil(() -> published.size() == 3);
+
+        //verify
+        assertThat(recorded).isTrue();
+        assertThat(published).containsExactly(
+                new MetricDatum().withMetricName("Get.Users").withValue(3.0).withUnit(Count).withTimestamp(new Date(1000L)),
+                new MetricDatum().withMetricName("Get.Success").withValue(1.0).withUnit(Count).withTimestamp(new Date(2000L)),
+                new MetricDatum().withMetricName("Get.Duration").withValue(12.0).withUnit(Milliseconds).withTimestamp(new Date(3000L)))
+                .inOrder();
+    }
+
+    @Test
+    public void testFullRingDropsAllMeasuresOfAMetric() throws Exception {
+
+        //setup
+        MetricsPublisher publisher = Mockito.mock(MetricsPublisher.class);
+        MeasureRecorder recorder = new MeasureRecorder(publisher, 2);
+
+        //call
+        boolean recorded = recorder.record(new MetricNames("Get"), new String[]{"Success"}, new int[]{0, 0}, new double[]{1.0, 1.0},
+                new long[]{1000L, 1000L}, 2, 12.0, 3000L);
+
+        //verify
+        assertThat(recorded).isFalse();
+        assertThat(recorder.getDroppedMeasures()).isEqualTo(3);
+        recorder.closeRecorder();
+        Mockito.verifyNoInteractions(publisher);
+    }
+
+    private static void waitUntil(final BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.deevvi.async.publisher.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link MetricNames} class.
+ */
+public class MetricNamesTest {
+
+    @Test
+    public void testEmptyMetricName() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new MetricNames(" "));
+    }
+
+    @Test
+    public void testNames() {
+
+        //setup
+        MetricNames names = new MetricNames("GetUser");
+
+        //call & verify
+        assertThat(names.getMetricName()).isEqualTo("GetUser");
+        assertThat(names.getDurationName()).isEqualTo("GetUser.Duration");
+        assertThat(names.getMeasureName("Success")).isEqualTo("GetUser.Success");
+    }
+
+    @Test
+    public void testMeasureNamesAreCached() {
+
+        //setup
+        MetricNames names = new MetricNames("GetUser");
+
+        //call
+        String first = names.getMeasureName("Success");
+        String second = names.getMeasureName("Success");
+
+        //verify
+        assertThat(second).isSameInstanceAs(first);
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+
+        //setup
+        MetricNames names = new MetricNames("GetUser");
+        for (int index = 0; index < 1000; index++) {
+            names.getMeasureName("measure" + index);
+        }
+
+        //call
+        String first = names.getMeasureName("measure999");
+        String second = names.getMeasureName("measure999");
+
+        //verify
+        assertThat(second).isEqualTo(first);
+        assertThat(second).isNotSameInstanceAs(first);
+    }
+}
@@ -0,0 +1,121 @@
+package com.deevvi.async.publisher.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link MetricPool} class.
+ */
+public class MetricPoolTest {
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new MetricPool(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MetricPool(name -> new NoOpMetric(), 0));
+        Assertions.assertThrows(NullPointerException.class, () -> new MetricPool(name -> new NoOpMetric()).borrow(" "));
+    }
+
+    @Test
+    public void testClosedMetricIsReused() {
+
+        //setup
+        AtomicInteger created = new AtomicInteger();
+        MetricPool pool = new MetricPool(name -> {
+            created.incrementAndGet();
+            return new NoOpMetric();
+        });
+
+        //call
+        Metric first = pool.borrow("test");
+        first.open();
+        first.close();
+        Metric second = pool.borrow("test");
+        Metric third = pool.borrow("test");
+        Metric other = pool.borrow("other");
+
+        //verify
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(third).isNotSameInstanceAs(first);
+        assertThat(other).isNotSameInstanceAs(first);
+        assertThat(created.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testBorrowedMetricHasNoMeasures() {
+
+        //setup
+        Metric delegate = Mockito.mock(Metric.class);
+        MetricPool pool = new MetricPool(name -> delegate);
+
+        //call
+        pool.borrow("test").close();
+        pool.borrow("test");
+
+        //verify
+        Mockito.verify(delegate, Mockito.times(2)).resetMeasures();
+        Mockito.verify(delegate).close();
+    }
+
+    @Test
+    public void testUseAfterClose() {
+
+        //setup
+        MetricPool pool = new MetricPool(name -> new NoOpMetric());
+        Metric metric = pool.borrow("test");
+        metric.close();
+
+        //call
+        Assertions.assertThrows(IllegalStateException.class, () -> metric.addMeasure("test", 1.0));
+        Assertions.assertThrows(IllegalStateException.class, metric::close);
+    }
+
+    @Test
+    public void testPoolsAreConfinedToThreads() throws Exception {
+
+        //setup
+        MetricPool pool = new MetricPool(name -> new NoOpMetric());
+        Metric metric = pool.borrow("test");
+        metric.close();
+        ExecutorService service = Executors.newSingleThreadExecutor();
+
+        //call
+        Metric borrowedElsewhere = service.submit(() -> pool.borrow("test")).get(1, TimeUnit.SECONDS);
+        borrowedElsewhere.close();
+        Metric borrowedAgain = service.submit(() -> pool.borrow("test")).get(1, TimeUnit.SECONDS);
+
+        //verify
+        assertThat(borrowedElsewhere).isNotSameInstanceAs(metric);
+        assertThat(borrowedAgain).isNotSameInstanceAs(borrowedElsewhere);
+        service.shutdown();
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+
+        //setup
+        MetricPool pool = new MetricPool(name -> new NoOpMetric());
+        pool.borrow("leaked").open();
+        pool.borrow("closed").close();
+
+        //call
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getLeakedMetrics() == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            pool.borrow("closed").close();
+        }
+
+        //verify
+        assertThat(pool.getLeakedMetrics()).isEqualTo(1);
+    }
+}
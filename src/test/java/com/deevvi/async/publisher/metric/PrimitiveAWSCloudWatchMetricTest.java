@@ -0,0 +1,170 @@
+package com.deevvi.async.publisher.metric;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+/**
+ * Tests for {@link PrimitiveAWSCloudWatchMetric} class.
+ */
+public class PrimitiveAWSCloudWatchMetricTest {
+
+    private MetricsPublisher publisher;
+    private List<MetricDatum> published;
+    private MeasureRecorder recorder;
+
+    @BeforeEach
+    public void init() throws Exception {
+
+        publisher = Mockito.mock(MetricsPublisher.class);
+        published = Lists.newCopyOnWriteArrayList();
+        Mockito.doAnswer(invocation -> published.addAll(invocation.<Collection<MetricDatum>>getArgument(0)))
+                .when(publisher).publish(anyCollection());
+        recorder = new MeasureRecorder(publisher, 1 << 16);
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        recorder.closeRecorder();
+    }
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        assertThrows(NullPointerException.class, () -> new PrimitiveAWSCloudWatchMetric(null, "test"));
+        assertThrows(NullPointerException.class, () -> new PrimitiveAWSCloudWatchMetric(recorder, "  "));
+    }
+
+    @Test
+    public void testAddMeasureNull() {
+
+        //setup
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+        metric.open();
+
+        //call
+        assertThrows(NullPointerException.class, () -> metric.addMeasure("   ", -1));
+    }
+
+    @Test
+    public void testAddMeasureWithoutOpen() {
+
+        //setup
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+
+        //call
+        assertThrows(IllegalArgumentException.class, () -> metric.addMeasure("anymetric", -1));
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+
+        //setup
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+
+        //call
+        metric.open();
+        for (int index = 0; index < 20; index++) {
+            metric.addMeasure("measure" + index % 3, index);
+        }
+        metric.close();
+        waitUntil(21);
+
+        //verify
+        assertThat(published.get(0).getMetricName()).isEqualTo("test.measure0");
+        assertThat(published.get(19).getMetricName()).isEqualTo("test.measure1");
+        assertThat(published.get(19).getValue()).isEqualTo(19.0);
+        assertThat(published.get(20).getMetricName()).isEqualTo("test.Duration");
+    }
+
+    @Test
+    public void testClock() throws Exception {
+
+        //setup
+        MetricClock clock = Mockito.mock(MetricClock.class);
+        Mockito.when(clock.monotonicNanos()).thenReturn(1_000_000L, 1_250_000L);
+        Mockito.when(clock.wallClockMillis()).thenReturn(42L);
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+        metric.setClock(clock);
+
+        //call
+        metric.open();
+        metric.close();
+        waitUntil(1);
+
+        //verify
+        assertThat(published.get(0).getValue()).isEqualTo(0.25);
+        assertThat(published.get(0).getTimestamp().getTime()).isEqualTo(42L);
+    }
+
+    @Test
+    public void testResetMeasures() throws Exception {
+
+        //setup
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+
+        //call
+        metric.open();
+        metric.addMeasure("request", 1.0);
+        metric.resetMeasures();
+        metric.close();
+        waitUntil(1);
+
+        //verify
+        assertThat(published).hasSize(1);
+        assertThat(published.get(0).getMetricName()).isEqualTo("test.Duration");
+    }
+
+    @Test
+    public void testSteadyStateDoesNotAllocate() throws Exception {
+
+        //setup
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        PrimitiveAWSCloudWatchMetric metric = new PrimitiveAWSCloudWatchMetric(recorder, "test");
+        for (int index = 0; index < 20_000; index++) {
+            useMetric(metric);
+        }
+
+        //call
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int index = 0; index < 1000; index++) {
+            useMetric(metric);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        //verify
+        assertThat(allocated).isLessThan(1000L);
+    }
+
+    private static void useMetric(final Metric metric) {
+
+        metric.open();
+        metric.addMeasure("request", 1.0);
+        metric.addMeasure("success", 1.0);
+        metric.addMeasure("failure", 0);
+        metric.close();
+    }
+
+    private void waitUntil(final int size) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (published.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.deevvi.async.publisher.metric;
+
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SystemMetricClock} class.
+ */
+public class SystemMetricClockTest {
+
+    @Test
+    public void testClock() throws Exception {
+
+        //setup
+        long start = System.currentTimeMillis();
+
+        //call
+        long firstNanos = SystemMetricClock.INSTANCE.monotonicNanos();
+        Thread.sleep(5);
+        long secondNanos = SystemMetricClock.INSTANCE.monotonicNanos();
+        long millis = SystemMetricClock.INSTANCE.wallClockMillis();
+
+        //verify
+        assertThat(secondNanos - firstNanos).isAtLeast(5_000_000L);
+        assertThat(millis).isAtLeast(start);
+    }
+}
@@ -1,15 +1,24 @@
 package com.deevvi.async.publisher.metric.factory;
 
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.deevvi.async.publisher.metric.AWSCloudWatchMetric;
+import com.deevvi.async.publisher.metric.MeasureRecorder;
 import com.deevvi.async.publisher.metric.Metric;
+import com.deevvi.async.publisher.metric.PrimitiveAWSCloudWatchMetric;
 import com.deevvi.async.publisher.publisher.MetricsPublisher;
+import com.google.common.collect.Lists;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
 
 
 /**
@@ -32,7 +41,8 @@ public class AWSCloudWatchMetricsFactoryTest {
     public void testWithNullPublisher() {
 
         //call
-        Assertions.assertThrows(NullPointerException.class, () -> new AWSCloudWatchMetricsFactory(null));
+        Assertions.assertThrows(NullPointerException.class, () -> new AWSCloudWatchMetricsFactory((MetricsPublisher) null));
+        Assertions.assertThrows(NullPointerException.class, () -> new AWSCloudWatchMetricsFactory((MeasureRecorder) null));
     }
 
     @Test
@@ -52,4 +62,64 @@ public class AWSCloudWatchMetricsFactoryTest {
         assertThat(metric).isNotNull();
         assertThat(metric).isInstanceOf(AWSCloudWatchMetric.class);
     }
+
+    @Test
+    public void testMetricsWithSameNameShareDatumNames() throws IOException {
+
+        //setup
+        MetricsPublisher metricsPublisher = Mockito.mock(MetricsPublisher.class);
+        List<String> names = Lists.newArrayList();
+        Mockito.doAnswer(invocation -> {
+            invocation.<Collection<MetricDatum>>getArgument(0).forEach(datum -> names.add(datum.getMetricName()));
+            return null;
+        }).when(metricsPublisher).publish(anyCollection());
+        AWSCloudWatchMetricsFactory metricsFactory = new AWSCloudWatchMetricsFactory(metricsPublisher);
+
+        //call
+        for (int index = 0; index < 2; index++) {
+            Metric metric = metricsFactory.newMetric("test-metric");
+            metric.open();
+            metric.addMeasure("success", 1.0);
+            metric.close();
+        }
+
+        //verify
+        assertThat(names).containsExactly("test-metric.success", "test-metric.Duration", "test-metric.success", "test-metric.Duration").inOrder();
+        assertThat(names.get(2)).isSameInstanceAs(names.get(0));
+        assertThat(names.get(3)).isSameInstanceAs(names.get(1));
+    }
+
+    @Test
+    public void testBorrowMetric() throws IOException {
+
+        //setup
+        MetricsPublisher metricsPublisher = Mockito.mock(MetricsPublisher.class);
+        AWSCloudWatchMetricsFactory metricsFactory = new AWSCloudWatchMetricsFactory(metricsPublisher);
+
+        //call
+        Metric first = metricsFactory.borrowMetric("test-metric");
+        first.open();
+        first.addMeasure("success", 1.0);
+        first.close();
+        Metric second = metricsFactory.borrowMetric("test-metric");
+
+        //verify
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(metricsFactory.getLeakedMetrics()).isEqualTo(0);
+        Mockito.verify(metricsPublisher).publish(anyCollection());
+    }
+
+    @Test
+    public void testPrimitiveMetric() {
+
+        //setup
+        MeasureRecorder recorder = new MeasureRecorder(publisher, 16);
+
+        //call
+        Metric metric = new AWSCloudWatchMetricsFactory(recorder).newMetric("test-metric");
+
+        //verify
+        assertThat(metric).isInstanceOf(PrimitiveAWSCloudWatchMetric.class);
+        recorder.closeRecorder();
+    }
 }
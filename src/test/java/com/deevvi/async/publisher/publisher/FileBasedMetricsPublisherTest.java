@@ -1,8 +1,11 @@
 package com.deevvi.async.publisher.publisher;
 
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Dimension;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.publisher.spool.SegmentReader;
 import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,8 +16,9 @@ import org.mockito.Mockito;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import static com.deevvi.async.publisher.utils.FileUtils.generateLogFileTimeRollingSuffix;
+import static com.deevvi.async.publisher.utils.FileUtils.generateSpoolFileSuffix;
 import static com.google.common.truth.Truth.assertThat;
 
 /**
@@ -35,6 +39,12 @@ public class FileBasedMetricsPublisherTest {
         publisher = new FileBasedMetricsPublisher(cloudWatch, tmpDirPath, "test", 100);
     }
 
+    @AfterEach
+    public void tearDown() {
+
+        publisher.closePublisher();
+    }
+
     @Test
     public void testNullCWClient() {
 
@@ -92,7 +102,7 @@ public class FileBasedMetricsPublisherTest {
     public void testMetricsArePublished() throws IOException {
 
         //setup
-        String file = tmpDirPath + generateLogFileTimeRollingSuffix();
+        String file = tmpDirPath + generateSpoolFileSuffix(System.currentTimeMillis(), 1);
 
         //call
         publisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m1"),
@@ -101,7 +111,49 @@ public class FileBasedMetricsPublisherTest {
         //verify
         assertThat(new File(tmpDirPath).exists()).isTrue();
         assertThat(new File(file).length()).isGreaterThan(0);
-        Mockito.verifyNoMoreInteractions(cloudWatch);
+        // the file is tailed: metrics are sent without waiting for the run interval
+        Mockito.verify(cloudWatch, Mockito.timeout(5000)).putMetricData(Mockito.any());
     }
 
+    @Test
+    public void testMetricsAreReadBack() throws IOException {
+
+        //setup
+        MetricDatum m1 = new MetricDatum().withMetricName("m1").withValue(1.0).withDimensions(new Dimension().withName("Host").withValue("h1"));
+        MetricDatum m2 = new MetricDatum().withMetricName("m2").withValue(2.0);
+        MetricDatum m3 = new MetricDatum().withMetricName("m1").withValue(3.0).withDimensions(new Dimension().withName("Host").withValue("h1"));
+
+        //call
+        publisher.publish(ImmutableList.of(m1, m2));
+        publisher.publish(ImmutableList.of(m3));
+
+        //verify
+        try (SegmentReader reader = new SegmentReader(Paths.get(tmpDirPath + generateSpoolFileSuffix(System.currentTimeMillis(), 1)), 0)) {
+
+            assertThat(reader.next()).isEqualTo(m1);
+            assertThat(reader.next()).isEqualTo(m2);
+            assertThat(reader.next()).isEqualTo(m3);
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testMetricsAreWrittenByWriterThread() throws IOException {
+
+        //setup
+        publisher.setDurabilityWindowMillis(60_000);
+        MetricDatum m1 = new MetricDatum().withMetricName("m1").withValue(1.0);
+
+        //call
+        publisher.publish(ImmutableList.of(m1));
+        publisher.flush();
+
+        //verify
+        try (SegmentReader reader = new SegmentReader(Paths.get(tmpDirPath + generateSpoolFileSuffix(System.currentTimeMillis(), 1)), 0)) {
+
+            assertThat(reader.next()).isEqualTo(m1);
+            assertThat(reader.next()).isNull();
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> publisher.setDurabilityWindowMillis(10));
+    }
 }
@@ -0,0 +1,250 @@
+package com.deevvi.async.publisher.publisher;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.deevvi.async.publisher.publisher.callable.RetryPolicy;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link HybridMetricsPublisher} class.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+public class HybridMetricsPublisherTest {
+
+    private HybridMetricsPublisher publisher;
+    private AmazonCloudWatch cloudWatch;
+    private String tmpDirPath;
+
+    /**
+     * Names of the metrics accepted by CW.
+     */
+    private Set<String> published;
+
+    @BeforeEach
+    public void init(@TempDir Path tempDir) {
+
+        tmpDirPath = tempDir.toAbsolutePath().toString() + "/";
+        cloudWatch = Mockito.mock(AmazonCloudWatch.class);
+        published = Sets.newConcurrentHashSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        if (publisher != null) {
+
+            publisher.closePublisher();
+        }
+    }
+
+    @Test
+    public void testNullCWClient() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new HybridMetricsPublisher(null, tmpDirPath, "test", 10, 10));
+    }
+
+    @Test
+    public void testNullPath() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new HybridMetricsPublisher(cloudWatch, " ", "test", 10, 10));
+    }
+
+    @Test
+    public void testInvalidWatermark() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 10, 0));
+    }
+
+    @Test
+    public void testExceptionAfterShutDown() {
+
+        //setup
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 100, 10);
+        publisher.closePublisher();
+
+        //call
+        Assertions.assertThrows(IOException.class, () -> publisher.publish(ImmutableList.of(datum("m1"))));
+    }
+
+    @Test
+    public void testMetricsAreSentFromMemory() throws Exception {
+
+        //setup
+        recordPublished();
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 100, 10);
+
+        //call
+        publisher.publish(ImmutableList.of(datum("m1"), datum("m2")));
+
+        //verify
+        awaitPublished("m1", "m2");
+        assertThat(publisher.getSpilledDatums()).isEqualTo(0);
+        assertThat(spoolFiles()).isEmpty();
+    }
+
+    @Test
+    public void testMetricsAreSpilledPastWatermark() throws Exception {
+
+        //setup
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch sending = new CountDownLatch(1);
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            sending.countDown();
+            blocked.await(5, TimeUnit.SECONDS);
+            PutMetricDataRequest request = invocation.getArgument(0);
+            request.getMetricData().forEach(datum -> published.add(datum.getMetricName()));
+            return null;
+        });
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 100, 2);
+        publisher.publish(ImmutableList.of(datum("m1")));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //call
+        publisher.publish(ImmutableList.of(datum("m2")));
+        publisher.publish(ImmutableList.of(datum("m3")));
+        publisher.publish(ImmutableList.of(datum("m4")));
+        blocked.countDown();
+
+        //verify
+        assertThat(publisher.getSpilledDatums()).isEqualTo(1);
+        assertThat(spoolFiles()).hasLength(1);
+        awaitPublished("m1", "m2", "m3", "m4");
+    }
+
+    @Test
+    public void testFailedRequestsAreSpilledAndReplayed() throws Exception {
+
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            if (calls.incrementAndGet() == 1) {
+
+                throw new AmazonClientException("connection reset");
+            }
+            PutMetricDataRequest request = invocation.getArgument(0);
+            request.getMetricData().forEach(datum -> published.add(datum.getMetricName()));
+            return null;
+        });
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 100, 10);
+        publisher.setRetryPolicy(new RetryPolicy(1, 1, 1, 1, 200));
+
+        //call
+        publisher.publish(ImmutableList.of(datum("m1")));
+
+        //verify
+        awaitPublished("m1");
+        assertThat(publisher.getSpilledDatums()).isEqualTo(1);
+        assertThat(spoolFiles()).hasLength(1);
+    }
+
+    @Test
+    public void testMetricsAreSpilledWhileCircuitIsOpen() throws Exception {
+
+        //setup
+        when(cloudWatch.putMetricData(any())).thenThrow(new AmazonClientException("connection reset"));
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 100, 10);
+        publisher.setRetryPolicy(new RetryPolicy(1, 1, 1, 1, 60_000));
+        publisher.publish(ImmutableList.of(datum("m1")));
+        verify(cloudWatch, timeout(5000)).putMetricData(any());
+
+        //call
+        publisher.publish(ImmutableList.of(datum("m2"), datum("m3")));
+
+        //verify
+        assertThat(publisher.getSpilledDatums()).isEqualTo(3);
+    }
+
+    @Test
+    public void testQueuedMetricsAreSpilledOnClose() throws Exception {
+
+        //setup
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 60_000, 10);
+        publisher.publish(ImmutableList.of(datum("m1"), datum("m2")));
+
+        //call
+        publisher.closePublisher();
+
+        //verify
+        assertThat(publisher.getSpilledDatums()).isEqualTo(2);
+        assertThat(spoolFiles()).hasLength(1);
+    }
+
+    @Test
+    public void testPolledMetricsAreSpilledOnClose() throws Exception {
+
+        //setup
+        publisher = new HybridMetricsPublisher(cloudWatch, tmpDirPath, "test", 60_000, 10);
+        publisher.publish(ImmutableList.of(datum("m1"), datum("m2")));
+        // let the sender poll the metrics, then wait for more of them
+        Thread.sleep(200);
+
+        //call
+        publisher.closePublisher();
+
+        //verify
+        assertThat(publisher.getSpilledDatums()).isEqualTo(2);
+        assertThat(spoolFiles()).hasLength(1);
+    }
+
+    private void recordPublished() {
+
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            PutMetricDataRequest request = invocation.getArgument(0);
+            request.getMetricData().forEach(datum -> published.add(datum.getMetricName()));
+            return null;
+        });
+    }
+
+    private void awaitPublished(final String... names) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!published.containsAll(ImmutableList.copyOf(names)) && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(20);
+        }
+        assertThat(published).containsAtLeastElementsIn(names);
+    }
+
+    private File[] spoolFiles() {
+
+        return new File(tmpDirPath).listFiles(FileUtils::isSpoolFile);
+    }
+
+    private static MetricDatum datum(final String name) {
+
+        return new MetricDatum().withMetricName(name).withValue(1.0).withUnit(Count).withTimestamp(new Date());
+    }
+}
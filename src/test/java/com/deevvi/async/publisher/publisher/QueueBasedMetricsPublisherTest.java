@@ -1,17 +1,36 @@
 package com.deevvi.async.publisher.publisher;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.deevvi.async.publisher.publisher.buffer.BoundedMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.CapacityUnit;
+import com.deevvi.async.publisher.publisher.buffer.OverloadPolicy;
+import com.deevvi.async.publisher.publisher.buffer.RingMetricsBuffer;
+import com.deevvi.async.publisher.publisher.buffer.WaitStrategy;
+import com.deevvi.async.publisher.publisher.callable.RetryPolicy;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link QueueBasedMetricsPublisher} class.
@@ -77,4 +96,154 @@ public class QueueBasedMetricsPublisherTest {
         //verify
         verifyNoMoreInteractions(cloudWatch);
     }
+
+    @Test
+    public void testInvalidNumberOfSenders() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QueueBasedMetricsPublisher(cloudWatch, "test", 100, 0));
+    }
+
+    @Test
+    public void testNonBlockingNullClient() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> QueueBasedMetricsPublisher.nonBlocking(null, "test", 100, 4));
+    }
+
+    @Test
+    public void testNonBlockingInvalidInFlightRequests() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> QueueBasedMetricsPublisher.nonBlocking(mock(AmazonCloudWatchAsync.class), "test", 100, 0));
+    }
+
+    @Test
+    public void testAsyncClientKeepsBlockingSenders() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = mock(AmazonCloudWatchAsync.class);
+        QueueBasedMetricsPublisher blockingPublisher = new QueueBasedMetricsPublisher(asyncCloudWatch, "test", 50, 2);
+
+        //call
+        blockingPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m1")));
+
+        //verify
+        verify(asyncCloudWatch, timeout(5000)).putMetricData(any());
+        verify(asyncCloudWatch, never()).putMetricDataAsync(any(), any());
+        blockingPublisher.closePublisher();
+    }
+
+    @Test
+    public void testNonBlockingPublisher() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = mock(AmazonCloudWatchAsync.class);
+        QueueBasedMetricsPublisher nonBlockingPublisher = QueueBasedMetricsPublisher.nonBlocking(asyncCloudWatch, "test", 50, 2);
+
+        //call
+        nonBlockingPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m1")));
+
+        //verify
+        verify(asyncCloudWatch, timeout(5000)).putMetricDataAsync(any(), any());
+        verify(asyncCloudWatch, never()).putMetricData(any());
+        nonBlockingPublisher.closePublisher();
+    }
+
+    @Test
+    public void testOpenCircuitDropsMetrics() throws Exception {
+
+        //setup
+        AmazonCloudWatch failingCloudWatch = mock(AmazonCloudWatch.class);
+        when(failingCloudWatch.putMetricData(any())).thenThrow(new AmazonClientException("exception"));
+        QueueBasedMetricsPublisher failingPublisher = new QueueBasedMetricsPublisher(failingCloudWatch, "test", 50, 1);
+        failingPublisher.setRetryPolicy(new RetryPolicy(1, 1, 1, 1, 60_000));
+
+        //call
+        failingPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m1")));
+        verify(failingCloudWatch, timeout(5000)).putMetricData(any());
+        failingPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m2"), new MetricDatum().withMetricName("m3")));
+
+        //verify
+        long deadline = System.currentTimeMillis() + 5000;
+        while (failingPublisher.getDroppedDatums() < 3 && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(20);
+        }
+        assertThat(failingPublisher.getDroppedDatums()).isEqualTo(3);
+        verify(failingCloudWatch).putMetricData(any());
+        failingPublisher.closePublisher();
+    }
+
+    @Test
+    public void testConcurrentSenders() throws Exception {
+
+        //setup
+        AmazonCloudWatch slowCloudWatch = mock(AmazonCloudWatch.class);
+        CountDownLatch inFlight = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        when(slowCloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await();
+            return new PutMetricDataResult();
+        });
+        QueueBasedMetricsPublisher concurrentPublisher = new QueueBasedMetricsPublisher(slowCloudWatch, "test", 50, 3);
+
+        //call
+        for (int index = 0; index < 3; index++) {
+
+            concurrentPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m" + index)));
+            Thread.sleep(200);
+        }
+
+        //verify
+        assertThat(inFlight.await(2, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        concurrentPublisher.closePublisher();
+    }
+
+    @Test
+    public void testBoundedBufferDropsOnOverload() throws Exception {
+
+        //setup
+        AmazonCloudWatch blockedCloudWatch = mock(AmazonCloudWatch.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(blockedCloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+            release.await();
+            return new PutMetricDataResult();
+        });
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(2, CapacityUnit.DATUMS, OverloadPolicy.DROP_NEWEST);
+        QueueBasedMetricsPublisher boundedPublisher = new QueueBasedMetricsPublisher(blockedCloudWatch, "test", 60_000, 1, buffer);
+        List<MetricDatum> metrics = Lists.newArrayList();
+        for (int index = 0; index < 1003; index++) {
+            metrics.add(new MetricDatum().withMetricName("m" + index));
+        }
+
+        //call
+        boundedPublisher.publish(metrics);
+
+        //verify
+        assertThat(buffer.getDroppedDatums()).isAtLeast(1);
+        assertThat(buffer.size()).isAtMost(2);
+        release.countDown();
+        boundedPublisher.closePublisher();
+    }
+
+    @Test
+    public void testRingBufferHandOff() throws Exception {
+
+        //setup
+        AmazonCloudWatch ringCloudWatch = mock(AmazonCloudWatch.class);
+        QueueBasedMetricsPublisher ringPublisher = new QueueBasedMetricsPublisher(ringCloudWatch, "test", 100, 1,
+                new RingMetricsBuffer(1024, WaitStrategy.PARK));
+
+        //call
+        ringPublisher.publish(ImmutableList.of(new MetricDatum().withMetricName("m1"),
+                new MetricDatum().withMetricName("m2")));
+
+        //verify
+        verify(ringCloudWatch, timeout(1000).times(1)).putMetricData(any());
+        ringPublisher.closePublisher();
+    }
 }
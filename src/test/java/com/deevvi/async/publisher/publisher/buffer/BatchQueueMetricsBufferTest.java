@@ -0,0 +1,117 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link BatchQueueMetricsBuffer} class.
+ */
+public class BatchQueueMetricsBufferTest {
+
+    @Test
+    public void testOfferNull() {
+
+        //setup
+        BatchQueueMetricsBuffer buffer = new BatchQueueMetricsBuffer();
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offer(null));
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offerAll(null));
+    }
+
+    @Test
+    public void testDrainUnpacksCollections() throws Exception {
+
+        //setup
+        BatchQueueMetricsBuffer buffer = new BatchQueueMetricsBuffer();
+        buffer.offerAll(Lists.newArrayList(datum("m1"), datum("m2")));
+        buffer.offer(datum("m3"));
+        buffer.offerAll(Lists.newArrayList());
+
+        //call
+        List<MetricDatum> sink = Lists.newArrayList();
+        int drained = buffer.drainTo(sink, 100, 10, TimeUnit.MILLISECONDS);
+
+        //verify
+        assertThat(drained).isEqualTo(3);
+        assertThat(names(sink)).containsExactly("m1", "m2", "m3").inOrder();
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDrainHonoursMaxItems() throws Exception {
+
+        //setup
+        BatchQueueMetricsBuffer buffer = new BatchQueueMetricsBuffer();
+        buffer.offerAll(Lists.newArrayList(datum("m1"), datum("m2"), datum("m3")));
+        buffer.offerAll(Lists.newArrayList(datum("m4"), datum("m5")));
+
+        //call
+        List<MetricDatum> first = Lists.newArrayList();
+        buffer.drainTo(first, 2, 10, TimeUnit.MILLISECONDS);
+        int remaining = buffer.size();
+        List<MetricDatum> second = Lists.newArrayList();
+        buffer.drainTo(second, 2, 10, TimeUnit.MILLISECONDS);
+        List<MetricDatum> third = Lists.newArrayList();
+        buffer.drainTo(third, 2, 10, TimeUnit.MILLISECONDS);
+
+        //verify
+        assertThat(names(first)).containsExactly("m1", "m2").inOrder();
+        assertThat(remaining).isEqualTo(3);
+        assertThat(names(second)).containsExactly("m3", "m4").inOrder();
+        assertThat(names(third)).containsExactly("m5");
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCollectionIsCopied() throws Exception {
+
+        //setup
+        BatchQueueMetricsBuffer buffer = new BatchQueueMetricsBuffer();
+        List<MetricDatum> metrics = Lists.newArrayList(datum("m1"));
+
+        //call
+        buffer.offerAll(metrics);
+        metrics.add(datum("m2"));
+
+        //verify
+        List<MetricDatum> sink = Lists.newArrayList();
+        buffer.drainTo(sink, 100, 10, TimeUnit.MILLISECONDS);
+        assertThat(names(sink)).containsExactly("m1");
+    }
+
+    @Test
+    public void testDrainTimesOut() throws Exception {
+
+        //setup
+        BatchQueueMetricsBuffer buffer = new BatchQueueMetricsBuffer();
+
+        //call
+        long start = System.currentTimeMillis();
+        int drained = buffer.drainTo(Lists.newArrayList(), 10, 50, TimeUnit.MILLISECONDS);
+
+        //verify
+        assertThat(drained).isEqualTo(0);
+        assertThat(System.currentTimeMillis() - start).isAtLeast(50L);
+    }
+
+    private static List<String> names(final List<MetricDatum> datums) {
+
+        List<String> names = Lists.newArrayList();
+        datums.forEach(datum -> names.add(datum.getMetricName()));
+        return names;
+    }
+
+    private static MetricDatum datum(final String name) {
+
+        return new MetricDatum().withMetricName(name).withValue(1.0).withUnit(Count);
+    }
+}
@@ -0,0 +1,240 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.MetricDatumUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link BoundedMetricsBuffer} class.
+ */
+public class BoundedMetricsBufferTest {
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedMetricsBuffer(0, CapacityUnit.DATUMS, OverloadPolicy.BLOCK));
+        Assertions.assertThrows(NullPointerException.class, () -> new BoundedMetricsBuffer(10, null, OverloadPolicy.BLOCK));
+        Assertions.assertThrows(NullPointerException.class, () -> new BoundedMetricsBuffer(10, CapacityUnit.DATUMS, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedMetricsBuffer(10, CapacityUnit.DATUMS, OverloadPolicy.BLOCK, -1));
+    }
+
+    @Test
+    public void testOfferNull() {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(10, CapacityUnit.DATUMS, OverloadPolicy.DROP_NEWEST);
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offer(null));
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(2, CapacityUnit.DATUMS, OverloadPolicy.DROP_NEWEST);
+
+        //call
+        assertThat(buffer.offer(datum("m1"))).isTrue();
+        assertThat(buffer.offer(datum("m2"))).isTrue();
+        assertThat(buffer.offer(datum("m3"))).isFalse();
+
+        //verify
+        assertThat(names(drain(buffer))).containsExactly("m1", "m2").inOrder();
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+        assertThat(buffer.getDroppedBytes()).isEqualTo(MetricDatumUtils.estimateEncodedSize(datum("m3")));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(2, CapacityUnit.DATUMS, OverloadPolicy.DROP_OLDEST);
+
+        //call
+        buffer.offer(datum("m1"));
+        buffer.offer(datum("m2"));
+        assertThat(buffer.offer(datum("m3"))).isTrue();
+
+        //verify
+        assertThat(names(drain(buffer))).containsExactly("m2", "m3").inOrder();
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBlockTimesOut() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(1, CapacityUnit.DATUMS, OverloadPolicy.BLOCK, 50);
+        buffer.offer(datum("m1"));
+
+        //call
+        long start = System.currentTimeMillis();
+        boolean accepted = buffer.offer(datum("m2"));
+
+        //verify
+        assertThat(accepted).isFalse();
+        assertThat(System.currentTimeMillis() - start).isAtLeast(50L);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(1, CapacityUnit.DATUMS, OverloadPolicy.BLOCK, 5000);
+        buffer.offer(datum("m1"));
+        ExecutorService service = Executors.newSingleThreadExecutor();
+
+        //call
+        Future<Boolean> accepted = service.submit(() -> buffer.offer(datum("m2")));
+        Thread.sleep(100);
+        List<MetricDatum> first = drain(buffer);
+
+        //verify
+        assertThat(accepted.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(names(first)).containsExactly("m1");
+        assertThat(names(drain(buffer))).containsExactly("m2");
+        assertThat(buffer.getDroppedDatums()).isEqualTo(0);
+        service.shutdown();
+    }
+
+    @Test
+    public void testBlockedCollectionWakesSender() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(2, CapacityUnit.DATUMS, OverloadPolicy.BLOCK, 2000);
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        Future<List<MetricDatum>> sender = service.submit(() -> {
+
+            List<MetricDatum> sent = Lists.newArrayList();
+            while (sent.size() < 5) {
+
+                buffer.drainTo(sent, 5, 10, TimeUnit.SECONDS);
+            }
+            return sent;
+        });
+        Thread.sleep(100);
+
+        //call
+        long start = System.currentTimeMillis();
+        int accepted = buffer.offerAll(ImmutableList.of(datum("m1"), datum("m2"), datum("m3"), datum("m4"), datum("m5")));
+
+        //verify
+        assertThat(accepted).isEqualTo(5);
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000L);
+        assertThat(names(sender.get(5, TimeUnit.SECONDS))).containsExactly("m1", "m2", "m3", "m4", "m5").inOrder();
+        service.shutdown();
+    }
+
+    @Test
+    public void testBlockTimeoutCoversWholeCollection() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(1, CapacityUnit.DATUMS, OverloadPolicy.BLOCK, 100);
+
+        //call
+        long start = System.currentTimeMillis();
+        int accepted = buffer.offerAll(ImmutableList.of(datum("m1"), datum("m2"), datum("m3"), datum("m4"), datum("m5")));
+
+        //verify
+        assertThat(accepted).isEqualTo(1);
+        assertThat(System.currentTimeMillis() - start).isLessThan(300L);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(4);
+    }
+
+    @Test
+    public void testSample() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(100, CapacityUnit.DATUMS, OverloadPolicy.SAMPLE);
+
+        //call
+        for (int index = 0; index < 1000; index++) {
+            buffer.offer(datum("m" + index));
+        }
+
+        //verify
+        assertThat(buffer.size()).isAtLeast(50);
+        assertThat(buffer.size()).isAtMost(100);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1000 - buffer.size());
+    }
+
+    @Test
+    public void testCapacityInBytes() throws Exception {
+
+        //setup
+        int weight = MetricDatumUtils.estimateEncodedSize(datum("m1"));
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(3 * weight, CapacityUnit.BYTES, OverloadPolicy.DROP_NEWEST);
+
+        //call
+        for (int index = 1; index <= 5; index++) {
+            buffer.offer(datum("m" + index));
+        }
+
+        //verify
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(2);
+        assertThat(buffer.getDroppedBytes()).isEqualTo(2 * weight);
+    }
+
+    @Test
+    public void testOfferAll() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(2, CapacityUnit.DATUMS, OverloadPolicy.DROP_NEWEST);
+
+        //call
+        int accepted = buffer.offerAll(Lists.newArrayList(datum("m1"), datum("m2"), datum("m3")));
+
+        //verify
+        assertThat(accepted).isEqualTo(2);
+        assertThat(names(drain(buffer))).containsExactly("m1", "m2").inOrder();
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDrainTimesOut() throws Exception {
+
+        //setup
+        BoundedMetricsBuffer buffer = new BoundedMetricsBuffer(10, CapacityUnit.DATUMS, OverloadPolicy.DROP_NEWEST);
+
+        //call
+        int drained = buffer.drainTo(Lists.newArrayList(), 10, 50, TimeUnit.MILLISECONDS);
+
+        //verify
+        assertThat(drained).isEqualTo(0);
+    }
+
+    private static List<MetricDatum> drain(final MetricsBuffer buffer) throws InterruptedException {
+
+        List<MetricDatum> sink = Lists.newArrayList();
+        buffer.drainTo(sink, 100, 10, TimeUnit.MILLISECONDS);
+        return sink;
+    }
+
+    private static List<String> names(final List<MetricDatum> datums) {
+
+        List<String> names = Lists.newArrayList();
+        datums.forEach(datum -> names.add(datum.getMetricName()));
+        return names;
+    }
+
+    private static MetricDatum datum(final String name) {
+
+        return new MetricDatum().withMetricName(name).withValue(1.0).withUnit(Count);
+    }
+}
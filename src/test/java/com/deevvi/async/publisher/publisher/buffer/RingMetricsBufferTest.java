@@ -0,0 +1,200 @@
+package com.deevvi.async.publisher.publisher.buffer;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link RingMetricsBuffer} class.
+ */
+public class RingMetricsBufferTest {
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RingMetricsBuffer(0, WaitStrategy.PARK));
+        Assertions.assertThrows(NullPointerException.class, () -> new RingMetricsBuffer(8, null));
+    }
+
+    @Test
+    public void testCapacityIsRoundedToPowerOfTwo() {
+
+        //verify
+        assertThat(new RingMetricsBuffer(1, WaitStrategy.PARK).getCapacity()).isEqualTo(1);
+        assertThat(new RingMetricsBuffer(5, WaitStrategy.PARK).getCapacity()).isEqualTo(8);
+        assertThat(new RingMetricsBuffer(8, WaitStrategy.PARK).getCapacity()).isEqualTo(8);
+    }
+
+    @Test
+    public void testOfferNull() {
+
+        //setup
+        RingMetricsBuffer buffer = new RingMetricsBuffer(4, WaitStrategy.PARK);
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offer(null));
+        Assertions.assertThrows(NullPointerException.class, () -> buffer.offerAll(Lists.newArrayList(datum("m1"), null)));
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFifoAndDropWhenFull() throws Exception {
+
+        //setup
+        RingMetricsBuffer buffer = new RingMetricsBuffer(2, WaitStrategy.PARK);
+
+        //call
+        assertThat(buffer.offer(datum("m1"))).isTrue();
+        assertThat(buffer.offer(datum("m2"))).isTrue();
+        assertThat(buffer.offer(datum("m3"))).isFalse();
+        List<MetricDatum> first = drain(buffer, 10);
+        assertThat(buffer.offer(datum("m4"))).isTrue();
+
+        //verify
+        assertThat(names(first)).containsExactly("m1", "m2").inOrder();
+        assertThat(names(drain(buffer, 10))).containsExactly("m4");
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBatchClaim() throws Exception {
+
+        //setup
+        RingMetricsBuffer buffer = new RingMetricsBuffer(4, WaitStrategy.PARK);
+        buffer.offer(datum("m0"));
+
+        //call
+        int accepted = buffer.offerAll(ImmutableList.of(datum("m1"), datum("m2"), datum("m3"), datum("m4")));
+
+        //verify
+        assertThat(accepted).isEqualTo(3);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+        assertThat(names(drain(buffer, 2))).containsExactly("m0", "m1").inOrder();
+        assertThat(names(drain(buffer, 10))).containsExactly("m2", "m3").inOrder();
+    }
+
+    @Test
+    public void testBatchClaimOfNonListCollection() throws Exception {
+
+        //setup
+        RingMetricsBuffer buffer = new RingMetricsBuffer(4, WaitStrategy.PARK);
+        buffer.offer(datum("m0"));
+
+        //call
+        int accepted = buffer.offerAll(new ArrayDeque<>(ImmutableList.of(datum("m1"), datum("m2"), datum("m3"), datum("m4"))));
+
+        //verify
+        assertThat(accepted).isEqualTo(3);
+        assertThat(buffer.getDroppedDatums()).isEqualTo(1);
+        assertThat(names(drain(buffer, 10))).containsExactly("m0", "m1", "m2", "m3").inOrder();
+    }
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    public void testDrainTimesOut(final WaitStrategy waitStrategy) throws Exception {
+
+        //setup
+        RingMetricsBuffer buffer = new RingMetricsBuffer(4, waitStrategy);
+
+        //call
+        long start = System.currentTimeMillis();
+        int drained = buffer.drainTo(Lists.newArrayList(), 10, 50, TimeUnit.MILLISECONDS);
+
+        //verify
+        assertThat(drained).isEqualTo(0);
+        assertThat(System.currentTimeMillis() - start).isAtLeast(49L);
+    }
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    public void testConcurrentProducers(final WaitStrategy waitStrategy) throws Exception {
+
+        //setup
+        int producers = 4;
+        int datumsPerProducer = 20_000;
+        RingMetricsBuffer buffer = new RingMetricsBuffer(1024, waitStrategy);
+        ExecutorService service = Executors.newFixedThreadPool(producers);
+        List<Future<Integer>> results = Lists.newArrayList();
+
+        //call
+        for (int producer = 0; producer < producers; producer++) {
+
+            String name = "p" + producer;
+            results.add(service.submit(() -> {
+                int accepted = 0;
+                for (int index = 0; index < datumsPerProducer; index++) {
+                    if (buffer.offerAll(ImmutableList.of(datum(name).withValue((double) index))) == 1) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+
+        List<MetricDatum> drained = Lists.newArrayList();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!allDone(results) || buffer.size() > 0) {
+
+            buffer.drainTo(drained, 256, 10, TimeUnit.MILLISECONDS);
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+        }
+        service.shutdown();
+
+        //verify
+        int accepted = 0;
+        for (Future<Integer> result : results) {
+            accepted += result.get();
+        }
+        assertThat(drained).hasSize(accepted);
+        assertThat(accepted + buffer.getDroppedDatums()).isEqualTo((long) producers * datumsPerProducer);
+        for (int producer = 0; producer < producers; producer++) {
+
+            double last = -1;
+            for (MetricDatum datum : drained) {
+                if (datum.getMetricName().equals("p" + producer)) {
+                    assertThat(datum.getValue()).isGreaterThan(last);
+                    last = datum.getValue();
+                }
+            }
+        }
+    }
+
+    private static boolean allDone(final List<Future<Integer>> results) {
+
+        return results.stream().allMatch(Future::isDone);
+    }
+
+    private static List<MetricDatum> drain(final MetricsBuffer buffer, final int maxItems) throws InterruptedException {
+
+        List<MetricDatum> sink = Lists.newArrayList();
+        buffer.drainTo(sink, maxItems, 10, TimeUnit.MILLISECONDS);
+        return sink;
+    }
+
+    private static List<String> names(final List<MetricDatum> datums) {
+
+        List<String> names = Lists.newArrayList();
+        datums.forEach(datum -> names.add(datum.getMetricName()));
+        return names;
+    }
+
+    private static MetricDatum datum(final String name) {
+
+        return new MetricDatum().withMetricName(name).withValue(1.0).withUnit(Count);
+    }
+}
@@ -0,0 +1,146 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link CheckpointStore} class.
+ */
+public class CheckpointStoreTest {
+
+    private static final String FILE = "metrics-spool-2019-07-30-07_0000000001.seg";
+
+    private String directory;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        directory = tempDir.toAbsolutePath().toString();
+    }
+
+    @Test
+    public void testNullDirectory() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new CheckpointStore(" "));
+    }
+
+    @Test
+    public void testNoCheckpoint() throws IOException {
+
+        //call
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            //verify
+            assertThat(store.contains(FILE)).isFalse();
+            assertThat(store.getOffset(FILE)).isEqualTo(0);
+            assertThat(store.getLastUpdateTimestamp(FILE)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testCheckpointsAreStored() throws IOException {
+
+        //setup
+        long before = System.currentTimeMillis();
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            store.update(FILE, 10);
+            store.update(FILE, 20);
+            store.update("metrics-logs-2019-07-30-07.log", 5L << 32);
+            store.update("other.seg", 50, 42);
+        }
+
+        //call
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            //verify
+            assertThat(store.getOffset(FILE)).isEqualTo(20);
+            assertThat(store.getOffset("metrics-logs-2019-07-30-07.log")).isEqualTo(5L << 32);
+            assertThat(store.getLastUpdateTimestamp(FILE)).isAtLeast(before);
+            assertThat(store.getDictionaryOffset(FILE)).isEqualTo(-1);
+            assertThat(store.getDictionaryOffset("other.seg")).isEqualTo(42);
+        }
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+
+        //setup
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            store.update(FILE, 10);
+            store.update("other.seg", 30);
+
+            //call
+            store.remove(FILE);
+            store.update("new.seg", 40);
+        }
+
+        //verify
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            assertThat(store.contains(FILE)).isFalse();
+            assertThat(store.getOffset("other.seg")).isEqualTo(30);
+            assertThat(store.getOffset("new.seg")).isEqualTo(40);
+        }
+        assertThat(new File(directory, CheckpointStore.FILE_NAME).length()).isEqualTo(8 + 2 * 256);
+    }
+
+    @Test
+    public void testTornWriteKeepsPreviousCheckpoint() throws IOException {
+
+        //setup
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            store.update(FILE, 10);
+            store.update(FILE, 20);
+        }
+        // second update went to the first copy of the slot
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, CheckpointStore.FILE_NAME), "rw")) {
+
+            file.seek(8 + 16);
+            file.write(0x7F);
+        }
+
+        //call
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            //verify
+            assertThat(store.getOffset(FILE)).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void testNotACheckpointsFile() throws IOException {
+
+        //setup
+        Files.write(new File(directory, CheckpointStore.FILE_NAME).toPath(), "bytesRead=10\n".getBytes());
+
+        //call
+        Assertions.assertThrows(IOException.class, () -> new CheckpointStore(directory));
+    }
+
+    @Test
+    public void testNameTooLong() throws IOException {
+
+        //setup
+        try (CheckpointStore store = new CheckpointStore(directory)) {
+
+            //call
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> store.update(Strings.repeat("a", CheckpointStore.MAX_NAME_SIZE + 1), 10));
+        }
+    }
+}
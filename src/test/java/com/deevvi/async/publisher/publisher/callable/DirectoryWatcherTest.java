@@ -0,0 +1,96 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.deevvi.async.publisher.publisher.spool.SpoolSignal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link DirectoryWatcher} class.
+ */
+public class DirectoryWatcherTest {
+
+    private Path directory;
+    private SpoolSignal signal;
+    private DirectoryWatcher watcher;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) throws IOException {
+
+        directory = tempDir;
+        signal = new SpoolSignal();
+        watcher = new DirectoryWatcher(tempDir.toAbsolutePath().toString(), signal);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+
+        watcher.close();
+    }
+
+    @Test
+    public void testMissingDirectory() {
+
+        //call
+        assertThrows(IOException.class, () -> new DirectoryWatcher(directory.resolve("missing").toString(), signal));
+    }
+
+    @Test
+    public void testSpoolFileRaisesSignal() throws Exception {
+
+        //setup
+        long version = signal.version();
+
+        //call
+        Files.write(directory.resolve("metrics-spool-2019-07-30-07_0000000001.seg"), new byte[]{1});
+
+        //verify
+        assertThat(signal.await(version, 5000)).isTrue();
+        assertThat(watcher.isWatching()).isTrue();
+    }
+
+    @Test
+    public void testLogFileRaisesSignal() throws Exception {
+
+        //setup
+        long version = signal.version();
+
+        //call
+        Files.write(directory.resolve("metrics-logs-2019-07-30-07.log"), new byte[]{'\n'});
+
+        //verify
+        assertThat(signal.await(version, 5000)).isTrue();
+    }
+
+    @Test
+    public void testCheckpointsFileIsIgnored() throws Exception {
+
+        //setup
+        long version = signal.version();
+
+        //call
+        Files.write(directory.resolve(CheckpointStore.FILE_NAME), new byte[]{1});
+
+        //verify
+        assertThat(signal.await(version, 200)).isFalse();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+
+        //call
+        watcher.close();
+
+        //verify
+        Thread.sleep(50);
+        assertThat(watcher.isWatching()).isFalse();
+    }
+}
@@ -3,25 +3,40 @@ package com.deevvi.async.publisher.publisher.callable;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
 import com.amazonaws.services.cloudwatch.model.StandardUnit;
 
+import com.deevvi.async.publisher.publisher.spool.SegmentEncoder;
+import com.deevvi.async.publisher.publisher.spool.SegmentReader;
+import com.deevvi.async.publisher.publisher.spool.SpoolSignal;
 import com.deevvi.async.publisher.utils.JSONUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -99,10 +114,11 @@ public class FileBasedCallableTest {
         callable.run();
 
         //verify
-        PropertiesFileHandler handler = new PropertiesFileHandler(tmpDirPath + "/metrics-logs-2019-07-30-07.properties");
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
 
-        assertThat(new File(tmpDirPath + "/metrics-logs-2019-07-30-07.properties").exists()).isTrue();
-        assertThat(handler.getBytesRead()).isEqualTo( json.length() + 1);
+            assertThat(store.contains(fileName)).isTrue();
+            assertThat(store.getOffset(fileName)).isEqualTo(json.length() + 1);
+        }
         verify(cloudWatch, times(1)).putMetricData(any());
     }
 
@@ -121,11 +137,227 @@ public class FileBasedCallableTest {
         callable.run();
 
         //verify
-        PropertiesFileHandler handler = new PropertiesFileHandler(new File(tmpDirPath + "/metrics-logs-2019-07-30-07.properties").toString());
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.contains(fileName)).isFalse();
+        }
+        verify(cloudWatch, times(3)).putMetricData(any());
+    }
+
+    @Test
+    public void testFailedRequestIsRetried() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        AmazonServiceException throttled = new AmazonServiceException("Rate exceeded");
+        throttled.setErrorCode("Throttling");
+        throttled.setStatusCode(400);
+        when(cloudWatch.putMetricData(any())).thenThrow(throttled).thenReturn(null);
+        callable.setRetryPolicy(new RetryPolicy(2, 1, 1, 5, 60_000));
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
+        verify(cloudWatch, times(2)).putMetricData(any());
+    }
+
+    @Test
+    public void testOpenCircuitStopsRequests() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        when(cloudWatch.putMetricData(any())).thenThrow(new AmazonServiceException("CW failed"));
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 2, 60_000));
+
+        //call
+        for (int index = 0; index < 5; index++) {
 
-        assertThat(new File(tmpDirPath + "/metrics-logs-2019-07-30-07.properties").exists()).isFalse();
-        assertThat(handler.propertiesFileExists()).isFalse();
+            assertThat(callable.run()).isTrue();
+        }
+
+        //verify
+        verify(cloudWatch, times(2)).putMetricData(any());
+    }
+
+    @Test
+    public void testRejectedDatumIsQuarantined() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum nan = new MetricDatum().withMetricName("m1").withValue(Double.NaN).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        addToSpool(file, nan);
+        when(cloudWatch.putMetricData(any())).thenThrow(invalidParameter());
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
         verify(cloudWatch, times(1)).putMetricData(any());
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+        }
+        try (SegmentReader reader = new SegmentReader(quarantineFile().toPath(), 0)) {
+
+            assertThat(reader.next().getMetricName()).isEqualTo("m1");
+            assertThat(reader.getError()).contains("InvalidParameterValue");
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testRejectedBatchIsBisected() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum[] datums = new MetricDatum[100];
+        for (int index = 0; index < datums.length; index++) {
+
+            datums[index] = new MetricDatum().withMetricName(index == 17 || index == 80 ? "poison" : "m" + index)
+                    .withValue((double) index).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        }
+        addToSpool(file, datums);
+        AtomicInteger published = new AtomicInteger();
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            PutMetricDataRequest request = invocation.getArgument(0);
+            if (request.getMetricData().stream().anyMatch(datum -> datum.getMetricName().equals("poison"))) {
+
+                throw invalidParameter();
+            }
+            published.addAndGet(request.getMetricData().size());
+            return null;
+        });
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
+        assertThat(published.get()).isEqualTo(98);
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+        }
+        try (SegmentReader reader = new SegmentReader(quarantineFile().toPath(), 0)) {
+
+            assertThat(reader.next().getValue()).isEqualTo(17.0);
+            assertThat(reader.next().getValue()).isEqualTo(80.0);
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testBisectedBatchResumesAfterPublishedHalf() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum[] datums = new MetricDatum[4];
+        for (int index = 0; index < datums.length; index++) {
+
+            datums[index] = new MetricDatum().withMetricName(index == 0 ? "poison" : "m" + index)
+                    .withValue((double) index).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        }
+        addToSpool(file, datums);
+        long firstHalfEnd;
+        try (SegmentReader reader = new SegmentReader(file.toPath(), 0)) {
+
+            reader.next();
+            reader.next();
+            firstHalfEnd = reader.position();
+        }
+        AmazonServiceException unavailable = new AmazonServiceException("Service unavailable");
+        unavailable.setStatusCode(503);
+        AtomicInteger calls = new AtomicInteger();
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            PutMetricDataRequest request = invocation.getArgument(0);
+            if (request.getMetricData().stream().anyMatch(datum -> datum.getMetricName().equals("poison"))) {
+
+                throw invalidParameter();
+            }
+            if (request.getMetricData().get(0).getValue() == 2.0 && calls.incrementAndGet() == 1) {
+
+                throw unavailable;
+            }
+            return null;
+        });
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 5, 60_000));
+
+        //call
+        boolean pending = callable.run();
+        long checkpoint;
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            checkpoint = store.getOffset(file.getName());
+        }
+        boolean pendingAfterRetry = callable.run();
+
+        //verify
+        assertThat(pending).isTrue();
+        assertThat(checkpoint).isEqualTo(firstHalfEnd);
+        assertThat(pendingAfterRetry).isFalse();
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+        verify(cloudWatch, times(6)).putMetricData(captor.capture());
+        assertThat(captor.getAllValues().get(5).getMetricData()).hasSize(2);
+        assertThat(captor.getAllValues().get(5).getMetricData().get(0).getValue()).isEqualTo(2.0);
+        try (SegmentReader reader = new SegmentReader(quarantineFile().toPath(), 0)) {
+
+            assertThat(reader.next().getValue()).isEqualTo(0.0);
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testRetryableFailureIsNotBisected() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()),
+                new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        AmazonServiceException unavailable = new AmazonServiceException("Service unavailable");
+        unavailable.setStatusCode(503);
+        when(cloudWatch.putMetricData(any())).thenThrow(unavailable);
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 5, 60_000));
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isTrue();
+        verify(cloudWatch, times(1)).putMetricData(any());
+        assertThat(new File(tmpDirPath).listFiles((dir, name) -> name.startsWith("metrics-quarantine-"))).isEmpty();
+    }
+
+    @Test
+    public void testClientErrorIsNotBisected() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()),
+                new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        when(cloudWatch.putMetricData(any())).thenThrow(new IllegalStateException("Connection pool shut down"));
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 5, 60_000));
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isTrue();
+        verify(cloudWatch, times(1)).putMetricData(any());
+        assertThat(new File(tmpDirPath).listFiles((dir, name) -> name.startsWith("metrics-quarantine-"))).isEmpty();
+    }
+
+    @Test
+    public void testNullRetryPolicy() {
+
+        //call
+        assertThrows(NullPointerException.class, () -> callable.setRetryPolicy(null));
     }
 
 
@@ -145,13 +377,33 @@ public class FileBasedCallableTest {
         callable.run();
 
         //verify
-        PropertiesFileHandler handler = new PropertiesFileHandler(tmpDirPath + "/metrics-logs-2019-07-30-07.properties");
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
 
-        assertThat(new File(tmpDirPath + "/metrics-logs-2019-07-30-07.properties").exists()).isTrue();
-        assertThat(handler.getBytesRead()).isEqualTo(json.length() + invalidJSON.length() + 2);
+            assertThat(store.getOffset(fileName)).isEqualTo(json.length() + invalidJSON.length() + 2);
+        }
         verify(cloudWatch, times(1)).putMetricData(any());
     }
 
+    @Test
+    public void testMultiByteCharactersInOffsets() throws Exception {
+
+        //setup
+        MetricDatum m1 = new MetricDatum().withMetricName("Requête.Durée").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        String fileName = "metrics-logs-2019-07-30-07.log";
+        File file = new File(tmpDirPath + fileName);
+        addToFile(file, JSONUtils.encodeToJSON(m1));
+        addToFile(file, JSONUtils.encodeToJSON(m1));
+
+        //call
+        callable.run();
+
+        //verify
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(fileName)).isEqualTo(file.length());
+        }
+    }
+
     @Test
     public void testOldFilesAreDeleted() throws Exception {
 
@@ -161,8 +413,12 @@ public class FileBasedCallableTest {
         File file = new File(tmpDirPath + fileName);
         String json = JSONUtils.encodeToJSON(m1);
         addToFile(file, json);
-        PropertiesFileHandler handler = new PropertiesFileHandler(tmpDirPath +"/metrics-logs-2019-07-30-07.properties");
-        handler.updateRecords(json.length() + 1);
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            store.update(fileName, json.length() + 1);
+        }
+        // a newer file seals the old one
+        addToFile(new File(tmpDirPath + "metrics-logs-2019-07-30-08.log"), json);
         //one second
         callable.setMaxTimeToKeepFilesInMillis(1000);
         Thread.sleep(1000);
@@ -171,10 +427,383 @@ public class FileBasedCallableTest {
         callable.run();
 
         //verify
-        assertThat(new File(tmpDirPath + "/metrics-logs-2019-07-30-07.properties").exists()).isFalse();
-        assertThat(handler.propertiesFileExists()).isFalse();
+        assertThat(file.exists()).isFalse();
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.contains(fileName)).isFalse();
+        }
+    }
+
+    @Test
+    public void testActiveSegmentIsNotDeleted() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        callable.setMaxTimeToKeepFilesInMillis(1);
+        callable.run();
+        Thread.sleep(50);
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
+        assertThat(file.exists()).isTrue();
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+        }
+    }
+
+    @Test
+    public void testLegacyCheckpointIsImported() throws Exception {
+
+        //setup
+        MetricDatum m1 = new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        String fileName = "metrics-logs-2019-07-30-07.log";
+        File file = new File(tmpDirPath + fileName);
+        String json = JSONUtils.encodeToJSON(m1);
+        addToFile(file, json);
+        addToFile(file, json);
+        File legacy = new File(tmpDirPath + "metrics-logs-2019-07-30-07.properties");
+        addToFile(legacy, "bytesRead=" + (json.length() + 1));
+
+        //call
+        callable.run();
+
+        //verify
+        assertThat(legacy.exists()).isFalse();
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(fileName)).isEqualTo(file.length());
+        }
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+        verify(cloudWatch, times(1)).putMetricData(captor.capture());
+        assertThat(captor.getValue().getMetricData()).hasSize(1);
+    }
+
+
+    @Test
+    public void testProcessSpoolFile() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum m1 = new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        MetricDatum m2 = new MetricDatum().withMetricName("m2").withValue(2.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        addToSpool(file, m1, m2);
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+
+        //call
+        callable.run();
+
+        //verify
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+        }
+        verify(cloudWatch, times(1)).putMetricData(captor.capture());
+        assertThat(captor.getValue().getMetricData()).containsExactly(m1, m2).inOrder();
+    }
+
+    @Test
+    public void testProcessSpoolFileFromCheckpoint() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum m1 = new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        MetricDatum m2 = new MetricDatum().withMetricName("m1").withValue(2.0).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        SegmentEncoder encoder = addToSpool(file, m1);
+        callable.run();
+        encoder.encode(m2);
+        write(file, encoder);
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+
+        //call
+        callable.run();
+
+        //verify
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+        }
+        verify(cloudWatch, times(2)).putMetricData(captor.capture());
+        assertThat(captor.getAllValues().get(1).getMetricData()).containsExactly(m2);
+    }
+
+    @Test
+    public void testRunReportsPendingFile() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        addToSpool(file, new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        when(cloudWatch.putMetricData(any())).thenThrow(new AmazonServiceException("CW failed")).thenReturn(null);
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 5, 60_000));
+
+        //call
+        boolean failed = callable.run();
+        boolean retried = callable.run();
+
+        //verify
+        assertThat(failed).isTrue();
+        assertThat(retried).isFalse();
+    }
+
+    @Test
+    public void testSegmentsAreDrainedConcurrently() throws Exception {
+
+        //setup
+        int segments = 4;
+        for (int index = 1; index <= segments; index++) {
+
+            addToSpool(new File(tmpDirPath + "metrics-spool-2019-07-30-07_000000000" + index + ".seg"),
+                    new MetricDatum().withMetricName("m" + index).withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        CountDownLatch allInFlight = new CountDownLatch(segments);
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            allInFlight.countDown();
+            allInFlight.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        callable.setDrainWorkers(segments);
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
+        assertThat(allInFlight.getCount()).isEqualTo(0);
+        verify(cloudWatch, times(segments)).putMetricData(any());
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            for (int index = 1; index <= segments; index++) {
+
+                File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_000000000" + index + ".seg");
+                assertThat(store.getOffset(file.getName())).isEqualTo(file.length());
+            }
+        }
+    }
+
+    @Test
+    public void testDrainWorkersCapConcurrentRequests() throws Exception {
+
+        //setup
+        for (int index = 1; index <= 6; index++) {
+
+            addToSpool(new File(tmpDirPath + "metrics-spool-2019-07-30-07_000000000" + index + ".seg"),
+                    new MetricDatum().withMetricName("m" + index).withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return null;
+        });
+        callable.setDrainWorkers(2);
+
+        //call
+        callable.run();
+
+        //verify
+        verify(cloudWatch, times(6)).putMetricData(any());
+        assertThat(maxInFlight.get()).isAtMost(2);
     }
 
+    @Test
+    public void testMaxConcurrentRequestsCapsAllFiles() throws Exception {
+
+        //setup
+        for (int index = 1; index <= 3; index++) {
+
+            MetricDatum[] datums = new MetricDatum[3 * MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST];
+            for (int datum = 0; datum < datums.length; datum++) {
+
+                datums[datum] = new MetricDatum().withMetricName("m" + index).withValue((double) datum).withUnit(StandardUnit.Count).withTimestamp(new Date());
+            }
+            addToSpool(new File(tmpDirPath + "metrics-spool-2019-07-30-07_000000000" + index + ".seg"), datums);
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return null;
+        });
+        callable.setDrainWorkers(3);
+        callable.setMaxRequestsInFlight(3);
+        callable.setMaxConcurrentRequests(2);
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isFalse();
+        verify(cloudWatch, times(9)).putMetricData(any());
+        assertThat(maxInFlight.get()).isAtMost(2);
+    }
+
+    @Test
+    public void testInvalidMaxConcurrentRequests() {
+
+        //call
+        assertThrows(IllegalArgumentException.class, () -> callable.setMaxConcurrentRequests(-1));
+    }
+
+    @Test
+    public void testInvalidDrainWorkers() {
+
+        //call
+        assertThrows(IllegalArgumentException.class, () -> callable.setDrainWorkers(0));
+    }
+
+    @Test
+    public void testCheckpointStopsBeforeFailedRequest() throws Exception {
+
+        //setup
+        File file = new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg");
+        MetricDatum[] datums = new MetricDatum[2500];
+        for (int index = 0; index < datums.length; index++) {
+
+            datums[index] = new MetricDatum().withMetricName("m1").withValue((double) index).withUnit(StandardUnit.Count).withTimestamp(new Date());
+        }
+        addToSpool(file, datums);
+        long firstRequestEnd;
+        try (SegmentReader reader = new SegmentReader(file.toPath(), 0)) {
+
+            for (int index = 0; index < MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST; index++) {
+
+                reader.next();
+            }
+            firstRequestEnd = reader.position();
+        }
+        when(cloudWatch.putMetricData(any())).thenAnswer(invocation -> {
+
+            // the second request fails, whichever request is sent first
+            PutMetricDataRequest request = invocation.getArgument(0);
+            if (request.getMetricData().get(0).getValue() == MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST) {
+
+                throw new AmazonServiceException("CW failed");
+            }
+            return null;
+        });
+        callable.setMaxRequestsInFlight(3);
+        callable.setCheckpointIntervalMillis(0);
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 5, 60_000));
+
+        //call
+        boolean pending = callable.run();
+
+        //verify
+        assertThat(pending).isTrue();
+        try (CheckpointStore store = new CheckpointStore(tmpDirPath)) {
+
+            assertThat(store.getOffset(file.getName())).isEqualTo(firstRequestEnd);
+        }
+    }
+
+    @Test
+    public void testInvalidMaxRequestsInFlight() {
+
+        //call
+        assertThrows(IllegalArgumentException.class, () -> callable.setMaxRequestsInFlight(0));
+    }
+
+    @Test
+    public void testTailingOnWriterSignal() throws Exception {
+
+        //setup
+        SpoolSignal signal = new SpoolSignal();
+        FileBasedCallable tailing = new FileBasedCallable(cloudWatch, tmpDirPath, "test", 60_000, signal);
+        tailing.setIdlePollIntervalMillis(60_000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Object> future = executor.submit(tailing);
+        awaitFirstRun();
+
+        //call
+        addToSpool(new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg"),
+                new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+        signal.signal();
+
+        //verify
+        verify(cloudWatch, timeout(5000)).putMetricData(any());
+        future.cancel(true);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTailingOnFolderChange() throws Exception {
+
+        //setup
+        FileBasedCallable tailing = new FileBasedCallable(cloudWatch, tmpDirPath, "test", 60_000);
+        tailing.setIdlePollIntervalMillis(60_000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Object> future = executor.submit(tailing);
+        awaitFirstRun();
+
+        //call
+        addToSpool(new File(tmpDirPath + "metrics-spool-2019-07-30-07_0000000001.seg"),
+                new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count).withTimestamp(new Date()));
+
+        //verify
+        verify(cloudWatch, timeout(5000)).putMetricData(any());
+        future.cancel(true);
+        executor.shutdown();
+    }
+
+    private void awaitFirstRun() throws InterruptedException {
+
+        File checkpoints = new File(tmpDirPath, CheckpointStore.FILE_NAME);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!checkpoints.exists() && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(10);
+        }
+    }
+
+    private static AmazonServiceException invalidParameter() {
+
+        AmazonServiceException invalid = new AmazonServiceException("The value for parameter MetricData.member.1.Value is invalid.");
+        invalid.setErrorCode("InvalidParameterValue");
+        invalid.setStatusCode(400);
+        return invalid;
+    }
+
+    private File quarantineFile() {
+
+        File[] files = new File(tmpDirPath).listFiles((dir, name) -> name.startsWith("metrics-quarantine-"));
+        assertThat(files).hasLength(1);
+        return files[0];
+    }
+
+    private SegmentEncoder addToSpool(File file, MetricDatum... datums) throws IOException {
+
+        SegmentEncoder encoder = new SegmentEncoder();
+        for (MetricDatum datum : datums) {
+
+            encoder.encode(datum);
+        }
+        write(file, encoder);
+        return encoder;
+    }
+
+    private void write(File file, SegmentEncoder encoder) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            ByteBuffer pending = encoder.pending();
+            while (pending.hasRemaining()) {
+
+                channel.write(pending);
+            }
+        }
+        encoder.commit();
+    }
 
     private void addToFile(File file, String s) throws IOException {
 
@@ -0,0 +1,95 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link LogFileReader} class.
+ */
+public class LogFileReaderTest {
+
+    private Path file;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        file = tempDir.resolve("metrics-logs-2019-07-30-07.log");
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+
+        //setup
+        Files.write(file, "été\nfoo\n".getBytes(StandardCharsets.UTF_8));
+
+        //call
+        try (LogFileReader reader = new LogFileReader(file, 0)) {
+
+            //verify
+            assertThat(reader.readLine()).isEqualTo("été");
+            assertThat(reader.position()).isEqualTo(6);
+            assertThat(reader.readLine()).isEqualTo("foo");
+            assertThat(reader.position()).isEqualTo(10);
+            assertThat(reader.readLine()).isNull();
+        }
+    }
+
+    @Test
+    public void testResumeFromOffset() throws IOException {
+
+        //setup
+        Files.write(file, "été\nfoo\n".getBytes(StandardCharsets.UTF_8));
+
+        //call
+        try (LogFileReader reader = new LogFileReader(file, 6)) {
+
+            //verify
+            assertThat(reader.readLine()).isEqualTo("foo");
+            assertThat(reader.readLine()).isNull();
+        }
+    }
+
+    @Test
+    public void testPartialLineIsNotRead() throws IOException {
+
+        //setup
+        Files.write(file, "foo\nbar".getBytes(StandardCharsets.UTF_8));
+
+        //call
+        try (LogFileReader reader = new LogFileReader(file, 0)) {
+
+            //verify
+            assertThat(reader.readLine()).isEqualTo("foo");
+            assertThat(reader.readLine()).isNull();
+            assertThat(reader.position()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    public void testLinesLongerThanBuffer() throws IOException {
+
+        //setup
+        String longLine = Strings.repeat("a", 200_000);
+        Files.write(file, ("foo\n" + longLine + "\nbar\n").getBytes(StandardCharsets.UTF_8));
+
+        //call
+        try (LogFileReader reader = new LogFileReader(file, 0)) {
+
+            //verify
+            assertThat(reader.readLine()).isEqualTo("foo");
+            assertThat(reader.readLine()).isEqualTo(longLine);
+            assertThat(reader.readLine()).isEqualTo("bar");
+            assertThat(reader.readLine()).isNull();
+            assertThat(reader.position()).isEqualTo(Files.size(file));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.transform.PutMetricDataRequestMarshaller;
+import com.amazonaws.util.SdkHttpUtils;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link MetricDataBatchBuilder} class.
+ */
+public class MetricDataBatchBuilderTest {
+
+    @Test
+    public void testEmptyNamespace() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new MetricDataBatchBuilder("  "));
+    }
+
+    @Test
+    public void testInvalidLimits() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MetricDataBatchBuilder("test", 0, 100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MetricDataBatchBuilder("test", 10, 0));
+    }
+
+    @Test
+    public void testMaxDatums() {
+
+        //setup
+        MetricDataBatchBuilder builder = new MetricDataBatchBuilder("test", 3, Integer.MAX_VALUE);
+
+        //call
+        List<PutMetricDataRequest> requests = builder.partition(datums(7, "m"));
+
+        //verify
+        assertThat(requests).hasSize(3);
+        assertThat(requests.get(0).getMetricData()).hasSize(3);
+        assertThat(requests.get(1).getMetricData()).hasSize(3);
+        assertThat(requests.get(2).getMetricData()).hasSize(1);
+        assertThat(requests.get(0).getNamespace()).isEqualTo("test");
+        assertThat(builder.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testMaxBytes() {
+
+        //setup
+        String longName = Strings.repeat("x", 200);
+        MetricDataBatchBuilder builder = new MetricDataBatchBuilder("test", 1000, 2048);
+
+        //call
+        List<PutMetricDataRequest> requests = builder.partition(datums(20, longName));
+
+        //verify
+        assertThat(requests.size()).isGreaterThan(1);
+        for (PutMetricDataRequest request : requests) {
+
+            assertThat(encodedSize(request)).isAtMost(2048);
+        }
+    }
+
+    @Test
+    public void testOversizedDatumIsAccepted() {
+
+        //setup
+        MetricDataBatchBuilder builder = new MetricDataBatchBuilder("test", 1000, 10);
+
+        //call & verify
+        assertThat(builder.add(datums(1, "m").get(0))).isTrue();
+        assertThat(builder.add(datums(1, "m").get(0))).isFalse();
+        assertThat(builder.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEstimateIsUpperBound() {
+
+        //setup
+        MetricDataBatchBuilder builder = new MetricDataBatchBuilder("namespace/with spaces");
+        for (int index = 0; index < 120; index++) {
+
+            builder.add(new MetricDatum()
+                    .withMetricName("GetUserDétails.Duration-" + index)
+                    .withValue(-1.2345678901234567E-300)
+                    .withUnit(Count)
+                    .withTimestamp(new Date())
+                    .withDimensions(new Dimension().withName("Host").withValue("host:8080/a b")));
+        }
+        int estimate = builder.estimatedSize();
+
+        //call
+        int actual = encodedSize(builder.build());
+
+        //verify
+        assertThat(estimate).isAtLeast(actual);
+    }
+
+    private static int encodedSize(final PutMetricDataRequest request) {
+
+        Map<String, List<String>> parameters = new PutMetricDataRequestMarshaller().marshall(request).getParameters();
+        int size = -1;
+        for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+
+            for (String value : parameter.getValue()) {
+
+                size += SdkHttpUtils.urlEncode(parameter.getKey(), false).length()
+                        + SdkHttpUtils.urlEncode(value, false).length() + 2;
+            }
+        }
+        return size;
+    }
+
+    private static List<MetricDatum> datums(final int count, final String name) {
+
+        List<MetricDatum> datums = Lists.newArrayList();
+        for (int index = 0; index < count; index++) {
+
+            datums.add(new MetricDatum().withMetricName(name).withValue(1.0).withUnit(Count).withTimestamp(new Date()));
+        }
+        return datums;
+    }
+}
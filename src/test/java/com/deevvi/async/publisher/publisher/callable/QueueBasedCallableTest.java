@@ -2,23 +2,31 @@ package com.deevvi.async.publisher.publisher.callable;
 
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsync;
 import com.amazonaws.services.cloudwatch.model.MetricDatum;
 import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataResult;
+import com.deevvi.async.publisher.publisher.MetricsPublisher;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -51,7 +59,7 @@ public class QueueBasedCallableTest {
     public void testNullQueue() {
 
         //call
-        Assertions.assertThrows(NullPointerException.class, () ->   new QueueBasedCallable(null, cloudWatch, "test", 10));
+        Assertions.assertThrows(NullPointerException.class, () ->   new QueueBasedCallable((BlockingQueue<MetricDatum>) null, cloudWatch, "test", 10));
     }
 
     @Test
@@ -101,9 +109,109 @@ public class QueueBasedCallableTest {
         Thread.sleep(2 * maxMillisToWait);
         service.shutdown();
 
+        //verify
+        verify(cloudWatch, times(3)).putMetricData(any());
+        verifyNoMoreInteractions(cloudWatch);
+        assertThat(callable.getDroppedDatums()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRejectedRequestIsNotRetried() throws Exception {
+
+        //setup
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+        AmazonServiceException invalid = new AmazonServiceException("invalid");
+        invalid.setErrorCode("InvalidParameterValue");
+        invalid.setStatusCode(400);
+        when(cloudWatch.putMetricData(any())).thenThrow(invalid);
+
+        //call
+        service.submit(callable);
+        Thread.sleep(2 * maxMillisToWait);
+        service.shutdownNow();
+
+        //verify
+        verify(cloudWatch, times(1)).putMetricData(any());
+        verifyNoMoreInteractions(cloudWatch);
+        assertThat(callable.getDroppedDatums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRejectedRequestIsSpilled() throws Exception {
+
+        //setup
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+        AmazonServiceException invalid = new AmazonServiceException("invalid");
+        invalid.setErrorCode("InvalidParameterValue");
+        invalid.setStatusCode(400);
+        when(cloudWatch.putMetricData(any())).thenThrow(invalid);
+        MetricsPublisher fallback = Mockito.mock(MetricsPublisher.class);
+        callable.setFallback(fallback);
+
+        //call
+        service.submit(callable);
+        Thread.sleep(2 * maxMillisToWait);
+        service.shutdownNow();
+
+        //verify
+        verify(fallback, times(1)).publish(any());
+        assertThat(callable.getDroppedDatums()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAsyncClientRejectedRequestIsDropped() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = Mockito.mock(AmazonCloudWatchAsync.class);
+        AmazonServiceException invalid = new AmazonServiceException("invalid");
+        invalid.setErrorCode("InvalidParameterValue");
+        invalid.setStatusCode(400);
+        when(asyncCloudWatch.putMetricDataAsync(any(), any())).thenAnswer(invocation -> {
+            AsyncHandler<PutMetricDataRequest, PutMetricDataResult> handler = invocation.getArgument(1);
+            handler.onError(invalid);
+            return null;
+        });
+        QueueBasedCallable asyncCallable = new QueueBasedCallable(metricsQueue, asyncCloudWatch, "test", 100, 1);
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+        metricsQueue.put(new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(Count));
+
+        //call
+        service.submit(asyncCallable);
+        Thread.sleep(500);
+        service.shutdownNow();
+
+        //verify
+        verify(asyncCloudWatch, times(1)).putMetricDataAsync(any(), any());
+        assertThat(asyncCallable.getDroppedDatums()).isEqualTo(2);
+    }
+
+    @Test
+    public void testOpenCircuitStopsRequests() throws Exception {
+
+        //setup
+        callable.setRetryPolicy(new RetryPolicy(1, 1, 1, 1, 60_000));
+        when(cloudWatch.putMetricData(any())).thenThrow(new AmazonClientException("exception"));
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+
+        //call
+        service.submit(callable);
+        Thread.sleep(2 * maxMillisToWait);
+        metricsQueue.put(new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(Count));
+        Thread.sleep(2 * maxMillisToWait);
+        service.shutdownNow();
+
         //verify
         verify(cloudWatch, times(1)).putMetricData(any());
         verifyNoMoreInteractions(cloudWatch);
+        assertThat(metricsQueue).isEmpty();
+        assertThat(callable.getDroppedDatums()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNullRetryPolicy() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> callable.setRetryPolicy(null));
     }
 
     @Test
@@ -139,7 +247,7 @@ public class QueueBasedCallableTest {
 
         //call
         service.submit(callable);
-        Thread.sleep(3 * maxMillisToWait);
+        Thread.sleep(5 * maxMillisToWait / 2);
         metricsQueue.put(new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(Count));
         service.shutdown();
 
@@ -152,7 +260,7 @@ public class QueueBasedCallableTest {
     public void testMaxBatchSize() throws Exception {
 
         //setup
-        for (int index = 0; index < 20; index++) {
+        for (int index = 0; index <= MetricDataBatchBuilder.MAX_DATUMS_PER_REQUEST; index++) {
             metricsQueue.put(new MetricDatum().withMetricName("m" + index).withValue(1.0).withUnit(Count));
         }
 
@@ -166,4 +274,142 @@ public class QueueBasedCallableTest {
         verify(cloudWatch, times(2)).putMetricData(any());
         verifyNoMoreInteractions(cloudWatch);
     }
+
+    @Test
+    public void testAggregation() throws Exception {
+
+        //setup
+        callable.setAggregationEnabled(true);
+        for (int index = 0; index < 50; index++) {
+            metricsQueue.put(new MetricDatum().withMetricName("m1").withValue((double) index).withUnit(Count));
+        }
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+
+        //call
+        service.submit(callable);
+        Thread.sleep(2 * maxMillisToWait);
+        service.shutdown();
+
+        //verify
+        verify(cloudWatch, times(1)).putMetricData(captor.capture());
+        verifyNoMoreInteractions(cloudWatch);
+        List<MetricDatum> published = captor.getValue().getMetricData();
+        assertThat(published).hasSize(1);
+        assertThat(published.get(0).getStatisticValues().getSampleCount()).isEqualTo(50.0);
+        assertThat(published.get(0).getStatisticValues().getSum()).isEqualTo(1225.0);
+    }
+
+    @Test
+    public void testInvalidMaxInFlightRequests() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QueueBasedCallable(metricsQueue, Mockito.mock(AmazonCloudWatchAsync.class), "test", 10, 0));
+    }
+
+    @Test
+    public void testAsyncClientSuccess() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = Mockito.mock(AmazonCloudWatchAsync.class);
+        when(asyncCloudWatch.putMetricDataAsync(any(), any())).thenAnswer(invocation -> {
+            AsyncHandler<PutMetricDataRequest, PutMetricDataResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), new PutMetricDataResult());
+            return null;
+        });
+        QueueBasedCallable asyncCallable = new QueueBasedCallable(metricsQueue, asyncCloudWatch, "test", maxMillisToWait, 1);
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+
+        //call
+        service.submit(asyncCallable);
+        Thread.sleep(2 * maxMillisToWait);
+        metricsQueue.put(new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(Count));
+        Thread.sleep(2 * maxMillisToWait);
+        service.shutdown();
+
+        //verify
+        verify(asyncCloudWatch, times(2)).putMetricDataAsync(any(), any());
+        verifyNoMoreInteractions(asyncCloudWatch);
+    }
+
+    @Test
+    public void testAsyncClientInFlightWindow() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = Mockito.mock(AmazonCloudWatchAsync.class);
+        QueueBasedCallable asyncCallable = new QueueBasedCallable(metricsQueue, asyncCloudWatch, "test", 100, 2);
+
+        //call
+        service.submit(asyncCallable);
+        for (int index = 0; index < 4; index++) {
+
+            metricsQueue.put(new MetricDatum().withMetricName("m" + index).withValue(1.0).withUnit(Count));
+            Thread.sleep(300);
+        }
+        service.shutdown();
+
+        //verify
+        verify(asyncCloudWatch, times(2)).putMetricDataAsync(any(), any());
+        verifyNoMoreInteractions(asyncCloudWatch);
+    }
+
+    @Test
+    public void testAsyncClientRetriesFailedRequest() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = Mockito.mock(AmazonCloudWatchAsync.class);
+        AtomicInteger calls = new AtomicInteger();
+        when(asyncCloudWatch.putMetricDataAsync(any(), any())).thenAnswer(invocation -> {
+            AsyncHandler<PutMetricDataRequest, PutMetricDataResult> handler = invocation.getArgument(1);
+            if (calls.incrementAndGet() < 3) {
+                handler.onError(new AmazonClientException("exception"));
+            } else {
+                handler.onSuccess(invocation.getArgument(0), new PutMetricDataResult());
+            }
+            return null;
+        });
+        QueueBasedCallable asyncCallable = new QueueBasedCallable(metricsQueue, asyncCloudWatch, "test", 100, 1);
+        asyncCallable.setRetryPolicy(new RetryPolicy(3, 10, 10, 5, 60_000));
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+
+        //call
+        service.submit(asyncCallable);
+        Thread.sleep(1000);
+        service.shutdownNow();
+
+        //verify
+        ArgumentCaptor<PutMetricDataRequest> captor = ArgumentCaptor.forClass(PutMetricDataRequest.class);
+        verify(asyncCloudWatch, times(3)).putMetricDataAsync(captor.capture(), any());
+        assertThat(captor.getAllValues().get(2).getMetricData()).hasSize(1);
+        assertThat(asyncCallable.getDroppedDatums()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAsyncClientDropsWhileCircuitIsOpen() throws Exception {
+
+        //setup
+        AmazonCloudWatchAsync asyncCloudWatch = Mockito.mock(AmazonCloudWatchAsync.class);
+        when(asyncCloudWatch.putMetricDataAsync(any(), any())).thenAnswer(invocation -> {
+            AsyncHandler<PutMetricDataRequest, PutMetricDataResult> handler = invocation.getArgument(1);
+            handler.onError(new AmazonClientException("exception"));
+            return null;
+        });
+        QueueBasedCallable asyncCallable = new QueueBasedCallable(metricsQueue, asyncCloudWatch, "test", 100, 1);
+        asyncCallable.setRetryPolicy(new RetryPolicy(1, 1, 1, 1, 60_000));
+        metricsQueue.put(new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count));
+
+        //call
+        service.submit(asyncCallable);
+        Thread.sleep(300);
+        for (int index = 0; index < 3; index++) {
+
+            metricsQueue.put(new MetricDatum().withMetricName("m" + index).withValue(1.0).withUnit(Count));
+            Thread.sleep(300);
+        }
+        service.shutdownNow();
+
+        //verify
+        verify(asyncCloudWatch, times(1)).putMetricDataAsync(any(), any());
+        assertThat(metricsQueue).isEmpty();
+        assertThat(asyncCallable.getDroppedDatums()).isEqualTo(4);
+    }
 }
@@ -0,0 +1,221 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link RetryPolicy} class.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+public class RetryPolicyTest {
+
+    @Test
+    public void testInvalidArguments() {
+
+        //call
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, 1, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 10, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 1, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 1, 1, 1, 0));
+    }
+
+    @Test
+    public void testClassify() {
+
+        //verify
+        assertThat(RetryPolicy.classify(serviceException("Throttling", 400))).isEqualTo(RetryPolicy.ErrorClass.THROTTLING);
+        assertThat(RetryPolicy.classify(serviceException("TooManyRequests", 429))).isEqualTo(RetryPolicy.ErrorClass.THROTTLING);
+        assertThat(RetryPolicy.classify(serviceException("RequestLimitExceeded", 503))).isEqualTo(RetryPolicy.ErrorClass.THROTTLING);
+        assertThat(RetryPolicy.classify(serviceException("InternalFailure", 500))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(serviceException("ServiceUnavailable", 503))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(new AmazonClientException("connection reset"))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(serviceException("AccessDenied", 403))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(serviceException("RequestTimeout", 400))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(serviceException("RequestExpired", 400))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(serviceException("InvalidParameterValue", 400))).isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(serviceException("MissingParameter", 400))).isEqualTo(RetryPolicy.ErrorClass.PERMANENT);
+        assertThat(RetryPolicy.classify(new IllegalStateException("Connection pool shut down"))).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+        assertThat(RetryPolicy.classify(new NullPointerException())).isEqualTo(RetryPolicy.ErrorClass.RETRYABLE);
+    }
+
+    @Test
+    public void testBackoffIsJitteredUnderExponentialCeiling() {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 5, 1000);
+
+        //call
+        long maxFirst = 0;
+        long maxThrottled = 0;
+        long maxCapped = 0;
+        for (int index = 0; index < 1000; index++) {
+
+            maxFirst = Math.max(maxFirst, policy.getBackoffMillis(0, RetryPolicy.ErrorClass.RETRYABLE));
+            maxThrottled = Math.max(maxThrottled, policy.getBackoffMillis(0, RetryPolicy.ErrorClass.THROTTLING));
+            maxCapped = Math.max(maxCapped, policy.getBackoffMillis(40, RetryPolicy.ErrorClass.RETRYABLE));
+        }
+
+        //verify
+        assertThat(maxFirst).isAtMost(100L);
+        assertThat(maxThrottled).isAtMost(200L);
+        assertThat(maxThrottled).isGreaterThan(100L);
+        assertThat(maxCapped).isAtMost(1000L);
+        assertThat(maxCapped).isGreaterThan(500L);
+    }
+
+    @Test
+    public void testRetryableFailureIsRetried() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(3, 1, 1, 5, 1000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        //call
+        RetryPolicy.Outcome outcome = policy.execute(() -> {
+
+            if (attempts.incrementAndGet() < 3) {
+
+                throw serviceException("Throttling", 400);
+            }
+        }, false);
+
+        //verify
+        assertThat(outcome).isEqualTo(RetryPolicy.Outcome.SENT);
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(policy.getThrottledCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAttemptsAreLimited() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(3, 1, 1, 5, 1000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        //call
+        RetryPolicy.Outcome outcome = policy.execute(() -> {
+
+            attempts.incrementAndGet();
+            throw new AmazonClientException("connection reset");
+        }, false);
+
+        //verify
+        assertThat(outcome).isEqualTo(RetryPolicy.Outcome.FAILED);
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testPermanentFailureIsNotRetried() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(3, 1, 1, 1, 1000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        //call
+        RetryPolicy.Outcome outcome = policy.execute(() -> {
+
+            attempts.incrementAndGet();
+            throw serviceException("InvalidParameterValue", 400);
+        }, false);
+
+        //verify
+        assertThat(outcome).isEqualTo(RetryPolicy.Outcome.REJECTED);
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(policy.getRejectedCount()).isEqualTo(1);
+        assertThat(policy.allowRequest()).isTrue();
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(1, 1, 1, 2, 60_000);
+        AtomicInteger attempts = new AtomicInteger();
+        Runnable failing = () -> {
+
+            attempts.incrementAndGet();
+            throw new AmazonClientException("connection reset");
+        };
+
+        //call
+        policy.execute(failing, false);
+        policy.execute(failing, false);
+        RetryPolicy.Outcome outcome = policy.execute(failing, false);
+
+        //verify
+        assertThat(outcome).isEqualTo(RetryPolicy.Outcome.FAILED);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(policy.getCircuitOpenedCount()).isEqualTo(1);
+        assertThat(policy.getRemainingOpenMillis()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testHalfOpenCircuitLetsOneProbeThrough() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(1, 1, 1, 1, 50);
+        policy.onFailure(new AmazonClientException("connection reset"));
+        assertThat(policy.allowRequest()).isFalse();
+        Thread.sleep(100);
+
+        //call
+        boolean probe = policy.allowRequest();
+        boolean other = policy.allowRequest();
+        policy.onSuccess();
+
+        //verify
+        assertThat(probe).isTrue();
+        assertThat(other).isFalse();
+        assertThat(policy.allowRequest()).isTrue();
+        assertThat(policy.getRemainingOpenMillis()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testFailedProbeOpensCircuitAgain() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(1, 1, 1, 1, 50);
+        policy.onFailure(new AmazonClientException("connection reset"));
+        Thread.sleep(100);
+
+        //call
+        assertThat(policy.allowRequest()).isTrue();
+        policy.onFailure(new AmazonClientException("connection reset"));
+
+        //verify
+        assertThat(policy.allowRequest()).isFalse();
+        assertThat(policy.getCircuitOpenedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testExecuteWaitsWhileOpen() throws Exception {
+
+        //setup
+        RetryPolicy policy = new RetryPolicy(1, 1, 1, 1, 100);
+        policy.onFailure(new AmazonClientException("connection reset"));
+        long start = System.currentTimeMillis();
+
+        //call
+        RetryPolicy.Outcome outcome = policy.execute(() -> { }, true);
+
+        //verify
+        assertThat(outcome).isEqualTo(RetryPolicy.Outcome.SENT);
+        assertThat(System.currentTimeMillis() - start).isAtLeast(50L);
+    }
+
+    private static AmazonServiceException serviceException(final String errorCode, final int statusCode) {
+
+        AmazonServiceException exception = new AmazonServiceException(errorCode);
+        exception.setErrorCode(errorCode);
+        exception.setStatusCode(statusCode);
+        return exception;
+    }
+}
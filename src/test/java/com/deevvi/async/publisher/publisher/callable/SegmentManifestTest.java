@@ -0,0 +1,214 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SegmentManifest} class.
+ */
+public class SegmentManifestTest {
+
+    private static final String FIRST = "metrics-spool-2019-07-30-07_0000000001.seg";
+    private static final String SECOND = "metrics-spool-2019-07-30-08_0000000001.seg";
+
+    private Path directory;
+    private CheckpointStore store;
+    private SegmentManifest manifest;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) throws IOException {
+
+        directory = tempDir;
+        store = new CheckpointStore(tempDir.toString());
+        manifest = new SegmentManifest(tempDir.toString(), store);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+
+        store.close();
+    }
+
+    @Test
+    public void testNullCheckpointStore() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new SegmentManifest(directory.toString(), null));
+    }
+
+    @Test
+    public void testBuild() throws IOException {
+
+        //setup
+        write(FIRST, 10);
+        write(SECOND, 10);
+        write("other.txt", 10);
+        store.update(FIRST, 10);
+
+        //call
+        manifest.refresh();
+
+        //verify
+        assertThat(names(manifest.getUndrained())).containsExactly(SECOND);
+        assertThat(manifest.getUndrained().get(0).getState()).isEqualTo(SegmentManifest.State.ACTIVE);
+    }
+
+    @Test
+    public void testNewSegmentSealsActiveOne() throws IOException {
+
+        //setup
+        write(FIRST, 10);
+        manifest.refresh();
+        SegmentManifest.Segment first = manifest.getUndrained().get(0);
+
+        //call
+        write(SECOND, 10);
+        setModifiedTime(System.currentTimeMillis() + 5000);
+        manifest.refresh();
+
+        //verify
+        assertThat(names(manifest.getUndrained())).containsExactly(FIRST, SECOND).inOrder();
+        assertThat(first.getState()).isEqualTo(SegmentManifest.State.SEALED);
+    }
+
+    @Test
+    public void testUnchangedFolderIsNotListed() throws IOException {
+
+        //setup
+        long modifiedTime = System.currentTimeMillis() - 10_000;
+        setModifiedTime(modifiedTime);
+        manifest.refresh();
+        write(FIRST, 10);
+        setModifiedTime(modifiedTime);
+
+        //call
+        manifest.refresh();
+
+        //verify
+        assertThat(manifest.getUndrained()).isEmpty();
+        manifest.rebuild();
+        assertThat(names(manifest.getUndrained())).containsExactly(FIRST);
+    }
+
+    @Test
+    public void testPublishedSegmentIsDrained() throws IOException {
+
+        //setup
+        write(FIRST, 10);
+        write(SECOND, 10);
+        manifest.refresh();
+        SegmentManifest.Segment first = manifest.getUndrained().get(0);
+        store.update(FIRST, 10);
+
+        //call
+        manifest.update(first, true);
+
+        //verify
+        assertThat(first.getState()).isEqualTo(SegmentManifest.State.DRAINED);
+        assertThat(names(manifest.getUndrained())).containsExactly(SECOND);
+    }
+
+    @Test
+    public void testExpiredSegments() throws Exception {
+
+        //setup
+        write(FIRST, 10);
+        write(SECOND, 10);
+        store.update(FIRST, 10);
+        store.update(SECOND, 5);
+        manifest.refresh();
+        Thread.sleep(20);
+
+        //call
+        List<SegmentManifest.Segment> expired = manifest.getExpired(10);
+
+        //verify
+        assertThat(names(expired)).containsExactly(FIRST);
+        assertThat(expired.get(0).getState()).isEqualTo(SegmentManifest.State.DELETABLE);
+        manifest.remove(expired.get(0));
+        assertThat(manifest.getExpired(10)).isEmpty();
+        assertThat(names(manifest.getUndrained())).containsExactly(SECOND);
+    }
+
+    @Test
+    public void testRecentSegmentsAreNotExpired() throws IOException {
+
+        //setup
+        write(FIRST, 10);
+        store.update(FIRST, 10);
+        manifest.refresh();
+
+        //call
+        List<SegmentManifest.Segment> expired = manifest.getExpired(60_000);
+
+        //verify
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    public void testActiveSegmentIsNotExpired() throws Exception {
+
+        //setup
+        write(FIRST, 10);
+        store.update(FIRST, 10);
+        manifest.refresh();
+        Thread.sleep(20);
+
+        //call
+        List<SegmentManifest.Segment> expired = manifest.getExpired(10);
+        write(SECOND, 10);
+        setModifiedTime(System.currentTimeMillis() + 5000);
+        manifest.refresh();
+        List<SegmentManifest.Segment> expiredOnceSealed = manifest.getExpired(10);
+
+        //verify
+        assertThat(expired).isEmpty();
+        assertThat(names(expiredOnceSealed)).containsExactly(FIRST);
+    }
+
+    @Test
+    public void testDeletedSegmentIsRemoved() throws IOException {
+
+        //setup
+        write(FIRST, 10);
+        write(SECOND, 10);
+        manifest.refresh();
+
+        //call
+        Files.delete(directory.resolve(SECOND));
+        setModifiedTime(System.currentTimeMillis() + 5000);
+        manifest.refresh();
+
+        //verify
+        assertThat(names(manifest.getUndrained())).containsExactly(FIRST);
+        assertThat(manifest.getUndrained().get(0).getState()).isEqualTo(SegmentManifest.State.ACTIVE);
+    }
+
+    private void write(final String name, final int size) throws IOException {
+
+        Files.write(directory.resolve(name), new byte[size]);
+    }
+
+    private void setModifiedTime(final long timeMillis) throws IOException {
+
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(timeMillis));
+    }
+
+    private static List<String> names(final List<SegmentManifest.Segment> segments) {
+
+        return segments.stream().map(SegmentManifest.Segment::getFile).map(File::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,228 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SendPipeline} class.
+ */
+public class SendPipelineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInvalidMaxInFlight() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SendPipeline(request -> 1, executor, 0));
+    }
+
+    @Test
+    public void testRequestsAreAcknowledgedInOrder() throws Exception {
+
+        //setup
+        CountDownLatch firstSent = new CountDownLatch(1);
+        CountDownLatch secondSent = new CountDownLatch(1);
+        SendPipeline pipeline = new SendPipeline(request -> {
+
+            if (request.getNamespace().equals("first")) {
+
+                awaitQuietly(firstSent);
+            } else {
+
+                secondSent.countDown();
+            }
+            return 1;
+        }, executor, 2);
+
+        //call
+        pipeline.send(request("first"), 10, 5);
+        pipeline.send(request("second"), 20, 15);
+        secondSent.await(5, TimeUnit.SECONDS);
+
+        //verify
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(-1);
+        firstSent.countDown();
+        assertThat(pipeline.await()).isTrue();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(20);
+        assertThat(pipeline.getAcknowledgedDictionaryOffset()).isEqualTo(15);
+    }
+
+    @Test
+    public void testFailedRequestStopsSending() throws Exception {
+
+        //setup
+        AtomicInteger sent = new AtomicInteger();
+        SendPipeline pipeline = new SendPipeline(request -> sent.incrementAndGet() > 1 ? 1 : 0, Runnable::run, 1);
+
+        //call
+        boolean first = pipeline.send(request("first"), 10, -1);
+        boolean second = pipeline.send(request("second"), 20, -1);
+
+        //verify
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(sent.get()).isEqualTo(1);
+        assertThat(pipeline.await()).isFalse();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testFailureKeepsEarlierAcknowledgements() throws Exception {
+
+        //setup
+        SendPipeline pipeline = new SendPipeline(request -> request.getNamespace().equals("first") ? 1 : 0, Runnable::run, 1);
+
+        //call
+        pipeline.send(request("first"), 10, -1);
+        pipeline.send(request("second"), 20, -1);
+
+        //verify
+        assertThat(pipeline.await()).isFalse();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(10);
+    }
+
+    @Test
+    public void testRequestPublishedInPartIsAcknowledgedToItsLastDatumPublished() throws Exception {
+
+        //setup
+        SendPipeline pipeline = new SendPipeline(request -> request.getNamespace().equals("first") ? 1 : 2, Runnable::run, 1);
+        DatumOffsets datumOffsets = new DatumOffsets(3);
+        datumOffsets.add(14, 3);
+        datumOffsets.add(17, 3);
+        datumOffsets.add(20, 18);
+        PutMetricDataRequest second = new PutMetricDataRequest().withNamespace("second")
+                .withMetricData(new MetricDatum().withMetricName("m1"), new MetricDatum().withMetricName("m2"), new MetricDatum().withMetricName("m3"));
+
+        //call
+        pipeline.send(request("first"), 10, -1);
+        pipeline.send(second, 20, 18, datumOffsets.take());
+        boolean sent = pipeline.send(request("third"), 30, 18);
+
+        //verify
+        assertThat(sent).isFalse();
+        assertThat(pipeline.await()).isFalse();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(17);
+        assertThat(pipeline.getAcknowledgedDictionaryOffset()).isEqualTo(3);
+        assertThat(datumOffsets.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testEmptyRequestIsNotSent() throws Exception {
+
+        //setup
+        AtomicInteger sent = new AtomicInteger();
+        SendPipeline pipeline = new SendPipeline(request -> sent.incrementAndGet(), executor, 1);
+
+        //call
+        pipeline.send(new PutMetricDataRequest().withNamespace("empty"), 10, -1);
+
+        //verify
+        assertThat(pipeline.await()).isTrue();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(10);
+        assertThat(sent.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+
+        //setup
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        SendPipeline pipeline = new SendPipeline(request -> {
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleepQuietly(20);
+            inFlight.decrementAndGet();
+            return 1;
+        }, executor, 2);
+
+        //call
+        for (int index = 1; index <= 6; index++) {
+
+            pipeline.send(request("r" + index), index * 10, -1);
+        }
+
+        //verify
+        assertThat(pipeline.await()).isTrue();
+        assertThat(pipeline.getAcknowledgedOffset()).isEqualTo(60);
+        assertThat(maxInFlight.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSharedMaxInFlight() throws Exception {
+
+        //setup
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ToIntFunction<PutMetricDataRequest> sender = request -> {
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleepQuietly(20);
+            inFlight.decrementAndGet();
+            return 1;
+        };
+        Semaphore sharedWindow = new Semaphore(2);
+        SendPipeline first = new SendPipeline(sender, executor, 3, sharedWindow);
+        SendPipeline second = new SendPipeline(sender, executor, 3, sharedWindow);
+
+        //call
+        for (int index = 1; index <= 6; index++) {
+
+            first.send(request("r" + index), index * 10, -1);
+            second.send(request("r" + index), index * 10, -1);
+        }
+
+        //verify
+        assertThat(first.await()).isTrue();
+        assertThat(second.await()).isTrue();
+        assertThat(maxInFlight.get()).isEqualTo(2);
+        assertThat(sharedWindow.availablePermits()).isEqualTo(2);
+    }
+
+    private static PutMetricDataRequest request(final String namespace) {
+
+        return new PutMetricDataRequest().withNamespace(namespace).withMetricData(new MetricDatum().withMetricName("m1"));
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+
+        try {
+
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(final long millis) {
+
+        try {
+
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.deevvi.async.publisher.publisher.callable;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Milliseconds;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link StatisticSetAggregator} class.
+ */
+public class StatisticSetAggregatorTest {
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    public void testInvalidCapacity() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new StatisticSetAggregator(0));
+    }
+
+    @Test
+    public void testSameKeyIsFolded() {
+
+        //setup
+        StatisticSetAggregator aggregator = new StatisticSetAggregator(16);
+        long bucket = 1000 * MINUTE;
+
+        //call
+        assertThat(aggregator.add(datum("m1", 3.0, Milliseconds, bucket + 1))).isTrue();
+        assertThat(aggregator.add(datum("m1", 1.0, Milliseconds, bucket + 2000))).isTrue();
+        assertThat(aggregator.add(datum("m1", 8.0, Milliseconds, bucket + MINUTE - 1))).isTrue();
+        List<MetricDatum> result = Lists.newArrayList();
+        aggregator.drainTo(result);
+
+        //verify
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getMetricName()).isEqualTo("m1");
+        assertThat(result.get(0).getUnit()).isEqualTo(Milliseconds.toString());
+        assertThat(result.get(0).getTimestamp()).isEqualTo(new Date(bucket));
+        assertThat(result.get(0).getValue()).isNull();
+        assertThat(result.get(0).getStatisticValues()).isEqualTo(new StatisticSet()
+                .withSum(12.0)
+                .withMinimum(1.0)
+                .withMaximum(8.0)
+                .withSampleCount(3.0));
+        assertThat(aggregator.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDifferentKeysAreKeptApart() {
+
+        //setup
+        StatisticSetAggregator aggregator = new StatisticSetAggregator(16);
+        long bucket = 1000 * MINUTE;
+
+        //call
+        aggregator.add(datum("m1", 1.0, Count, bucket));
+        aggregator.add(datum("m2", 1.0, Count, bucket));
+        aggregator.add(datum("m1", 1.0, Milliseconds, bucket));
+        aggregator.add(datum("m1", 1.0, Count, bucket + MINUTE));
+        aggregator.add(datum("m1", 1.0, Count, bucket));
+        List<MetricDatum> result = Lists.newArrayList();
+        aggregator.drainTo(result);
+
+        //verify
+        assertThat(result).hasSize(4);
+        assertThat(result.get(0).getStatisticValues().getSampleCount()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void testNotAggregatableDatums() {
+
+        //setup
+        StatisticSetAggregator aggregator = new StatisticSetAggregator(16);
+
+        //call & verify
+        assertThat(aggregator.add(new MetricDatum().withMetricName("m1").withUnit(Count))).isFalse();
+        assertThat(aggregator.add(datum("m1", Double.NaN, Count, 0))).isFalse();
+        assertThat(aggregator.add(datum("m1", 1.0, Count, 0).withStorageResolution(1))).isFalse();
+        assertThat(aggregator.add(datum("m1", 1.0, Count, 0).withDimensions(new Dimension().withName("d").withValue("v")))).isFalse();
+        assertThat(aggregator.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testFullAggregator() {
+
+        //setup
+        StatisticSetAggregator aggregator = new StatisticSetAggregator(2);
+
+        //call
+        aggregator.add(datum("m1", 1.0, Count, 0));
+        aggregator.add(datum("m2", 1.0, Count, 0));
+
+        //verify
+        assertThat(aggregator.isFull()).isTrue();
+        assertThat(aggregator.add(datum("m3", 1.0, Count, 0))).isFalse();
+        assertThat(aggregator.add(datum("m1", 5.0, Count, 0))).isTrue();
+
+        List<MetricDatum> result = Lists.newArrayList();
+        aggregator.drainTo(result);
+        assertThat(result).hasSize(2);
+        assertThat(aggregator.isFull()).isFalse();
+        assertThat(aggregator.add(datum("m3", 1.0, Count, 0))).isTrue();
+    }
+
+    private static MetricDatum datum(final String name, final double value, final StandardUnit unit, final long timestamp) {
+
+        return new MetricDatum()
+                .withMetricName(name)
+                .withValue(value)
+                .withUnit(unit)
+                .withTimestamp(new Date(timestamp));
+    }
+}
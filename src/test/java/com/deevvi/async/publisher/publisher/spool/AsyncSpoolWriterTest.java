@@ -0,0 +1,180 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.datum;
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.readAll;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link AsyncSpoolWriter} class.
+ */
+public class AsyncSpoolWriterTest {
+
+    private String directory;
+    private long now;
+    private SpoolWriter spoolWriter;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        directory = tempDir.toAbsolutePath().toString();
+        now = System.currentTimeMillis();
+        spoolWriter = new SpoolWriter(directory, () -> now);
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        spoolWriter.close();
+    }
+
+    @Test
+    public void testNullSpoolWriter() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new AsyncSpoolWriter(null, 10));
+    }
+
+    @Test
+    public void testNegativeDurabilityWindow() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AsyncSpoolWriter(spoolWriter, -1));
+    }
+
+    @Test
+    public void testAppendAndFlush() throws IOException {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 0);
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0), datum("m2", 2.0)));
+        writer.append(ImmutableList.of(datum("m1", 3.0)));
+        writer.flush();
+
+        //verify
+        assertThat(readAll(segment(), 0)).containsExactly(datum("m1", 1.0), datum("m2", 2.0), datum("m1", 3.0)).inOrder();
+        writer.close();
+    }
+
+    @Test
+    public void testBatchesOfAWindowAreWrittenTogether() throws IOException {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 60_000);
+
+        //call
+        for (int index = 0; index < 10; index++) {
+
+            writer.append(ImmutableList.of(datum("m1", index)));
+        }
+        writer.flush();
+
+        //verify
+        assertThat(readAll(segment(), 0)).hasSize(10);
+        assertThat(spoolWriter.getCommits()).isEqualTo(1);
+        writer.close();
+    }
+
+    @Test
+    public void testAppendedListIsCopied() throws IOException {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 60_000);
+        List<MetricDatum> metrics = Lists.newArrayList(datum("m1", 1.0));
+
+        //call
+        writer.append(metrics);
+        metrics.clear();
+        writer.flush();
+
+        //verify
+        assertThat(readAll(segment(), 0)).containsExactly(datum("m1", 1.0));
+        writer.close();
+    }
+
+    @Test
+    public void testInvalidBatchIsDropped() throws IOException {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 60_000);
+        MetricDatum invalid = datum("m2", 2.0).withDimensions(new Dimension().withName("Host"));
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.append(ImmutableList.of(datum("m2", 1.0), invalid));
+        writer.append(ImmutableList.of(datum("m3", 3.0)));
+        writer.flush();
+
+        //verify
+        assertThat(readAll(segment(), 0)).containsExactly(datum("m1", 1.0), datum("m3", 3.0)).inOrder();
+        assertThat(writer.getDroppedMetrics()).isEqualTo(2);
+        writer.close();
+    }
+
+    @Test
+    public void testCloseWritesPendingBatches() throws IOException {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 60_000);
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //call
+        writer.close();
+
+        //verify
+        assertThat(readAll(segment(), 0)).containsExactly(datum("m1", 1.0));
+    }
+
+    @Test
+    public void testFailingWriteStopsRetryingOnClose() throws Exception {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 0);
+        spoolWriter.close();
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        // long enough for the retry delay to grow past the close latency
+        Thread.sleep(1000);
+
+        //call
+        long start = System.currentTimeMillis();
+        writer.close();
+
+        //verify
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000L);
+        assertThat(readAll(segment(), 0)).isEmpty();
+    }
+
+    @Test
+    public void testAppendAfterClose() {
+
+        //setup
+        AsyncSpoolWriter writer = new AsyncSpoolWriter(spoolWriter, 0);
+        writer.close();
+
+        //call
+        Assertions.assertThrows(IOException.class, () -> writer.append(ImmutableList.of(datum("m1", 1.0))));
+        Assertions.assertThrows(IOException.class, writer::flush);
+    }
+
+    private Path segment() {
+
+        return Paths.get(directory + FileUtils.generateSpoolFileSuffix(now, 1));
+    }
+}
@@ -0,0 +1,95 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Objects;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link QuarantineWriter} class.
+ */
+public class QuarantineWriterTest {
+
+    private String directory;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        directory = tempDir.toAbsolutePath().toString() + "/";
+    }
+
+    @Test
+    public void testNullDirectory() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new QuarantineWriter(" "));
+    }
+
+    @Test
+    public void testDatumsAreWrittenWithTheirError() throws IOException {
+
+        //setup
+        MetricDatum nan = new MetricDatum().withMetricName("m1").withValue(Double.NaN).withUnit(Count);
+        MetricDatum old = new MetricDatum().withMetricName("m2").withValue(1.0).withUnit(Count).withTimestamp(new Date(0));
+
+        //call
+        try (QuarantineWriter writer = new QuarantineWriter(directory)) {
+
+            writer.write(nan, "The value NaN is invalid.");
+            writer.write(old, "The timestamp is too old.");
+
+            //verify
+            assertThat(writer.getQuarantinedCount()).isEqualTo(2);
+        }
+        File[] files = Objects.requireNonNull(new File(directory).listFiles());
+        assertThat(files).hasLength(1);
+        assertThat(FileUtils.isQuarantineFile(files[0])).isTrue();
+        try (SegmentReader reader = new SegmentReader(files[0].toPath(), 0)) {
+
+            assertThat(reader.next().getMetricName()).isEqualTo("m1");
+            assertThat(reader.getError()).isEqualTo("The value NaN is invalid.");
+            assertThat(reader.next()).isEqualTo(old);
+            assertThat(reader.getError()).isEqualTo("The timestamp is too old.");
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testSegmentIsResumedAfterRestart() throws IOException {
+
+        //setup
+        MetricDatum first = new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(Count);
+        MetricDatum second = new MetricDatum().withMetricName("m1").withValue(2.0).withUnit(Count);
+        try (QuarantineWriter writer = new QuarantineWriter(directory)) {
+
+            writer.write(first, "error 1");
+        }
+
+        //call
+        try (QuarantineWriter writer = new QuarantineWriter(directory)) {
+
+            writer.write(second, "error 2");
+        }
+
+        //verify
+        File[] files = Objects.requireNonNull(new File(directory).listFiles());
+        try (SegmentReader reader = new SegmentReader(files[0].toPath(), 0)) {
+
+            assertThat(reader.next()).isEqualTo(first);
+            assertThat(reader.next()).isEqualTo(second);
+            assertThat(reader.getError()).isEqualTo("error 2");
+            assertThat(reader.getCorruptRecords()).isEqualTo(0);
+        }
+    }
+}
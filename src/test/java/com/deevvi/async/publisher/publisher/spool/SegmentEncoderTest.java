@@ -0,0 +1,114 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.datum;
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.readAll;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SegmentEncoder} class.
+ */
+public class SegmentEncoderTest {
+
+    @Test
+    public void testEncodeNull() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new SegmentEncoder().encode(null));
+    }
+
+    @Test
+    public void testStringsAreWrittenOncePerSegment() {
+
+        //setup
+        SegmentEncoder encoder = new SegmentEncoder();
+
+        //call
+        encoder.encode(datum("m1", 1.0));
+        int first = encoder.pendingSize();
+        encoder.encode(datum("m1", 2.0));
+        int second = encoder.pendingSize() - first;
+
+        //verify
+        assertThat(first).isGreaterThan(second + SpoolFormat.HEADER_SIZE);
+        assertThat(encoder.position()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCommit() {
+
+        //setup
+        SegmentEncoder encoder = new SegmentEncoder();
+        encoder.encode(datum("m1", 1.0));
+        int size = encoder.pendingSize();
+
+        //call
+        encoder.commit();
+
+        //verify
+        assertThat(encoder.position()).isEqualTo(size);
+        assertThat(encoder.pendingSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDiscardForgetsNewStrings(@TempDir Path tempDir) throws IOException {
+
+        //setup
+        Path segment = tempDir.resolve("segment.seg");
+        SegmentEncoder encoder = new SegmentEncoder();
+        encoder.encode(datum("m1", 1.0));
+        write(segment, encoder);
+        encoder.encode(datum("m2", 2.0));
+
+        //call
+        encoder.discard();
+        encoder.encode(datum("m2", 3.0));
+        write(segment, encoder);
+
+        //verify
+        assertThat(readAll(segment, 0)).containsExactly(datum("m1", 1.0), datum("m2", 3.0)).inOrder();
+    }
+
+    @Test
+    public void testResumeTruncatesPartialRecord(@TempDir Path tempDir) throws IOException {
+
+        //setup
+        Path segment = tempDir.resolve("segment.seg");
+        SegmentEncoder encoder = new SegmentEncoder();
+        encoder.encode(datum("m1", 1.0));
+        write(segment, encoder);
+        long end = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 40, 2, 1}, StandardOpenOption.APPEND);
+
+        //call
+        SegmentEncoder resumed = SegmentEncoder.resume(segment);
+        resumed.encode(datum("m1", 2.0));
+        resumed.encode(datum("m2", 3.0));
+        write(segment, resumed);
+
+        //verify
+        assertThat(Files.size(segment)).isGreaterThan(end);
+        assertThat(readAll(segment, 0)).containsExactly(datum("m1", 1.0), datum("m1", 2.0), datum("m2", 3.0)).inOrder();
+    }
+
+    private static void write(final Path segment, final SegmentEncoder encoder) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer pending = encoder.pending();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        }
+        encoder.commit();
+    }
+}
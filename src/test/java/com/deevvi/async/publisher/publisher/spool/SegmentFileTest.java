@@ -0,0 +1,74 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.datum;
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.readAll;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SegmentFile} class.
+ */
+public class SegmentFileTest {
+
+    @Test
+    public void testOpenNull() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> SegmentFile.open(null));
+    }
+
+    @Test
+    public void testWritePending(@TempDir Path tempDir) throws IOException {
+
+        //setup
+        Path path = tempDir.resolve("segment.seg");
+
+        //call
+        int size;
+        try (SegmentFile segment = SegmentFile.open(path)) {
+
+            segment.getEncoder().encode(datum("m1", 1.0));
+            size = segment.writePending();
+            segment.getEncoder().commit();
+        }
+
+        //verify
+        assertThat(size).isEqualTo((int) Files.size(path));
+        assertThat(readAll(path, 0)).containsExactly(datum("m1", 1.0));
+    }
+
+    @Test
+    public void testOpenResumesAfterPartialRecord(@TempDir Path tempDir) throws IOException {
+
+        //setup
+        Path path = tempDir.resolve("segment.seg");
+        try (SegmentFile segment = SegmentFile.open(path)) {
+
+            segment.getEncoder().encode(datum("m1", 1.0));
+            segment.writePending();
+            segment.getEncoder().commit();
+        }
+        long complete = Files.size(path);
+        Files.write(path, new byte[]{2, 0, 0}, StandardOpenOption.APPEND);
+
+        //call
+        try (SegmentFile segment = SegmentFile.open(path)) {
+
+            segment.getEncoder().encode(datum("m1", 2.0));
+            segment.writePending();
+            segment.getEncoder().commit();
+            assertThat(segment.getChannel().position()).isGreaterThan(complete);
+        }
+
+        //verify
+        assertThat(readAll(path, 0)).containsExactly(datum("m1", 1.0), datum("m1", 2.0)).inOrder();
+    }
+}
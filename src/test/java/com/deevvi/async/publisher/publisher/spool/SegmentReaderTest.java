@@ -0,0 +1,264 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.datum;
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.readAll;
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Milliseconds;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SegmentReader} class.
+ */
+public class SegmentReaderTest {
+
+    private Path segment;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        segment = tempDir.resolve("segment.seg");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        //setup
+        MetricDatum full = new MetricDatum()
+                .withMetricName("GetUser.Duration")
+                .withUnit(Milliseconds)
+                .withTimestamp(new Date(1234L))
+                .withValue(2.5)
+                .withStorageResolution(1)
+                .withDimensions(new Dimension().withName("Host").withValue("h1"), new Dimension().withName("Région").withValue("été"));
+        MetricDatum statistics = new MetricDatum()
+                .withMetricName("GetUser.Duration")
+                .withUnit(Milliseconds)
+                .withStatisticValues(new StatisticSet().withSampleCount(3.0).withSum(6.0).withMinimum(1.0).withMaximum(3.0));
+        MetricDatum empty = new MetricDatum();
+        write(full, statistics, empty);
+
+        //call
+        List<MetricDatum> datums = readAll(segment, 0);
+
+        //verify
+        assertThat(datums).containsExactly(full, statistics, empty).inOrder();
+    }
+
+    @Test
+    public void testErrorRecords() throws IOException {
+
+        //setup
+        MetricDatum valid = datum("m1", 1.0);
+        MetricDatum rejected = datum("m2", 2.0);
+        SegmentEncoder encoder = new SegmentEncoder();
+        encoder.encode(valid);
+        encoder.encode(rejected, "The value for parameter MetricData.member.1.Timestamp is invalid.");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(encoder.pending());
+        }
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            //verify
+            assertThat(reader.next()).isEqualTo(valid);
+            assertThat(reader.getError()).isNull();
+            assertThat(reader.next()).isEqualTo(rejected);
+            assertThat(reader.getError()).isEqualTo("The value for parameter MetricData.member.1.Timestamp is invalid.");
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testEmptySegment() throws IOException {
+
+        //setup
+        Files.createFile(segment);
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            //verify
+            assertThat(reader.next()).isNull();
+            assertThat(reader.position()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testNotASegment() throws IOException {
+
+        //setup
+        Files.write(segment, "{\"metricName\":\"m1\"}\n".getBytes());
+
+        //call
+        Assertions.assertThrows(IOException.class, () -> new SegmentReader(segment, 0));
+    }
+
+    @Test
+    public void testResumeFromPosition() throws IOException {
+
+        //setup
+        write(datum("m1", 1.0), datum("m2", 2.0), datum("m1", 3.0));
+        long position;
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+            reader.next();
+            position = reader.position();
+        }
+
+        //call
+        List<MetricDatum> datums = readAll(segment, position);
+
+        //verify
+        assertThat(datums).containsExactly(datum("m2", 2.0), datum("m1", 3.0)).inOrder();
+    }
+
+    @Test
+    public void testResumeFromDictionaryOffset() throws IOException {
+
+        //setup
+        write(datum("m1", 1.0), datum("m2", 2.0), datum("m1", 3.0), datum("m3", 4.0));
+        long first;
+        long position;
+        long dictionaryOffset;
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            reader.next();
+            first = reader.position();
+            reader.next();
+            position = reader.position();
+            dictionaryOffset = reader.getLastDictionaryOffset();
+        }
+        // the datums before the start offset are not read: corrupting one of them goes unnoticed
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+
+            file.seek(first - 6);
+            file.write(0x7F);
+        }
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, position, dictionaryOffset)) {
+
+            //verify
+            assertThat(reader.next()).isEqualTo(datum("m1", 3.0));
+            assertThat(reader.next()).isEqualTo(datum("m3", 4.0));
+            assertThat(reader.next()).isNull();
+            assertThat(reader.getCorruptRecords()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testInvalidDictionaryOffsetIsIgnored() throws IOException {
+
+        //setup
+        write(datum("m1", 1.0), datum("m2", 2.0), datum("m1", 3.0));
+        long position;
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            reader.next();
+            reader.next();
+            position = reader.position();
+        }
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, position, position - 10)) {
+
+            //verify
+            assertThat(reader.next()).isEqualTo(datum("m1", 3.0));
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void testStopsAtPartialRecord() throws IOException {
+
+        //setup
+        write(datum("m1", 1.0));
+        long end = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 40, 2, 1}, StandardOpenOption.APPEND);
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            //verify
+            assertThat(reader.next()).isEqualTo(datum("m1", 1.0));
+            assertThat(reader.next()).isNull();
+            assertThat(reader.position()).isEqualTo(end);
+        }
+    }
+
+    @Test
+    public void testCorruptRecordIsSkipped() throws IOException {
+
+        //setup
+        write(datum("m1", 1.0), datum("m1", 2.0), datum("m1", 3.0));
+        long second;
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+            reader.next();
+            second = reader.position();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(second + 10);
+            file.write(0x7F);
+        }
+
+        //call
+        try (SegmentReader reader = new SegmentReader(segment, 0)) {
+
+            //verify
+            assertThat(reader.next()).isEqualTo(datum("m1", 1.0));
+            assertThat(reader.next()).isEqualTo(datum("m1", 3.0));
+            assertThat(reader.next()).isNull();
+            assertThat(reader.getCorruptRecords()).isEqualTo(1);
+            assertThat(reader.position()).isEqualTo(Files.size(segment));
+        }
+    }
+
+    @Test
+    public void testLargeSegment() throws IOException {
+
+        //setup
+        MetricDatum[] datums = new MetricDatum[10_000];
+        for (int index = 0; index < datums.length; index++) {
+            datums[index] = datum("m" + index % 100, index);
+        }
+        write(datums);
+
+        //call
+        List<MetricDatum> result = readAll(segment, 0);
+
+        //verify
+        assertThat(result).containsExactlyElementsIn(datums).inOrder();
+    }
+
+    private void write(final MetricDatum... datums) throws IOException {
+
+        SegmentEncoder encoder = new SegmentEncoder();
+        for (MetricDatum datum : datums) {
+            encoder.encode(datum);
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer pending = encoder.pending();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        }
+        encoder.commit();
+    }
+}
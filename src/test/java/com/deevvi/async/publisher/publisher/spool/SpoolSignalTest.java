@@ -0,0 +1,64 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SpoolSignal} class.
+ */
+public class SpoolSignalTest {
+
+    private final SpoolSignal signal = new SpoolSignal();
+
+    @Test
+    public void testAwaitTimesOut() throws Exception {
+
+        //call
+        boolean signalled = signal.await(signal.version(), 10);
+
+        //verify
+        assertThat(signalled).isFalse();
+    }
+
+    @Test
+    public void testSignalBeforeAwait() throws Exception {
+
+        //setup
+        long version = signal.version();
+        signal.signal();
+
+        //call
+        boolean signalled = signal.await(version, 10);
+
+        //verify
+        assertThat(signalled).isTrue();
+        assertThat(signal.version()).isEqualTo(version + 1);
+    }
+
+    @Test
+    public void testSignalWakesUpWaiter() throws Exception {
+
+        //setup
+        long version = signal.version();
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+
+            try {
+
+                return signal.await(version, 60_000);
+            } catch (InterruptedException e) {
+
+                throw new IllegalStateException(e);
+            }
+        });
+
+        //call
+        signal.signal();
+
+        //verify
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
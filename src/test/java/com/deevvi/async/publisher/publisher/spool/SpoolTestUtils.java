@@ -0,0 +1,62 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static com.amazonaws.services.cloudwatch.model.StandardUnit.Count;
+
+/**
+ * Helper class for the spool tests.
+ */
+final class SpoolTestUtils {
+
+    /**
+     * Private constructor, to avoid class init.
+     */
+    private SpoolTestUtils() {
+    }
+
+    /**
+     * Read the datums of a segment.
+     *
+     * @param segment  segment path
+     * @param position offset of the first record to read
+     * @return datums of the segment, empty if it doesn't exist
+     * @throws IOException - if the segment cannot be read
+     */
+    static List<MetricDatum> readAll(final Path segment, final long position) throws IOException {
+
+        List<MetricDatum> datums = Lists.newArrayList();
+        if (!Files.exists(segment)) {
+
+            return datums;
+        }
+        try (SegmentReader reader = new SegmentReader(segment, position)) {
+
+            MetricDatum datum;
+            while ((datum = reader.next()) != null) {
+
+                datums.add(datum);
+            }
+        }
+        return datums;
+    }
+
+    /**
+     * Build a datum with a fixed timestamp, so that equal datums are written and read back equal.
+     *
+     * @param name  metric name
+     * @param value metric value
+     * @return metric datum
+     */
+    static MetricDatum datum(final String name, final double value) {
+
+        return new MetricDatum().withMetricName(name).withValue(value).withUnit(Count).withTimestamp(new Date(1000L));
+    }
+}
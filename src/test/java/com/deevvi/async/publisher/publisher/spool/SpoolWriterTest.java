@@ -0,0 +1,541 @@
+package com.deevvi.async.publisher.publisher.spool;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.deevvi.async.publisher.utils.FileUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.datum;
+import static com.deevvi.async.publisher.publisher.spool.SpoolTestUtils.readAll;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SpoolWriter} class.
+ */
+public class SpoolWriterTest {
+
+    private static final long HOUR = 3600 * 1000L;
+
+    private String directory;
+    private AtomicLong now;
+    private SpoolWriter writer;
+
+    @BeforeEach
+    public void setup(@TempDir Path tempDir) {
+
+        directory = tempDir.toAbsolutePath().toString();
+        now = new AtomicLong(System.currentTimeMillis());
+        writer = new SpoolWriter(directory, now::get);
+    }
+
+    @Test
+    public void testNullDirectory() {
+
+        //call
+        Assertions.assertThrows(NullPointerException.class, () -> new SpoolWriter("  "));
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0), datum("m2", 2.0)));
+        writer.append(ImmutableList.of(datum("m1", 3.0)));
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0), datum("m2", 2.0), datum("m1", 3.0)).inOrder();
+        assertThat(writer.getCommits()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAppendFromInterruptedThread() throws IOException {
+
+        //setup
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        Thread.currentThread().interrupt();
+
+        //call
+        try {
+
+            writer.append(ImmutableList.of(datum("m1", 2.0)));
+        } finally {
+
+            assertThat(Thread.interrupted()).isTrue();
+        }
+        writer.append(ImmutableList.of(datum("m1", 3.0)));
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0), datum("m1", 2.0), datum("m1", 3.0)).inOrder();
+    }
+
+    @Test
+    public void testAppendRaisesSignal() throws IOException {
+
+        //setup
+        long version = writer.getSignal().version();
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //verify
+        assertThat(writer.getSignal().version()).isEqualTo(version + 1);
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+
+        //setup
+        int threads = 8;
+        int appends = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int thread = 0; thread < threads; thread++) {
+
+            int id = thread;
+            futures.add(executor.submit(() -> {
+
+                start.await();
+                for (int index = 0; index < appends; index++) {
+
+                    writer.append(ImmutableList.of(datum("m" + id, index)));
+                }
+                return null;
+            }));
+        }
+
+        //call
+        start.countDown();
+        for (Future<?> future : futures) {
+
+            future.get();
+        }
+        executor.shutdown();
+
+        //verify
+        List<MetricDatum> datums = readAll(segment(now.get(), 1), 0);
+        assertThat(datums).hasSize(threads * appends);
+        for (int thread = 0; thread < threads; thread++) {
+
+            for (int index = 0; index < appends; index++) {
+
+                assertThat(datums).contains(datum("m" + thread, index));
+            }
+        }
+        assertThat(writer.getCommits()).isAtMost((long) threads * appends);
+    }
+
+    @Test
+    public void testRollOver() throws IOException {
+
+        //setup
+        long firstHour = now.get();
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //call
+        now.addAndGet(HOUR);
+        writer.append(ImmutableList.of(datum("m1", 2.0)));
+
+        //verify
+        assertThat(readAll(segment(firstHour, 1), 0)).containsExactly(datum("m1", 1.0));
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 2.0));
+    }
+
+    @Test
+    public void testResumeSegment() throws IOException {
+
+        //setup
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.close();
+
+        //call
+        SpoolWriter other = new SpoolWriter(directory, now::get);
+        other.append(ImmutableList.of(datum("m1", 2.0)));
+        other.close();
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0), datum("m1", 2.0)).inOrder();
+    }
+
+    @Test
+    public void testRollOverOnSize() throws IOException {
+
+        //setup
+        writer.setRollingPolicy(1, 0);
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.append(ImmutableList.of(datum("m1", 2.0)));
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0));
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 2.0));
+    }
+
+    @Test
+    public void testRollOverOnAge() throws IOException {
+
+        //setup
+        now.set(hourStart() + 1000);
+        writer.setRollingPolicy(0, 1000);
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.append(ImmutableList.of(datum("m1", 2.0)));
+
+        //call
+        now.addAndGet(1000);
+        writer.append(ImmutableList.of(datum("m1", 3.0)));
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0), datum("m1", 2.0)).inOrder();
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 3.0));
+    }
+
+    @Test
+    public void testSequenceContinuesAfterRestart() throws IOException {
+
+        //setup
+        writer.setRollingPolicy(1, 0);
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.append(ImmutableList.of(datum("m1", 2.0)));
+        writer.close();
+
+        //call
+        SpoolWriter other = new SpoolWriter(directory, now::get);
+        other.append(ImmutableList.of(datum("m1", 3.0)));
+        other.close();
+
+        //verify
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 2.0), datum("m1", 3.0)).inOrder();
+        assertThat(readAll(segment(now.get(), 3), 0)).isEmpty();
+    }
+
+    @Test
+    public void testFullSegmentIsNotResumed() throws IOException {
+
+        //setup
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.close();
+
+        //call
+        SpoolWriter other = new SpoolWriter(directory, now::get);
+        other.setRollingPolicy(1, 0);
+        other.append(ImmutableList.of(datum("m1", 2.0)));
+        other.close();
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0));
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 2.0));
+    }
+
+    @Test
+    public void testSealedSegmentIsRepaired() throws IOException {
+
+        //setup
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.close();
+        Path first = segment(now.get(), 1);
+        long size = Files.size(first);
+        Files.write(first, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        //call
+        now.addAndGet(HOUR);
+        SpoolWriter other = new SpoolWriter(directory, now::get);
+        other.append(ImmutableList.of(datum("m1", 2.0)));
+        other.close();
+
+        //verify
+        assertThat(Files.size(first)).isEqualTo(size);
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 2.0));
+    }
+
+    @Test
+    public void testFailedWriteIsTruncatedBeforeRollingOver() throws IOException {
+
+        //setup
+        AtomicBoolean failing = new AtomicBoolean();
+        SpoolWriter failingWriter = new SpoolWriter(directory, now::get, path -> new FailingChannel(SegmentFile.openChannel(path), failing));
+        failingWriter.append(ImmutableList.of(datum("m1", 1.0)));
+        Path first = segment(now.get(), 1);
+        long size = Files.size(first);
+
+        //call
+        failing.set(true);
+        Assertions.assertThrows(IOException.class, () -> failingWriter.append(ImmutableList.of(datum("m1", 2.0))));
+        failing.set(false);
+        failingWriter.append(ImmutableList.of(datum("m1", 3.0)));
+        failingWriter.close();
+
+        //verify
+        assertThat(Files.size(first)).isEqualTo(size);
+        try (SegmentReader reader = new SegmentReader(first, 0)) {
+
+            // read to its end: the segment is checkpointed at its length, and can be deleted once published
+            reader.skipToEnd();
+            assertThat(reader.position()).isEqualTo(Files.size(first));
+        }
+        assertThat(readAll(first, 0)).containsExactly(datum("m1", 1.0));
+        assertThat(readAll(segment(now.get(), 2), 0)).containsExactly(datum("m1", 3.0));
+    }
+
+    @Test
+    public void testInvalidRollingPolicy() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> writer.setRollingPolicy(-1, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> writer.setRollingPolicy(0, -1));
+    }
+
+    @Test
+    public void testInvalidBatchIsRejected() throws IOException {
+
+        //setup
+        MetricDatum invalid = datum("m2", 2.0).withDimensions(new Dimension().withName("Host"));
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> writer.append(ImmutableList.of(datum("m3", 3.0), invalid)));
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //verify
+        assertThat(readAll(segment(now.get(), 1), 0)).containsExactly(datum("m1", 1.0));
+    }
+
+    @Test
+    public void testNoSync() throws IOException {
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //verify
+        assertThat(writer.getSyncs()).isEqualTo(0);
+        assertThat(writer.getBytesWritten()).isEqualTo(Files.size(segment(now.get(), 1)));
+        assertThat(writer.getCommitNanos()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testSyncPerCommit() throws IOException {
+
+        //setup
+        writer.setSyncPolicy(SyncPolicy.PER_COMMIT, 0);
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        writer.append(ImmutableList.of(datum("m1", 2.0)));
+
+        //verify
+        assertThat(writer.getSyncs()).isEqualTo(2);
+        assertThat(writer.getSyncNanos()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testPeriodicSync() throws Exception {
+
+        //setup
+        writer.setSyncPolicy(SyncPolicy.PERIODIC, 10);
+
+        //call
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getSyncs() == 0 && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        //verify
+        assertThat(writer.getSyncs()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSyncOnClose() throws IOException {
+
+        //setup
+        writer.setSyncPolicy(SyncPolicy.PERIODIC, 60_000);
+        writer.append(ImmutableList.of(datum("m1", 1.0)));
+
+        //call
+        writer.close();
+
+        //verify
+        assertThat(writer.getSyncs()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidSyncInterval() {
+
+        //call
+        Assertions.assertThrows(IllegalArgumentException.class, () -> writer.setSyncPolicy(SyncPolicy.PERIODIC, 0));
+    }
+
+    @Test
+    public void testAppendAfterClose() {
+
+        //setup
+        writer.close();
+
+        //call
+        Assertions.assertThrows(IOException.class, () -> writer.append(ImmutableList.of(datum("m1", 1.0))));
+    }
+
+    private Path segment(final long timeMillis, final long sequence) {
+
+        return Paths.get(directory + FileUtils.generateSpoolFileSuffix(timeMillis, sequence));
+    }
+
+    private long hourStart() {
+
+        return Instant.ofEpochMilli(now.get()).atZone(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Channel writing half of the bytes of a write and then failing, while its flag is set.
+     */
+    private static final class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private final AtomicBoolean failing;
+
+        FailingChannel(final FileChannel delegate, final AtomicBoolean failing) {
+
+            this.delegate = delegate;
+            this.failing = failing;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+
+            if (!failing.get()) {
+
+                return delegate.write(src);
+            }
+            ByteBuffer half = src.duplicate();
+            half.limit(src.position() + src.remaining() / 2);
+            delegate.write(half);
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(final long newPosition) throws IOException {
+
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(final long size) throws IOException {
+
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(final boolean metaData) throws IOException {
+
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException {
+
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel src, final long position, final long count) throws IOException {
+
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst, final long position) throws IOException {
+
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(final ByteBuffer src, final long position) throws IOException {
+
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException {
+
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(final long position, final long size, final boolean shared) throws IOException {
+
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException {
+
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+
+            delegate.close();
+        }
+    }
+}
@@ -34,6 +34,37 @@ public class FileUtilsTest {
         Assertions.assertTrue(pattern.matcher(fileName).find());
     }
 
+    @Test
+    public void testGenerateSpoolFileName() {
+
+        //setup
+        Pattern pattern = Pattern.compile("metrics-spool-\\d{4}-\\d{1,2}-\\d{1,2}-\\d{1,2}_0000000042.seg");
+
+        //call
+        String fileName = FileUtils.generateSpoolFileSuffix(System.currentTimeMillis(), 42);
+
+        //verify
+        assertThat(pattern.matcher(fileName).find()).isTrue();
+        assertThat(FileUtils.isSpoolFile(new File(fileName))).isTrue();
+        assertThat(FileUtils.getSpoolFileSequence(new File(fileName))).isEqualTo(42);
+        assertThat(FileUtils.generatePropertiesFileNameForLogFile(fileName)).endsWith(".properties");
+    }
+
+    @Test
+    public void testSpoolFileNamesSortBySequence() {
+
+        //setup
+        long now = System.currentTimeMillis();
+
+        //call
+        String first = new File(FileUtils.generateSpoolFileSuffix(now, 9)).getName();
+        String second = new File(FileUtils.generateSpoolFileSuffix(now, 10)).getName();
+
+        //verify
+        assertThat(first).isLessThan(second);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FileUtils.getSpoolFileSequence(new File("metrics-logs-2019-07-30-07.log")));
+    }
+
     @Test
     public void testGeneratePropertiesFileEmptyFile() {
 
@@ -69,6 +100,34 @@ public class FileUtilsTest {
         assertThat(FileUtils.isLogFile(new File(" metrics-logs-2011-10-30-07.log "))).isFalse();
     }
 
+    @Test
+    public void testIsSpoolFile() {
+
+        //verify
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07_0000000001.seg"))).isTrue();
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07.seg"))).isFalse();
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07_0000000001.seg"))).isTrue();
+
+        assertThat(FileUtils.isSpoolFile(new File("metrics-logs-2019-07-30-07.log"))).isFalse();
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07.properties"))).isFalse();
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07_0000000001.segg"))).isFalse();
+        assertThat(FileUtils.isSpoolFile(new File("metrics-spool-2019-07-30-07_.seg"))).isFalse();
+    }
+
+    @Test
+    public void testQuarantineFileName() {
+
+        //call
+        File file = new File(FileUtils.generateQuarantineFileSuffix(System.currentTimeMillis()));
+
+        //verify
+        assertThat(file.getName()).matches("metrics-quarantine-\\d{4}-\\d{1,2}-\\d{1,2}-\\d{1,2}.seg");
+        assertThat(FileUtils.isQuarantineFile(file)).isTrue();
+        assertThat(FileUtils.isSpoolFile(file)).isFalse();
+        assertThat(FileUtils.isLogFile(file)).isFalse();
+        assertThat(FileUtils.isQuarantineFile(new File("metrics-spool-2019-07-30-07_0000000001.seg"))).isFalse();
+    }
+
     @Test
     public void testPathWithoutEndingSlash(@TempDir Path tempDir) throws IOException {
 
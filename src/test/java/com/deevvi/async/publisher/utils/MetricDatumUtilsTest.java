@@ -0,0 +1,39 @@
+package com.deevvi.async.publisher.utils;
+
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link MetricDatumUtils} class.
+ */
+public class MetricDatumUtilsTest {
+
+    @Test
+    public void testEstimateNullDatum() {
+
+        Assertions.assertThrows(NullPointerException.class, () -> MetricDatumUtils.estimateEncodedSize(null));
+    }
+
+    @Test
+    public void testEncodedLength() {
+
+        assertThat(MetricDatumUtils.encodedLength(null)).isEqualTo(0);
+        assertThat(MetricDatumUtils.encodedLength("Get.User-Details_~")).isEqualTo(18);
+        assertThat(MetricDatumUtils.encodedLength("a b:c")).isEqualTo(9);
+        assertThat(MetricDatumUtils.encodedLength("é")).isEqualTo(6);
+        assertThat(MetricDatumUtils.encodedLength("€")).isEqualTo(9);
+    }
+
+    @Test
+    public void testEstimateGrowsWithIndexAndName() {
+
+        MetricDatum datum = new MetricDatum().withMetricName("m1").withValue(1.0).withUnit(StandardUnit.Count);
+
+        assertThat(MetricDatumUtils.estimateEncodedSize(datum, 10)).isEqualTo(MetricDatumUtils.estimateEncodedSize(datum) + 3);
+        assertThat(MetricDatumUtils.estimateEncodedSize(datum.clone().withMetricName("m12"))).isEqualTo(MetricDatumUtils.estimateEncodedSize(datum) + 1);
+    }
+}